@@ -0,0 +1,106 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * The digits 0-9 and ':' pre-rendered once for a given text {@link Paint}, together with their
+ * advance widths.
+ * <p>
+ * The clock text changes every second but only ever uses these eleven glyphs, so measuring it
+ * becomes a sum of table lookups and drawing it becomes a handful of bitmap blits instead of a
+ * {@link Paint#measureText} and a full text layout and rasterization per frame. The atlas is an
+ * {@link Bitmap.Config#ALPHA_8} bitmap, so it is tinted by the color of the paint it is drawn with.
+ */
+public final class DigitAtlas {
+    private static final String GLYPHS = "0123456789:";
+    private static final int COLON_INDEX = 10;
+
+    private final Bitmap mBitmap;
+    private final float[] mAdvances = new float[GLYPHS.length()];
+    private final int[] mCellLefts = new int[GLYPHS.length()];
+    private final int mCellWidth;
+    private final int mCellHeight;
+    private final int mPadding;
+    private final int mBaseline;
+
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    private DigitAtlas(Paint textPaint) {
+        Paint paint = new Paint(textPaint);
+        paint.setColor(Color.WHITE);
+        paint.setShader(null);
+
+        paint.getTextWidths(GLYPHS, mAdvances);
+        float maxAdvance = 0;
+        for (float advance : mAdvances) {
+            maxAdvance = Math.max(maxAdvance, advance);
+        }
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        // Glyphs may overhang their advance slightly, so leave some room on either side.
+        mPadding = (int) Math.ceil(paint.getTextSize() * 0.1f);
+        mCellWidth = (int) Math.ceil(maxAdvance) + 2 * mPadding;
+        mBaseline = (int) Math.ceil(-metrics.top);
+        mCellHeight = mBaseline + (int) Math.ceil(metrics.bottom);
+
+        mBitmap = Bitmap.createBitmap(mCellWidth * GLYPHS.length(), mCellHeight,
+                Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mBitmap);
+        char[] glyph = new char[1];
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            mCellLefts[i] = i * mCellWidth;
+            glyph[0] = GLYPHS.charAt(i);
+            canvas.drawText(glyph, 0, 1, mCellLefts[i] + mPadding, mBaseline, paint);
+        }
+    }
+
+    /**
+     * Renders the atlas for the current text size, typeface and anti-aliasing of {@code paint}.
+     */
+    public static DigitAtlas create(Paint paint) {
+        return new DigitAtlas(paint);
+    }
+
+    /**
+     * Returns the advance width of the first {@code length} characters of {@code text}, which
+     * must only contain digits and ':'.
+     */
+    public float measure(char[] text, int length) {
+        float width = 0;
+        for (int i = 0; i < length; i++) {
+            width += mAdvances[indexOf(text[i])];
+        }
+        return width;
+    }
+
+    /**
+     * Draws the first {@code length} characters of {@code text} with the left end of the
+     * baseline at ({@code x}, {@code y}), tinted with the color of {@code paint}.
+     */
+    public void draw(Canvas canvas, char[] text, int length, float x, float y, Paint paint) {
+        int top = Math.round(y) - mBaseline;
+        for (int i = 0; i < length; i++) {
+            int index = indexOf(text[i]);
+            int left = Math.round(x) - mPadding;
+            mSrc.set(mCellLefts[index], 0, mCellLefts[index] + mCellWidth, mCellHeight);
+            mDst.set(left, top, left + mCellWidth, top + mCellHeight);
+            canvas.drawBitmap(mBitmap, mSrc, mDst, paint);
+            x += mAdvances[index];
+        }
+    }
+
+    /**
+     * Frees the atlas bitmap. The atlas must not be used afterwards.
+     */
+    public void recycle() {
+        mBitmap.recycle();
+    }
+
+    private static int indexOf(char c) {
+        return c == ':' ? COLON_INDEX : c - '0';
+    }
+}
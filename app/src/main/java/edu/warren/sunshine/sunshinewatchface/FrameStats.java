@@ -0,0 +1,143 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Render timings collected while the watch face runs: how long each frame takes to draw, the
+ * interval between interactive frames, and how late the interactive tick fires.
+ * <p>
+ * Everything is recorded into {@link LatencyHistogram}s, so nothing is allocated per frame. The
+ * results can be drawn over the face with {@link #drawOverlay} and written to logcat with
+ * {@link #dump}. All methods are called on the UI thread.
+ */
+final class FrameStats {
+
+    /**
+     * A tick this many microseconds after it was due counts as late.
+     */
+    private static final long LATE_TICK_US = 50 * 1000;
+
+    private static final int OVERLAY_BACKGROUND_COLOR = 0xB0000000;
+    private static final String[] LABELS = {"draw ", "frame ", "tick "};
+
+    private final LatencyHistogram mDraw = new LatencyHistogram();
+    private final LatencyHistogram mFrameInterval = new LatencyHistogram();
+    private final LatencyHistogram mTickLateness = new LatencyHistogram();
+    private final LatencyHistogram[] mHistograms = {mDraw, mFrameInterval, mTickLateness};
+
+    /**
+     * When the last interactive frame started, or 0 if the next frame doesn't follow one.
+     */
+    private long mLastFrameStartNs;
+
+    /**
+     * Uptime at which the pending tick is due, or 0 if none is scheduled.
+     */
+    private long mTickDueUptimeMs;
+
+    private final Paint mOverlayPaint = new Paint();
+    private final Paint mOverlayBackgroundPaint = new Paint();
+    private final char[][] mLines = new char[LABELS.length][];
+    private final int[] mLineLengths = new int[LABELS.length];
+
+    FrameStats(float overlayTextSize) {
+        mOverlayPaint.setColor(Color.YELLOW);
+        mOverlayPaint.setTextSize(overlayTextSize);
+        mOverlayPaint.setAntiAlias(true);
+        mOverlayBackgroundPaint.setColor(OVERLAY_BACKGROUND_COLOR);
+        for (int i = 0; i < LABELS.length; i++) {
+            mLines[i] = new char[LABELS[i].length() + LatencyHistogram.MAX_SUMMARY_LENGTH
+                    + " late ".length() + 11];
+        }
+    }
+
+    /**
+     * Records the start of an interactive frame; the time since the previous one is its interval.
+     */
+    void onFrameStarted(long nowNs) {
+        if (mLastFrameStartNs != 0) {
+            mFrameInterval.record((nowNs - mLastFrameStartNs) / 1000);
+        }
+        mLastFrameStartNs = nowNs;
+    }
+
+    /**
+     * Breaks the chain of frame intervals, when the face is hidden or enters ambient mode, so
+     * that time not spent drawing interactive frames isn't counted as a slow frame.
+     */
+    void onFramesInterrupted() {
+        mLastFrameStartNs = 0;
+        mTickDueUptimeMs = 0;
+    }
+
+    void onFrameDrawn(long durationNs) {
+        mDraw.record(durationNs / 1000);
+    }
+
+    void onTickScheduled(long delayMs) {
+        mTickDueUptimeMs = SystemClock.uptimeMillis() + delayMs;
+    }
+
+    void onTickCancelled() {
+        mTickDueUptimeMs = 0;
+    }
+
+    void onTick() {
+        if (mTickDueUptimeMs != 0) {
+            mTickLateness.record((SystemClock.uptimeMillis() - mTickDueUptimeMs) * 1000);
+            mTickDueUptimeMs = 0;
+        }
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        mLastFrameStartNs = 0;
+    }
+
+    /**
+     * Draws one line per histogram in the top left corner of {@code canvas}.
+     */
+    void drawOverlay(Canvas canvas, float left, float top) {
+        for (int i = 0; i < LABELS.length; i++) {
+            char[] line = mLines[i];
+            int length = CharFormat.appendString(line, 0, LABELS[i]);
+            length = mHistograms[i].appendSummary(line, length);
+            if (mHistograms[i] == mTickLateness) {
+                length = CharFormat.appendString(line, length, " late ");
+                length = CharFormat.appendInt(line, length,
+                        (int) mTickLateness.getCountAtLeast(LATE_TICK_US));
+            }
+            mLineLengths[i] = length;
+        }
+        float lineHeight = mOverlayPaint.getTextSize() * 1.2f;
+        canvas.drawRect(0, 0, canvas.getWidth(), top + lineHeight * (LABELS.length + 0.5f),
+                mOverlayBackgroundPaint);
+        for (int i = 0; i < LABELS.length; i++) {
+            canvas.drawText(mLines[i], 0, mLineLengths[i], left, top + lineHeight * (i + 1),
+                    mOverlayPaint);
+        }
+    }
+
+    /**
+     * Writes the summaries and the non-empty buckets of every histogram to logcat.
+     */
+    void dump(String tag) {
+        for (int i = 0; i < LABELS.length; i++) {
+            LatencyHistogram histogram = mHistograms[i];
+            Log.i(tag, LABELS[i] + histogram + " mean " + histogram.getMeanUs() + " us"
+                    + (histogram == mTickLateness
+                    ? " late " + histogram.getCountAtLeast(LATE_TICK_US) : ""));
+            for (String bucket : histogram.dumpBuckets().split("\n")) {
+                if (!bucket.isEmpty()) {
+                    Log.i(tag, "  " + bucket);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * A watch face engine seen as something that draws frames offscreen, for any time, layout, mode
+ * and weather, so its rendering can be measured and compared against golden frames on the JVM by
+ * {@code RenderBenchmarkTest}. All calls are made on the UI thread.
+ */
+interface RenderTarget {
+
+    /**
+     * Prepares for offscreen frames: fixed (UTC) time zone, the full render level and weather
+     * shown only through {@link #setRenderWeather}.
+     */
+    void beginOffscreenRendering();
+
+    void setRenderLayout(boolean isRound);
+
+    void setRenderAmbient(boolean ambient);
+
+    /**
+     * Draws {@code count} storm particles in every interactive frame, whatever the weather,
+     * starting from the same settled state; 0 goes back to particles following the weather.
+     */
+    void setRenderParticles(int count);
+
+    /**
+     * Makes {@code state} current, with its weather icon ready for the next frame.
+     */
+    void setRenderWeather(WeatherState state);
+
+    /**
+     * Draws one frame as {@code onDraw} would at {@code nowMs}.
+     */
+    void renderFrame(Canvas canvas, Rect bounds, long nowMs);
+
+    /**
+     * Returns how often each layer was redrawn since the last call, and starts counting again.
+     */
+    String takeRenderLayerCounts();
+
+    /**
+     * Restores everything {@link #beginOffscreenRendering} and the other calls changed.
+     */
+    void finishOffscreenRendering();
+}
@@ -20,9 +20,9 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.LinearGradient;
@@ -30,40 +30,28 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Shader;
 import android.graphics.Typeface;
+import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataEvent;
-import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.Wearable;
-
+import java.io.File;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Locale;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * low-bit ambient mode, the text is drawn without anti-aliasing and the weather icon is dithered
+ * to one bit in ambient mode.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final String TAG = "SunshineWatchFace";
@@ -72,30 +60,68 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Handler message id for the {@link FrameScheduler} tick in interactive mode.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MSG_UPDATE_TIME = 0;
 
     /**
-     * Handler message id for updating the time periodically in interactive mode.
+     * Handler message id sent when the {@link WeatherPipeline} has published a new state.
      */
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final int MSG_WEATHER_PUBLISHED = 1;
 
-    // It would be useful to not have hard-coded values here but instead to use an api that can
-    // pull the actual sunrise and sunset times for a given time-zone and latitude.
-    // https://github.com/mikereedell/sunrisesunsetlib-java
-    private static final float END_TIME = 21.5f;
-    private static final float START_TIME = 7f;
-    private static final float HIGH_ANGLE = 200f;
-    private static final float LOW_ANGLE = -20f;
     private static final float DRAWN_RADIUS = 110f;
 
+    /**
+     * Broadcast that starts or, with {@code --ez record false}, stops recording the weather
+     * updates and taps the active engine of a debuggable build receives, for replaying with
+     * {@link InputTraceReplayer}:
+     * <pre>
+     * adb shell am broadcast -a edu.warren.sunshine.sunshinewatchface.action.RECORD_INPUT \
+     *     --ez record true
+     * </pre>
+     * The trace is written to {@link #INPUT_TRACE_FILE} in the app's files directory.
+     */
+    private static final String ACTION_RECORD_INPUT =
+            "edu.warren.sunshine.sunshinewatchface.action.RECORD_INPUT";
+    private static final String EXTRA_RECORD = "record";
+    private static final String INPUT_TRACE_FILE = "input_trace.bin";
+
+    /**
+     * Weather icons are drawn at half the size the framework would decode them at.
+     */
+    private static final float WEATHER_BITMAP_SCALE = 0.5f;
+
+    /**
+     * Taps in the top left corner that toggle the frame timing overlay, and the time they must
+     * all fall within.
+     */
+    private static final int OVERLAY_TAP_COUNT = 3;
+    private static final long OVERLAY_TAP_WINDOW_MS = 2000;
+
+    /**
+     * Most rain drops or snow flakes alive at once, and the seed that makes them fall the same
+     * way every time.
+     */
+    private static final int MAX_PARTICLES = 500;
+    private static final int PARTICLE_SEED = 0x5eed;
+
+    /**
+     * How long each frame with particles keeps the animation going. Frames extend it as long as
+     * particles are drawn, so this only matters once they stop.
+     */
+    private static final long PARTICLE_ANIMATION_MS = 500;
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        WeatherBitmapCache.getInstance().onTrimMemory(level);
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<SunshineWatchFace.Engine> mWeakReference;
 
@@ -111,50 +137,166 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     case MSG_UPDATE_TIME:
                         engine.handleUpdateTimeMessage();
                         break;
+                    case MSG_WEATHER_PUBLISHED:
+                        engine.onWeatherPublished();
+                        break;
                 }
             }
         }
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
-            GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+    private class Engine extends CanvasWatchFaceService.Engine implements
+            WeatherTransport.Listener, WeatherPipeline.Callback, FrameScheduler.Host,
+            RenderTarget {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
+        final FrameScheduler mFrameScheduler = new FrameScheduler(this);
         boolean mRegisteredTimeZoneReceiver = false;
         Paint mBackgroundPaint;
         Paint mBackgroundGroundPaint;
-        private Bitmap mWeatherBitmap;
-        private String mHighTemp = SunshineWatchFaceUtil.STRING_VALUE_DEFAULT_TEMPERATURE;
-        private String mLowTemp = SunshineWatchFaceUtil.STRING_VALUE_DEFAULT_TEMPERATURE;
+
+        /**
+         * Ground gradient and the inputs it was built for, so it is only rebuilt when the bounds or
+         * colors change rather than on every frame.
+         */
+        LinearGradient mGroundShader;
+        int mGroundShaderWidth;
+        int mGroundShaderHeight;
+        int mGroundShaderTopColor;
+        int mGroundShaderBottomColor;
+
+        /**
+         * Parses, applies and saves weather updates and prepares what they look like on a
+         * thread of its own. {@link #mWeather} is the state it published that the current frame
+         * draws; it is read once at the start of each frame and never changes during one.
+         */
+        WeatherPipeline mWeatherPipeline;
+        WeatherRenderState mWeather;
+
+        /**
+         * Where the weather icon sits on the sun arc for each minute of the day. The day is
+         * recomputed when {@link #mSunArcDayDirty} is set by a day, time zone or location change.
+         */
+        final SunArc mSunArc = new SunArc();
+        boolean mSunArcDayDirty = true;
+
+        /**
+         * Startup timing: when the engine was created and whether the first frame with real
+         * weather has been logged yet.
+         */
+        long mCreatedRealtimeMs;
+        boolean mFirstMeaningfulFrameLogged;
+
+        /**
+         * Registered only in debuggable builds.
+         */
+        final BroadcastReceiver mRecordInputReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (intent.getBooleanExtra(EXTRA_RECORD, true)) {
+                    mWeatherPipeline.startRecording(new File(getFilesDir(), INPUT_TRACE_FILE));
+                } else {
+                    mWeatherPipeline.stopRecording();
+                }
+            }
+        };
+
+        /**
+         * Sky and ground colors for each minute of the day, rebuilt along with {@link #mSunArc}.
+         */
+        final SkyPalette mSkyPalette = new SkyPalette(
+                SunshineWatchFaceUtil.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND,
+                SunshineWatchFaceUtil.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND_GROUND_TOP,
+                SunshineWatchFaceUtil.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND_GROUND_BOTTOM);
+
         Paint mTextPaint;
         Paint mDatePaint;
         Paint mTemperaturePaint;
+        Paint mWorldClockPaint;
         boolean mAmbient;
-        Time mTime;
+        ClockModel mClock;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                    initFormats();
+                    mClock.invalidate();
+                    mWeatherPipeline.onLocaleChanged();
+                } else {
+                    updateTimeZone(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                }
+                mFrameScheduler.requestFrame();
             }
         };
 
-        GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        /**
+         * Where weather comes from, connected while the face is visible, and how long each stage
+         * of getting it on screen takes.
+         */
+        final LatencyTrace mLatencyTrace = new LatencyTrace();
+        WeatherTransport mWeatherTransport;
 
         int mTapCount;
 
+        /**
+         * Frame timings, drawn over the face while {@link #mShowFrameStats} is set. The overlay
+         * is toggled by {@link #OVERLAY_TAP_COUNT} taps within {@link #mOverlayCornerSize} of
+         * the top left corner, which don't cycle the weather.
+         */
+        FrameStats mFrameStats;
+        boolean mShowFrameStats;
+        float mOverlayCornerSize;
+        int mCornerTapCount;
+        long mFirstCornerTapMs;
+
+        /**
+         * Lowers the quality of interactive frames when they run over budget or the battery is
+         * low. {@link #mFrozenSunMinute} is the minute the weather icon is held at while the sun
+         * is frozen, or -1.
+         */
+        final RenderGovernor mRenderGovernor =
+                new RenderGovernor(RenderGovernor.DEFAULT_BUDGET_NS);
+        int mFrozenSunMinute = -1;
+
+        /**
+         * Rain, snow or storm over the sky in interactive mode, following {@link #mWeather}
+         * unless {@link #mParticleStyleOverride} is set. Only animated at the full render level;
+         * {@link #mParticles} adapts its count and frame rate to the frame budget on its own.
+         */
+        final ParticleSystem mParticles = new ParticleSystem(MAX_PARTICLES, PARTICLE_SEED);
+        final float[] mParticlePoints = new float[MAX_PARTICLES * 4];
+        int mParticleStyleOverride = -1;
+        boolean mParticlesDrawn;
+        Paint mRainPaint;
+        Paint mSnowPaint;
+        Paint mFlashPaint;
+        final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+                if (level < 0 || scale <= 0) {
+                    return;
+                }
+                boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+                if (mRenderGovernor.setBattery(level * 100 / scale, charging)) {
+                    applyRenderLevel();
+                }
+            }
+        };
+
         Calendar mCalendar;
         Date mDate;
-        SimpleDateFormat mDayOfWeekFormat;
         java.text.DateFormat mDateFormat;
 
+        boolean mIsRound;
         float mXOffset;
-        float mYOffset;
-        float mLineHeight;
-        float mHorizonOffset;
+
+        /**
+         * Where everything goes. {@link #mLayoutBuilder} collects the bounds, text sizes and
+         * peek card state, and {@link #updateLayout} swaps in a new layout when they change.
+         */
+        final FaceLayout.Builder mLayoutBuilder = new FaceLayout.Builder();
+        FaceLayout mLayout;
 
         int mInteractiveBackgroundColor =
                 SunshineWatchFaceUtil.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND;
@@ -163,6 +305,41 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         int mInteractiveBackgroundGroundBottomColor =
                 SunshineWatchFaceUtil.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND_GROUND_BOTTOM;
 
+        /**
+         * Text drawn by {@link #onDraw}, kept in reusable buffers and only rebuilt when its inputs
+         * change so that steady-state frames allocate nothing.
+         */
+        final char[] mTimeChars = new char[CharFormat.MAX_TIME_LENGTH];
+        int mTimeLength;
+        int mTimeHour = -1;
+        int mTimeMinute = -1;
+        int mTimeSecond = -1;
+        boolean mTimeShowsSeconds;
+        float mTimeX;
+
+        /**
+         * Pre-rendered clock digits for {@link #mTextPaint}, and a non-antialiased variant for
+         * low-bit ambient mode. Rebuilt whenever the text size changes.
+         */
+        DigitAtlas mInteractiveDigitAtlas;
+        DigitAtlas mAmbientDigitAtlas;
+
+        float mTemperatureX;
+        boolean mTemperatureDirty = true;
+
+        char[] mDateChars = new char[32];
+        int mDateLength;
+        float mDateX;
+        boolean mDateDirty = true;
+
+        /**
+         * Secondary clocks drawn under the date, if any zones are configured in
+         * {@code R.array.world_clock_zones}. Their offset tables are rebuilt along with the date.
+         */
+        WorldClock mWorldClock;
+        float mWorldClockX;
+        boolean mWorldClockDirty = true;
+
         int mTemperatureColor = SunshineWatchFaceUtil.DIGITAL_TEMPERATURE_COLOR;
         int mDigitalDateColor = SunshineWatchFaceUtil.DIGITAL_DATE_COLOR;
 
@@ -172,6 +349,43 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
+        /**
+         * Whether the display needs burn-in protection in ambient mode. When true, the weather icon
+         * is left out of the ambient frame.
+         */
+        boolean mBurnInProtection;
+
+        /**
+         * The layers the face is drawn in, bottom to top, and what makes each one change. The
+         * layers from {@link #mBackgroundLayer} to {@link #mWorldClockLayer} are composited into
+         * {@link #mSceneBitmap} whenever one of them is dirty, the sky and ground going through
+         * their own cache in {@link #mBackgroundBitmap}. Every frame draws the scene, then the
+         * particles and the time over it, so a typical second only redraws the time.
+         */
+        final RenderLayers mLayers = new RenderLayers();
+        final int mBackgroundLayer = mLayers.addLayer("background", RenderLayers.TRIGGER_PALETTE);
+        final int mIconLayer = mLayers.addLayer("icon", RenderLayers.TRIGGER_DATA);
+        final int mTemperatureLayer = mLayers.addLayer("temperature", RenderLayers.TRIGGER_DATA);
+        final int mDateLayer = mLayers.addLayer("date", RenderLayers.TRIGGER_DAY);
+        /**
+         * Given the minute and day triggers in {@link #onCreate} only if any zones are
+         * configured, so that an empty world clock doesn't rebuild the scene every minute.
+         */
+        final int mWorldClockLayer = mLayers.addLayer("world_clock", 0);
+        final int mParticleLayer = mLayers.addLayer("particles", RenderLayers.TRIGGER_FRAME);
+        final int mTimeLayer = mLayers.addLayer("time",
+                RenderLayers.TRIGGER_SECOND | RenderLayers.TRIGGER_MINUTE);
+        Bitmap mBackgroundBitmap;
+        final Canvas mBackgroundCanvas = new Canvas();
+        Bitmap mSceneBitmap;
+        final Canvas mSceneCanvas = new Canvas();
+
+        /**
+         * Minute of the day the icon was last drawn on the sun arc for; the icon layer is
+         * invalidated when the sun moves on.
+         */
+        int mIconMinute = -1;
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
@@ -183,9 +397,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setAcceptsTapEvents(true)
                     .build());
             Resources resources = SunshineWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mLineHeight = resources.getDimension(R.dimen.digital_line_height);
-            mHorizonOffset = resources.getDimension(R.dimen.horizon_offset);
+            mLayoutBuilder.setLineHeight(resources.getDimension(R.dimen.digital_line_height))
+                    .setHorizonOffset(resources.getDimension(R.dimen.horizon_offset))
+                    .setSunArcRadius(DRAWN_RADIUS);
             mBackgroundPaint = new Paint();
             mBackgroundPaint.setColor(mInteractiveBackgroundColor);
             mBackgroundGroundPaint = new Paint();
@@ -193,23 +407,67 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
             mDatePaint = createTextPaint(mDigitalDateColor);
             mTemperaturePaint = createTextPaint(mTemperatureColor);
-
-            mWeatherBitmap = BitmapFactory.decodeResource(getResources(),
-                    SunshineWatchFaceUtil.WeatherBitmap.getDefaultID());
-            mWeatherBitmap = Bitmap.createScaledBitmap(mWeatherBitmap,
-                    (int) (mWeatherBitmap.getWidth() * 0.5),
-                    (int) (mWeatherBitmap.getHeight() * 0.5), true);
-
-            mTime = new Time();
+            mWorldClockPaint = createTextPaint(mDigitalDateColor);
+            mWorldClock = new WorldClock(resources.getStringArray(R.array.world_clock_zones));
+            if (!mWorldClock.isEmpty()) {
+                mLayers.setTriggers(mWorldClockLayer,
+                        RenderLayers.TRIGGER_MINUTE | RenderLayers.TRIGGER_DAY);
+            }
+            mRainPaint = new Paint();
+            mRainPaint.setColor(resources.getColor(R.color.particle_rain));
+            mRainPaint.setStrokeWidth(resources.getDimension(R.dimen.particle_rain_width));
+            mSnowPaint = new Paint();
+            mSnowPaint.setColor(resources.getColor(R.color.particle_snow));
+            mSnowPaint.setStrokeWidth(resources.getDimension(R.dimen.particle_snow_size));
+            mSnowPaint.setStrokeCap(Paint.Cap.ROUND);
+            mSnowPaint.setAntiAlias(true);
+            mFlashPaint = new Paint();
+            mFlashPaint.setColor(Color.WHITE);
+            mFrameStats = new FrameStats(resources.getDimension(R.dimen.overlay_text_size));
+            mOverlayCornerSize = resources.getDimension(R.dimen.overlay_corner_size);
+
+            mCreatedRealtimeMs = SystemClock.elapsedRealtime();
+            mWeatherPipeline = new WeatherPipeline(SunshineWatchFace.this, WEATHER_BITMAP_SCALE,
+                    this);
+
+            mClock = new ClockModel(TimeZone.getDefault());
+            mWeatherTransport = new WearableWeatherTransport(SunshineWatchFace.this, mLatencyTrace,
+                    mWeatherPipeline.getHandler());
 
             mCalendar = Calendar.getInstance();
             mDate = new Date();
             initFormats();
+
+            if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+                SunshineWatchFace.this.registerReceiver(mRecordInputReceiver,
+                        new IntentFilter(ACTION_RECORD_INPUT));
+            }
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mUpdateTimeHandler.removeMessages(MSG_WEATHER_PUBLISHED);
+            if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+                SunshineWatchFace.this.unregisterReceiver(mRecordInputReceiver);
+            }
+            mWeatherPipeline.quit();
+            if (mInteractiveDigitAtlas != null) {
+                mInteractiveDigitAtlas.recycle();
+                mInteractiveDigitAtlas = null;
+            }
+            if (mAmbientDigitAtlas != null) {
+                mAmbientDigitAtlas.recycle();
+                mAmbientDigitAtlas = null;
+            }
+            if (mBackgroundBitmap != null) {
+                mBackgroundBitmap.recycle();
+                mBackgroundBitmap = null;
+            }
+            if (mSceneBitmap != null) {
+                mSceneBitmap.recycle();
+                mSceneBitmap = null;
+            }
             super.onDestroy();
         }
 
@@ -224,15 +482,22 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
+            mFrameStats.onFramesInterrupted();
 
             if (visible) {
                 registerReceiver();
+                mWeatherTransport.connect(this);
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                updateTimeZone(TimeZone.getDefault());
             } else {
                 unregisterReceiver();
+                mWeatherTransport.disconnect();
+                mParticles.reset();
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Hidden: " + mFrameScheduler + " " + mLatencyTrace + " "
+                            + mRenderGovernor + " " + mLayers);
+                }
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -240,9 +505,21 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /**
+         * Switches the clock and the date to {@code timeZone}, unless they already use a zone
+         * with the same ID and offsets: switching decomposes the time afresh and rebuilds
+         * everything derived from it, like the date text.
+         */
+        private void updateTimeZone(TimeZone timeZone) {
+            TimeZone current = mClock.getTimeZone();
+            if (timeZone.getID().equals(current.getID()) && timeZone.hasSameRules(current)) {
+                return;
+            }
+            mCalendar.setTimeZone(timeZone);
+            mClock.setTimeZone(timeZone);
+        }
+
         private void initFormats() {
-            mDayOfWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());
-            mDayOfWeekFormat.setCalendar(mCalendar);
             mDateFormat = DateFormat.getMediumDateFormat(SunshineWatchFace.this);
             mDateFormat.setCalendar(mCalendar);
         }
@@ -253,7 +530,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
             SunshineWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
+            // The battery broadcast is sticky, so the current level arrives right away.
+            SunshineWatchFace.this.registerReceiver(mBatteryReceiver,
+                    new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
         }
 
         private void unregisterReceiver() {
@@ -262,15 +543,28 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = false;
             SunshineWatchFace.this.unregisterReceiver(mTimeZoneReceiver);
+            SunshineWatchFace.this.unregisterReceiver(mBatteryReceiver);
         }
 
         @Override
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
+            mIsRound = insets.isRound();
+            applyLayout(mIsRound);
+        }
+
+        @Override
+        public void onPeekCardPositionUpdate(Rect rect) {
+            super.onPeekCardPositionUpdate(rect);
+            mLayoutBuilder.setShowingDate(rect.isEmpty());
+            mFrameScheduler.requestFrame();
+        }
 
-            // Load resources that have alternate values for round watches.
+        /**
+         * Loads the resources that have alternate values for round watches.
+         */
+        private void applyLayout(boolean isRound) {
             Resources resources = SunshineWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
             mXOffset = resources.getDimension(isRound
                     ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
             float temperatureSize = resources.getDimension(isRound
@@ -281,43 +575,126 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mTemperaturePaint.setTextSize(temperatureSize);
             mTextPaint.setTextSize(textSize);
             mDatePaint.setTextSize(resources.getDimension(R.dimen.digital_date_text_size));
+            mWorldClockPaint.setTextSize(resources.getDimension(R.dimen.world_clock_text_size));
+            mLayoutBuilder.setTimeTextSize(textSize).setTemperatureTextSize(temperatureSize);
+
+            // Cached text widths depend on the text sizes.
+            mTemperatureDirty = true;
+            mDateDirty = true;
+            mWorldClockDirty = true;
+            mTimeHour = -1;
+            mLayers.invalidateAll();
+            rebuildDigitAtlases();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            boolean lowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mLayers.invalidateAll();
+            if (lowBitAmbient != mLowBitAmbient) {
+                mLowBitAmbient = lowBitAmbient;
+                mWeatherPipeline.setLowBitAmbient(lowBitAmbient);
+                if (mInteractiveDigitAtlas != null) {
+                    rebuildDigitAtlases();
+                }
+            }
+        }
+
+        private void rebuildDigitAtlases() {
+            if (mInteractiveDigitAtlas != null) {
+                mInteractiveDigitAtlas.recycle();
+            }
+            if (mAmbientDigitAtlas != null) {
+                mAmbientDigitAtlas.recycle();
+                mAmbientDigitAtlas = null;
+            }
+            Paint paint = new Paint(mTextPaint);
+            paint.setAntiAlias(true);
+            mInteractiveDigitAtlas = DigitAtlas.create(paint);
+            if (mLowBitAmbient) {
+                paint.setAntiAlias(false);
+                mAmbientDigitAtlas = DigitAtlas.create(paint);
+            }
+            mTimeHour = -1;
+        }
+
+        /**
+         * Returns the digit atlas matching the current mode, or null if none has been built yet.
+         */
+        private DigitAtlas getDigitAtlas() {
+            return mAmbient && mLowBitAmbient ? mAmbientDigitAtlas : mInteractiveDigitAtlas;
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            mFrameScheduler.requestFrame();
         }
 
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
-            if (mAmbient != inAmbientMode) {
-                mAmbient = inAmbientMode;
+            setAmbient(inAmbientMode);
+
+            // Whether the timer should be running depends on whether we're visible (as well as
+            // whether we're in ambient mode), so we may need to start or stop the timer.
+            updateTimer();
+        }
+
+        private void setAmbient(boolean ambient) {
+            if (mAmbient != ambient) {
+                mAmbient = ambient;
+                mFrameStats.onFramesInterrupted();
+                updateAntiAlias();
                 if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
+                    // The time is measured with a different digit atlas in low-bit ambient mode.
+                    mTimeHour = -1;
                 }
-                invalidate();
+                mLayers.invalidateAll();
+                // Particles start over, settled, when interactive mode returns.
+                mParticles.reset();
+                mFrameScheduler.requestFrame();
             }
+        }
 
-            // Whether the timer should be running depends on whether we're visible (as well as
-            // whether we're in ambient mode), so we may need to start or stop the timer.
+        /**
+         * Antialiases text unless in low-bit ambient mode or the {@link #mRenderGovernor} has
+         * turned effects off for interactive frames. The clock digits come from a digit atlas and
+         * keep their antialiasing.
+         */
+        private void updateAntiAlias() {
+            boolean antiAlias = mAmbient
+                    ? !mLowBitAmbient : mRenderGovernor.areEffectsEnabled();
+            mTextPaint.setAntiAlias(antiAlias);
+            mDatePaint.setAntiAlias(antiAlias);
+            mTemperaturePaint.setAntiAlias(antiAlias);
+            mWorldClockPaint.setAntiAlias(antiAlias);
+        }
+
+        /**
+         * Puts the level chosen by {@link #mRenderGovernor} into effect.
+         */
+        private void applyRenderLevel() {
+            if (!mRenderGovernor.isSunFrozen()) {
+                mFrozenSunMinute = -1;
+            }
+            updateAntiAlias();
             updateTimer();
+            // Antialiasing and the ground gradient may have changed.
+            mLayers.invalidateAll();
+            Log.i(TAG, "Render level " + RenderGovernor.getLevelName(mRenderGovernor.getLevel())
+                    + ": " + mRenderGovernor);
+            mFrameScheduler.requestFrame();
         }
 
         /**
-         * Captures tap event (and tap type) and toggles the background color if the user finishes
-         * a tap.
+         * Captures tap event (and tap type) and cycles the weather image if the user finishes a
+         * tap. Only a completed tap changes what is drawn, so only that requests a frame.
          */
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
-            Resources resources = SunshineWatchFace.this.getResources();
             switch (tapType) {
                 case TAP_TYPE_TOUCH:
                     // The user has started touching the screen.
@@ -327,137 +704,491 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     break;
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
-                    setInteractiveWeatherImage(mTapCount);
+                    if (x < mOverlayCornerSize && y < mOverlayCornerSize) {
+                        onCornerTap(eventTime);
+                        break;
+                    }
+                    mWeatherPipeline.recordTap(x, y);
+                    mWeatherPipeline.applyLocal(new WeatherState.Update().setWeatherId(mTapCount));
                     mTapCount++;
                     if (mTapCount == SunshineWatchFaceUtil.WeatherBitmap.values().length) {
                         mTapCount = 0;
                     }
                     break;
             }
-            invalidate();
         }
 
-        private void setInteractiveWeatherImage(int imageId) {
-            if (!isInAmbientMode()) {
-                SunshineWatchFaceUtil.WeatherBitmap weatherBitmap = null;
+        /**
+         * Counts a tap in the top left corner, toggling the frame timing overlay and dumping the
+         * timings to logcat when enough of them come in quick succession.
+         */
+        private void onCornerTap(long eventTime) {
+            if (mCornerTapCount == 0 || eventTime - mFirstCornerTapMs > OVERLAY_TAP_WINDOW_MS) {
+                mCornerTapCount = 0;
+                mFirstCornerTapMs = eventTime;
+            }
+            if (++mCornerTapCount < OVERLAY_TAP_COUNT) {
+                return;
+            }
+            mCornerTapCount = 0;
+            mShowFrameStats = !mShowFrameStats;
+            mFrameStats.dump(TAG);
+            Log.i(TAG, mLayers.toString());
+            mFrameScheduler.requestFrame();
+        }
 
-                for (SunshineWatchFaceUtil.WeatherBitmap wbmap : SunshineWatchFaceUtil.WeatherBitmap.values()) {
-                    if (imageId == wbmap.value) {
-                        weatherBitmap = wbmap;
-                        break;
-                    }
-                }
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            long now = System.currentTimeMillis();
+            mFrameScheduler.onFrameDrawn(mFrameScheduler.contentKey(now));
+            long startNs = System.nanoTime();
+            if (!mAmbient) {
+                mFrameStats.onFrameStarted(startNs);
+            }
+            drawFrame(canvas, bounds, now);
+            long durationNs = System.nanoTime() - startNs;
+            mFrameStats.onFrameDrawn(durationNs);
+            if (!mAmbient && mRenderGovernor.recordFrame(startNs, durationNs)) {
+                applyRenderLevel();
+            }
+            if (mParticlesDrawn) {
+                mParticles.adapt(durationNs, RenderGovernor.DEFAULT_BUDGET_NS);
+                mFrameScheduler.setAnimationFrameMs(mParticles.getFrameIntervalMs());
+                mFrameScheduler.requestAnimation(now, PARTICLE_ANIMATION_MS);
+            }
+            if (mShowFrameStats && !mAmbient) {
+                mFrameStats.drawOverlay(canvas, mXOffset, mOverlayCornerSize);
+            }
 
-                if (weatherBitmap != null) {
-                    mWeatherBitmap = BitmapFactory.decodeResource(getResources(), weatherBitmap.id);
-                    mWeatherBitmap = Bitmap.createScaledBitmap(mWeatherBitmap,
-                            (int) (mWeatherBitmap.getWidth() * 0.5),
-                            (int) (mWeatherBitmap.getHeight() * 0.5), true);
-                }
+            mLatencyTrace.end(LatencyTrace.STAGE_REDRAW, System.nanoTime());
+            if (!mFirstMeaningfulFrameLogged && mWeather.state != WeatherState.DEFAULT) {
+                mFirstMeaningfulFrameLogged = true;
+                Log.i(TAG, "First frame with weather drawn "
+                        + (SystemClock.elapsedRealtime() - mCreatedRealtimeMs)
+                        + " ms after create ("
+                        + (mWeatherPipeline.isRestored() ? "from snapshot" : "live") + ")");
             }
         }
 
-        private void setInteractiveHighTemperature(int temp) {
-            if (!isInAmbientMode()) {
-                if (temp <= SunshineWatchFaceUtil.INT_VALUE_DEFAULT_TEMPERATURE) {
-                    mHighTemp = SunshineWatchFaceUtil.STRING_VALUE_DEFAULT_TEMPERATURE;
-                } else {
-                    // Temps are stored as a whole integer and need conversion to shifted double
-                    mHighTemp = SunshineWatchFaceUtil.formatTemperature(SunshineWatchFace.this, (double)temp * 0.1);
+        /**
+         * Draws the face as it looks at {@code now}. Everything {@link #onDraw} shows comes from
+         * here, which lets a {@link RenderTarget} client draw frames for any time offscreen.
+         */
+        private void drawFrame(Canvas canvas, Rect bounds, long now) {
+            int clockChanges = mClock.update(now);
+            mLayers.invalidate(RenderLayers.clockTriggers(clockChanges));
+            mLayers.onFrame();
+            updateWeather(mWeatherPipeline.getRenderState());
+            if ((clockChanges & ClockModel.CHANGED_DAY) != 0) {
+                // Formatted date strings are kept until the next day rollover. The world clock
+                // tables are rebuilt then too, which includes every time zone or locale change,
+                // since those invalidate the clock.
+                mDate.setTime(now);
+                mDateDirty = true;
+                mSunArcDayDirty = true;
+                mWorldClock.rebuild(now);
+            }
+            if (mSunArcDayDirty) {
+                updateSunArcDay(now);
+            }
+
+            FaceLayout layout = updateLayout(bounds);
+
+            if (mTemperatureDirty) {
+                updateTemperatureText();
+            }
+            if (layout.isShowingDate() && mDateDirty) {
+                updateDateText();
+            }
+
+            if (!mAmbient) {
+                if (updateSkyColors(mClock.getMinuteOfDay())) {
+                    mLayers.invalidate(RenderLayers.TRIGGER_PALETTE);
                 }
+                if (getSunMinute() != mIconMinute) {
+                    mLayers.invalidateLayer(mIconLayer);
+                }
+            }
+            updateScene(now);
+            canvas.drawBitmap(mSceneBitmap, 0, 0, null);
+
+            mParticlesDrawn = !mAmbient && drawParticles(canvas, now);
+            if (mParticlesDrawn) {
+                mLayers.onDrawn(mParticleLayer);
+            }
+
+            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+            DigitAtlas digitAtlas = getDigitAtlas();
+            updateTimeText(mClock.getHour(), mClock.getMinute(), mClock.getSecond(),
+                    showSeconds(), digitAtlas);
+            if (digitAtlas != null) {
+                digitAtlas.draw(canvas, mTimeChars, mTimeLength, mTimeX, layout.getTimeBaseline(),
+                        mTextPaint);
+            } else {
+                canvas.drawText(mTimeChars, 0, mTimeLength, mTimeX, layout.getTimeBaseline(),
+                        mTextPaint);
             }
+            mLayers.onDrawn(mTimeLayer);
         }
 
-        private void setInteractiveLowTemperature(int temp) {
-            if (!isInAmbientMode()) {
-                if (temp <= SunshineWatchFaceUtil.INT_VALUE_DEFAULT_TEMPERATURE) {
-                    mLowTemp = SunshineWatchFaceUtil.STRING_VALUE_DEFAULT_TEMPERATURE;
-                } else {
-                    // Temps are stored as a whole integer and need conversion to shifted double
-                    mLowTemp = SunshineWatchFaceUtil.formatTemperature(SunshineWatchFace.this, (double)temp * 0.1);
-                }
+        /**
+         * Makes {@code weather}, the state last published by the {@link #mWeatherPipeline}, the
+         * one this frame draws, invalidating whatever it changes.
+         */
+        private void updateWeather(WeatherRenderState weather) {
+            WeatherRenderState previous = mWeather;
+            if (weather == previous) {
+                return;
+            }
+            mWeather = weather;
+            boolean iconChanged = previous == null || weather.icon != previous.icon
+                    || weather.ambientIcon != previous.ambientIcon;
+            if (previous == null || (previous.state.diff(weather.state)
+                    & WeatherState.FIELD_LOCATION) != 0) {
+                mSunArcDayDirty = true;
+            }
+            boolean temperatureChanged = previous == null || !CharFormat.equals(
+                    weather.temperature, weather.temperatureLength, previous.temperature,
+                    previous.temperatureLength);
+            if (temperatureChanged) {
+                mTemperatureDirty = true;
+            }
+            if (iconChanged || temperatureChanged) {
+                mLayers.invalidate(RenderLayers.TRIGGER_DATA);
             }
         }
 
-        @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
+        /**
+         * Makes {@link #mLayout} match {@code bounds}. A new layout moves every text and
+         * invalidates every layer; the bitmaps they are cached in are resized if need be.
+         */
+        private FaceLayout updateLayout(Rect bounds) {
+            FaceLayout layout = mLayoutBuilder.setSize(bounds.width(), bounds.height()).build();
+            if (layout == mLayout) {
+                return layout;
+            }
+            mLayout = layout;
+            mTemperatureDirty = true;
+            mDateDirty = true;
+            mWorldClockDirty = true;
+            mTimeHour = -1;
+            mLayers.invalidateAll();
+            mSceneBitmap = resize(mSceneBitmap, mSceneCanvas, layout);
+            mBackgroundBitmap = resize(mBackgroundBitmap, mBackgroundCanvas, layout);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Layout: " + layout);
+            }
+            return layout;
+        }
 
-            int xCenter = bounds.centerX();
-            int yCenter = bounds.centerX();
-            int width = bounds.width();
-            int height = bounds.height();
+        /**
+         * Returns a bitmap the size of {@code layout}, {@code bitmap} itself if it already is,
+         * and points {@code canvas} at it.
+         */
+        private Bitmap resize(Bitmap bitmap, Canvas canvas, FaceLayout layout) {
+            if (bitmap != null && bitmap.getWidth() == layout.getWidth()
+                    && bitmap.getHeight() == layout.getHeight()) {
+                return bitmap;
+            }
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(layout.getWidth(), layout.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+            canvas.setBitmap(bitmap);
+            return bitmap;
+        }
 
-            // Draw the background.
-            if (isInAmbientMode()) {
+        /**
+         * Recomposites {@link #mSceneBitmap} if any of the layers in it is dirty: the background,
+         * the weather icon, the temperature, and the date and world clock unless a peek card is
+         * showing. Ambient mode has a black background and the icon fixed above the temperature.
+         */
+        private void updateScene(long now) {
+            if (!mLayers.isAnyDirty(mBackgroundLayer, mWorldClockLayer)) {
+                return;
+            }
+
+            Canvas canvas = mSceneCanvas;
+            if (mLayers.isDirty(mBackgroundLayer)) {
+                if (!mAmbient) {
+                    updateBackground();
+                }
+                mLayers.onDrawn(mBackgroundLayer);
+            }
+            if (mAmbient) {
                 canvas.drawColor(Color.BLACK);
+                drawAmbientWeatherImage(canvas);
             } else {
-                canvas.drawRect(0, 0, width, height, mBackgroundPaint);
-                mBackgroundGroundPaint.setShader(new LinearGradient(xCenter, yCenter, xCenter, height,
-                        mInteractiveBackgroundGroundTopColor, mInteractiveBackgroundGroundBottomColor,
-                        Shader.TileMode.MIRROR));
-                drawWeatherImage(canvas, bounds);
-                canvas.drawRect(0, bounds.width() * 0.5f, bounds.width(), bounds.height(),
-                        mBackgroundGroundPaint);
+                canvas.drawBitmap(mBackgroundBitmap, 0, 0, null);
+                drawWeatherImage(canvas);
+            }
+            drawTemperatureAndDate(canvas);
+            if (mLayout.isShowingDate() && !mWorldClock.isEmpty()) {
+                drawWorldClock(canvas, now);
             }
+            // Everything was redrawn, but only the layers that changed count as redrawn.
+            mLayers.onDrawn(mIconLayer, mWorldClockLayer);
+        }
 
-            // Draw the Temperature
-            String temperature = mHighTemp + " " + mLowTemp;
-            float halfTempX = mTemperaturePaint.measureText(temperature) * 0.5f;
-            canvas.drawText(temperature, xCenter-halfTempX, yCenter - mHorizonOffset, mTemperaturePaint);
+        /**
+         * Redraws the sky and ground into {@link #mBackgroundBitmap}.
+         */
+        private void updateBackground() {
+            FaceLayout layout = mLayout;
+            updateGroundShader();
+            mBackgroundCanvas.drawRect(0, 0, layout.getWidth(), layout.getHeight(),
+                    mBackgroundPaint);
+            mBackgroundCanvas.drawRect(0, layout.getHorizonY(), layout.getWidth(),
+                    layout.getHeight(), mBackgroundGroundPaint);
+        }
 
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            mTime.setToNow();
-            String text = mAmbient
-                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
-            float halfTextX = mTextPaint.measureText(text) * 0.5f;
-            float textY = mTextPaint.getTextSize();
-            int textYOffset = yCenter + (int) textY;
-            canvas.drawText(text, xCenter-halfTextX, textYOffset, mTextPaint);
+        private void drawTemperatureAndDate(Canvas canvas) {
+            canvas.drawText(mWeather.temperature, 0, mWeather.temperatureLength, mTemperatureX,
+                    mLayout.getTemperatureBaseline(), mTemperaturePaint);
+            if (mLayout.isShowingDate()) {
+                canvas.drawText(mDateChars, 0, mDateLength, mDateX, mLayout.getDateBaseline(),
+                        mDatePaint);
+            }
+        }
 
-            // Only render the day of week and date if there is no peek card, so they do not bleed
-            // into each other in ambient mode.
-            if (getPeekCardPosition().isEmpty()) {
-                // Date
-                String dateString = mDateFormat.format(mDate);
-                float halfDateX = mDatePaint.measureText(dateString) * 0.5f;
-                canvas.drawText(dateString, xCenter-halfDateX,
-                        textYOffset + mLineHeight, mDatePaint);
+        /**
+         * Moves the particles on to {@code now} and draws them over the sky, along with any
+         * lightning flash. They fall in front of the cached
+         * scene, temperature included.
+         *
+         * @return whether particles are animating and need further frames
+         */
+        private boolean drawParticles(Canvas canvas, long now) {
+            int width = mLayout.getWidth();
+            int skyBottom = mLayout.getHorizonY();
+            mParticles.setStyle(mParticleStyleOverride >= 0
+                    ? mParticleStyleOverride : getParticleStyle(mWeather.weather));
+            if (mRenderGovernor.getLevel() != RenderGovernor.LEVEL_FULL
+                    || !mParticles.isActive()) {
+                mParticles.reset();
+                return false;
+            }
+            mParticles.setArea(0, 0, width, skyBottom);
+            mParticles.update(now);
+            canvas.save();
+            canvas.clipRect(0, 0, width, skyBottom);
+            int flashAlpha = mParticles.getFlashAlpha();
+            if (flashAlpha > 0) {
+                mFlashPaint.setAlpha(flashAlpha);
+                canvas.drawRect(0, 0, width, skyBottom, mFlashPaint);
             }
+            int count = mParticles.fillPoints(mParticlePoints);
+            if (mParticles.isStreaks()) {
+                canvas.drawLines(mParticlePoints, 0, count, mRainPaint);
+            } else {
+                canvas.drawPoints(mParticlePoints, 0, count, mSnowPaint);
+            }
+            canvas.restore();
+            return true;
         }
 
-        private void drawWeatherImage(Canvas canvas, Rect bounds) {
-            float fractionalHours = (float)mTime.hour + (float)mTime.minute/60f + (float)mTime.second/3600f;
+        private int getParticleStyle(SunshineWatchFaceUtil.WeatherBitmap weather) {
+            switch (weather) {
+                case LIGHT_RAIN:
+                    return ParticleSystem.STYLE_LIGHT_RAIN;
+                case RAIN:
+                    return ParticleSystem.STYLE_RAIN;
+                case STORM:
+                    return ParticleSystem.STYLE_STORM;
+                case SNOW:
+                    return ParticleSystem.STYLE_SNOW;
+                default:
+                    return ParticleSystem.STYLE_NONE;
+            }
+        }
 
-            if (START_TIME < fractionalHours && fractionalHours < END_TIME) {
-                float percentRange = (END_TIME - fractionalHours) / (END_TIME - START_TIME);
-                float drawnAngleRatio = percentRange * (HIGH_ANGLE - LOW_ANGLE) + LOW_ANGLE;
-                float drawnAngleRadians = drawnAngleRatio * (float) Math.PI / 180f;
+        /**
+         * Draws the secondary clocks, centered under the date.
+         */
+        private void drawWorldClock(Canvas canvas, long now) {
+            if (mWorldClock.update(now) || mWorldClockDirty) {
+                mWorldClockX = mLayout.getCenterX() - 0.5f * mWorldClockPaint.measureText(
+                        mWorldClock.getText(), 0, mWorldClock.getLength());
+                mWorldClockDirty = false;
+            }
+            canvas.drawText(mWorldClock.getText(), 0, mWorldClock.getLength(), mWorldClockX,
+                    mLayout.getWorldClockBaseline(), mWorldClockPaint);
+        }
 
-                int xCenter = bounds.centerX() - mWeatherBitmap.getWidth() / 2;
-                int yCenter = bounds.centerY() - mWeatherBitmap.getHeight() / 2;
+        /**
+         * Draws the ambient weather icon above the temperature. Static pixels are the ones most
+         * at risk of burning in, so the icon is left out on displays that need protection.
+         */
+        private void drawAmbientWeatherImage(Canvas canvas) {
+            if (mBurnInProtection) {
+                return;
+            }
+            Bitmap icon = mWeather.ambientIcon;
+            if (icon != null) {
+                canvas.drawBitmap(icon, mLayout.getCenterX() - icon.getWidth() / 2,
+                        mLayout.getAmbientIconBottom() - icon.getHeight(), null);
+            }
+        }
 
-                int xWeatherPos = (int) (DRAWN_RADIUS * (float) Math.cos(drawnAngleRadians) + xCenter);
-                int yWeatherPos = (int) (-1 * DRAWN_RADIUS * (float) Math.sin(drawnAngleRadians) + yCenter);
-                canvas.drawBitmap(mWeatherBitmap, xWeatherPos, yWeatherPos, mBackgroundPaint);
+        /**
+         * Applies the palette entry for {@code minuteOfDay}. The ground shader picks up a change in
+         * the ground colors the next time {@link #updateGroundShader} runs.
+         *
+         * @return whether any of the colors changed
+         */
+        private boolean updateSkyColors(int minuteOfDay) {
+            int skyColor = mSkyPalette.getSkyColor(minuteOfDay);
+            int groundTopColor = mSkyPalette.getGroundTopColor(minuteOfDay);
+            int groundBottomColor = mSkyPalette.getGroundBottomColor(minuteOfDay);
+            if (skyColor == mInteractiveBackgroundColor
+                    && groundTopColor == mInteractiveBackgroundGroundTopColor
+                    && groundBottomColor == mInteractiveBackgroundGroundBottomColor) {
+                return false;
+            }
+            if (skyColor != mInteractiveBackgroundColor) {
+                mInteractiveBackgroundColor = skyColor;
+                mBackgroundPaint.setColor(skyColor);
             }
+            mInteractiveBackgroundGroundTopColor = groundTopColor;
+            mInteractiveBackgroundGroundBottomColor = groundBottomColor;
+            return true;
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * Rebuilds the ground gradient only if the bounds or colors it depends on have changed.
          */
-        private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+        private void updateGroundShader() {
+            int width = mLayout.getWidth();
+            int height = mLayout.getHeight();
+            if (!mRenderGovernor.areEffectsEnabled()) {
+                // A flat ground; dropping the shader makes it be rebuilt once effects return.
+                mGroundShader = null;
+                mBackgroundGroundPaint.setShader(null);
+                mBackgroundGroundPaint.setColor(mInteractiveBackgroundGroundTopColor);
+                return;
+            }
+            if (mGroundShader != null && mGroundShaderWidth == width
+                    && mGroundShaderHeight == height
+                    && mGroundShaderTopColor == mInteractiveBackgroundGroundTopColor
+                    && mGroundShaderBottomColor == mInteractiveBackgroundGroundBottomColor) {
+                return;
+            }
+            int xCenter = mLayout.getCenterX();
+            mGroundShader = new LinearGradient(xCenter, mLayout.getHorizonY(), xCenter, height,
+                    mInteractiveBackgroundGroundTopColor, mInteractiveBackgroundGroundBottomColor,
+                    Shader.TileMode.MIRROR);
+            mBackgroundGroundPaint.setShader(mGroundShader);
+            mGroundShaderWidth = width;
+            mGroundShaderHeight = height;
+            mGroundShaderTopColor = mInteractiveBackgroundGroundTopColor;
+            mGroundShaderBottomColor = mInteractiveBackgroundGroundBottomColor;
+        }
+
+        private void updateTemperatureText() {
+            mTemperatureX = mLayout.getCenterX() - 0.5f * mTemperaturePaint.measureText(
+                    mWeather.temperature, 0, mWeather.temperatureLength);
+            mTemperatureDirty = false;
+        }
+
+        private void updateTimeText(int hour, int minute, int second, boolean showSeconds,
+                                    DigitAtlas digitAtlas) {
+            if (hour == mTimeHour && minute == mTimeMinute && second == mTimeSecond
+                    && showSeconds == mTimeShowsSeconds) {
+                return;
+            }
+            mTimeLength = CharFormat.formatTime(mTimeChars, hour, minute, second, showSeconds);
+            float width = digitAtlas != null
+                    ? digitAtlas.measure(mTimeChars, mTimeLength)
+                    : mTextPaint.measureText(mTimeChars, 0, mTimeLength);
+            mTimeX = mLayout.getCenterX() - width * 0.5f;
+            mTimeHour = hour;
+            mTimeMinute = minute;
+            mTimeSecond = second;
+            mTimeShowsSeconds = showSeconds;
+        }
+
+        private void updateDateText() {
+            String dateString = mDateFormat.format(mDate);
+            mDateChars = CharFormat.ensureCapacity(mDateChars, dateString.length());
+            mDateLength = CharFormat.appendString(mDateChars, 0, dateString);
+            mDateX = mLayout.getCenterX()
+                    - 0.5f * mDatePaint.measureText(mDateChars, 0, mDateLength);
+            mDateDirty = false;
+            mLayers.invalidateLayer(mDateLayer);
+        }
+
+        /**
+         * Draws the weather icon where the sun is on its arc. The icon sets behind the ground, so
+         * it is clipped to the sky.
+         */
+        private void drawWeatherImage(Canvas canvas) {
+            mSunArc.layout(mLayout.getCenterX(), mLayout.getHorizonY(),
+                    mLayout.getSunArcRadius());
+            int minute = getSunMinute();
+            mIconMinute = minute;
+            if (mSunArc.isVisible(minute)) {
+                canvas.save();
+                canvas.clipRect(0, 0, mLayout.getWidth(), mLayout.getHorizonY());
+                Bitmap icon = mWeather.icon;
+                canvas.drawBitmap(icon, mSunArc.getX(minute) - icon.getWidth() / 2,
+                        mSunArc.getY(minute) - icon.getHeight() / 2,
+                        mBackgroundPaint);
+                canvas.restore();
+            }
+        }
+
+        /**
+         * Returns the minute of the day the sun is drawn at: the current one, or the one it was
+         * frozen at by the {@link #mRenderGovernor}.
+         */
+        private int getSunMinute() {
+            int minute = mClock.getMinuteOfDay();
+            if (mRenderGovernor.isSunFrozen()) {
+                if (mFrozenSunMinute < 0) {
+                    mFrozenSunMinute = minute;
+                }
+                minute = mFrozenSunMinute;
             }
+            return minute;
+        }
+
+        /**
+         * Recomputes the sun's path for the local day containing {@code now}.
+         */
+        private void updateSunArcDay(long now) {
+            mCalendar.setTimeInMillis(now);
+            mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+            mCalendar.set(Calendar.MINUTE, 0);
+            mCalendar.set(Calendar.SECOND, 0);
+            mCalendar.set(Calendar.MILLISECOND, 0);
+            WeatherState state = mWeather.state;
+            mSunArc.computeDay(state.hasLocation(), state.getLatitude(), state.getLongitude(),
+                    mCalendar.getTimeInMillis(),
+                    mClock.getTimeZone());
+            mSkyPalette.compute(mSunArc);
+            mSunArcDayDirty = false;
+            mLayers.invalidateLayer(mIconLayer);
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
+         * Starts the {@link #mFrameScheduler} tick if it should be running and isn't currently or
+         * stops it if it shouldn't be running but currently is.
+         */
+        private void updateTimer() {
+            mFrameScheduler.setTicking(shouldTimerBeRunning(), showSeconds());
+        }
+
+        /**
+         * Returns whether the time is drawn with seconds: only in interactive mode, and only
+         * while the {@link #mRenderGovernor} allows it.
+         */
+        private boolean showSeconds() {
+            return !mAmbient && mRenderGovernor.isShowingSeconds();
+        }
+
+        /**
+         * Returns whether the {@link #mFrameScheduler} tick should be running. The tick should
          * only run when we're visible and in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
@@ -465,133 +1196,121 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle the periodic tick in interactive mode.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
-
-        private void updateConfigDataItemAndUiOnStartup() {
-            SunshineWatchFaceUtil.fetchConfigDataMap(mGoogleApiClient,
-                    new SunshineWatchFaceUtil.FetchConfigDataMapCallback() {
-                        @Override
-                        public void onConfigDataMapFetched(DataMap startupConfig) {
-                            // If the DataItem hasn't been created yet or some keys are missing,
-                            // use the default values.
-                            setDefaultValuesForMissingConfigKeys(startupConfig);
-                            // TODO: Do we need this??? We just got the config map, so why are we sending it right back?
-//                            SunshineWatchFaceUtil.putConfigDataItem(mGoogleApiClient, startupConfig);
-
-                            updateUiForConfigDataMap(startupConfig);
-                        }
-                    }
-            );
+            mFrameStats.onTick();
+            long now = System.currentTimeMillis();
+            mFrameScheduler.onTick(now, mFrameScheduler.contentKey(now));
+        }
+
+        @Override // RenderTarget
+        public void beginOffscreenRendering() {
+            mWeatherPipeline.setHeld(true);
+            updateTimeZone(TimeZone.getTimeZone("UTC"));
+            if (mRenderGovernor.setSuspended(true)) {
+                applyRenderLevel();
+            }
+        }
+
+        @Override // RenderTarget
+        public void setRenderLayout(boolean isRound) {
+            applyLayout(isRound);
         }
 
-        private void setDefaultValuesForMissingConfigKeys(DataMap config) {
-            addIntKeyIfMissing(config, SunshineWatchFaceUtil.KEY_WEATHER_IMAGE,
-                    SunshineWatchFaceUtil.WeatherBitmap.getDefaultValue());
-            addIntKeyIfMissing(config, SunshineWatchFaceUtil.KEY_HIGH_TEMP,
-                    SunshineWatchFaceUtil.INT_VALUE_DEFAULT_TEMPERATURE);
-            addIntKeyIfMissing(config, SunshineWatchFaceUtil.KEY_LOW_TEMP,
-                    SunshineWatchFaceUtil.INT_VALUE_DEFAULT_TEMPERATURE);
+        @Override // RenderTarget
+        public void setRenderAmbient(boolean ambient) {
+            setAmbient(ambient);
         }
 
-        private void addIntKeyIfMissing(DataMap config, String key, int value) {
-            if (!config.containsKey(key)) {
-                config.putInt(key, value);
+        @Override // RenderTarget
+        public void setRenderParticles(int count) {
+            mParticles.reset();
+            if (count > 0) {
+                mParticleStyleOverride = ParticleSystem.STYLE_STORM;
+                mParticles.setLimit(count);
+            } else {
+                mParticleStyleOverride = -1;
+                mParticles.setLimit(MAX_PARTICLES);
             }
         }
 
-        @Override // DataApi.DataListener
-        public void onDataChanged(DataEventBuffer dataEventBuffer) {
-            for (DataEvent dataEvent : dataEventBuffer) {
-                if (dataEvent.getType() != DataEvent.TYPE_CHANGED) {
-                    continue;
-                }
+        @Override // RenderTarget
+        public void setRenderWeather(WeatherState state) {
+            mWeatherPipeline.showNow(state);
+        }
 
-                DataItem dataItem = dataEvent.getDataItem();
-                if (!dataItem.getUri().getPath().equals(
-                        SunshineWatchFaceUtil.SUNSHINE_PATH_FEATURE)) {
-                    continue;
-                }
+        @Override // RenderTarget
+        public void renderFrame(Canvas canvas, Rect bounds, long nowMs) {
+            drawFrame(canvas, bounds, nowMs);
+        }
 
-                DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
-                DataMap config = dataMapItem.getDataMap();
-                if (Log.isLoggable(TAG, Log.DEBUG)) {
-                    Log.d(TAG, "Config DataItem updated:" + config);
-                }
-                updateUiForConfigDataMap(config);
-            }
+        @Override // RenderTarget
+        public String takeRenderLayerCounts() {
+            String counts = mLayers.toString();
+            mLayers.resetCounts();
+            return counts;
         }
 
-        private void updateUiForConfigDataMap(final DataMap config) {
-            boolean uiUpdated = false;
-            for (String configKey : config.keySet()) {
-                if (!config.containsKey(configKey)) {
-                    continue;
-                }
-                int keyId = config.getInt(configKey);
-                if (Log.isLoggable(TAG, Log.DEBUG)) {
-                    Log.d(TAG, "Found Sunshine config key: " + configKey + " -> "
-                            + Integer.toHexString(keyId));
-                }
-                if (updateUiForKey(configKey, keyId)) {
-                    uiUpdated = true;
-                }
-            }
-            if (uiUpdated) {
-                invalidate();
+        @Override // RenderTarget
+        public void finishOffscreenRendering() {
+            updateTimeZone(TimeZone.getDefault());
+            if (mRenderGovernor.setSuspended(false)) {
+                applyRenderLevel();
             }
+            applyLayout(mIsRound);
+            setAmbient(isInAmbientMode());
+            setRenderParticles(0);
+            // Publishes the real weather again, which requests a frame of its own.
+            mWeatherPipeline.setHeld(false);
+            mFrameScheduler.requestFrame();
         }
 
-        /**
-         * Updates the weather image or temperatures of a UI item according to the given {@code configKey}. Does nothing if
-         * {@code configKey} isn't recognized.
-         *
-         * @return whether UI has been updated
-         */
-        private boolean updateUiForKey(String configKey, int keyId) {
-            if (configKey.equals(SunshineWatchFaceUtil.KEY_WEATHER_IMAGE)) {
-                setInteractiveWeatherImage(keyId);
-            } else if (configKey.equals(SunshineWatchFaceUtil.KEY_HIGH_TEMP)) {
-                setInteractiveHighTemperature(keyId);
-            } else if (configKey.equals(SunshineWatchFaceUtil.KEY_LOW_TEMP)) {
-                setInteractiveLowTemperature(keyId);
-            } else {
-                Log.w(TAG, "Ignoring unknown config key: " + configKey);
-                return false;
-            }
-            return true;
+        @Override // FrameScheduler.Host
+        public void scheduleTick(long delayMs) {
+            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+            mFrameStats.onTickScheduled(delayMs);
         }
 
-        @Override // GoogleApiClient.ConnectionCallbacks
-        public void onConnected(@Nullable Bundle connectionHint) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnected: " + connectionHint);
-            }
-            Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
-            updateConfigDataItemAndUiOnStartup();
+        @Override // FrameScheduler.Host
+        public void cancelTick() {
+            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mFrameStats.onTickCancelled();
         }
 
-        @Override  // GoogleApiClient.ConnectionCallbacks
-        public void onConnectionSuspended(int cause) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnectionSuspended: " + cause);
-            }
+        @Override // WeatherTransport.Listener
+        public void onConnected() {
+            mWeatherTransport.fetchCurrent();
         }
 
-        @Override  // GoogleApiClient.OnConnectionFailedListener
-        public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnectionFailed: " + connectionResult);
+        @Override // WeatherTransport.Listener
+        public void onWeatherFetched(WeatherState.Update current) {
+            mWeatherPipeline.onWeatherFetched(current);
+        }
+
+        @Override // WeatherTransport.Listener
+        public void onWeatherChanged(WeatherState.Update changes) {
+            mWeatherPipeline.onWeatherChanged(changes);
+        }
+
+        @Override // WeatherPipeline.Callback
+        public void onRenderStatePublished() {
+            mUpdateTimeHandler.sendEmptyMessage(MSG_WEATHER_PUBLISHED);
+        }
+
+        /**
+         * Records how long the newly published weather took to get through the pipeline and
+         * requests the frame that shows it.
+         */
+        private void onWeatherPublished() {
+            WeatherRenderState weather = mWeatherPipeline.getRenderState();
+            if (weather.receivedNs != 0) {
+                mLatencyTrace.begin(LatencyTrace.STAGE_APPLY, weather.receivedNs);
+                mLatencyTrace.end(LatencyTrace.STAGE_APPLY, weather.publishedNs);
+                mLatencyTrace.begin(LatencyTrace.STAGE_REDRAW, weather.publishedNs);
             }
+            mFrameScheduler.requestFrame();
         }
     }
 }
@@ -2,7 +2,6 @@ package edu.warren.sunshine.sunshinewatchface;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.net.Uri;
 import android.util.Log;
 
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -10,8 +9,6 @@ import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.Wearable;
 
@@ -21,27 +18,6 @@ import com.google.android.gms.wearable.Wearable;
 public class SunshineWatchFaceUtil {
     private static final String TAG = "SunshineWatchFaceUtil";
 
-    /**
-     * The path for the {@link DataItem} containing {@link SunshineWatchFace} configuration.
-     */
-    public static final String SUNSHINE_PATH_FEATURE = "/sunshine_watch_face_config";
-
-    /**
-     * The {@link DataMap} key for {@link SunshineWatchFace} weather image.
-     * The image name must be a {@link String} recognized by {@link WeatherBitmap}.
-     */
-    public static final String KEY_WEATHER_IMAGE = "WEATHER_IMAGE";
-
-    /**
-     * The {@link DataMap} key for {@link SunshineWatchFace} high temperature.
-     */
-    public static final String KEY_HIGH_TEMP = "HIGH_TEMP";
-
-    /**
-     * The {@link DataMap} key for {@link SunshineWatchFace} low temperature.
-     */
-    public static final String KEY_LOW_TEMP = "LOW_TEMP";
-
     /**
      * Name of the default interactive mode background color and the ambient mode background color.
      */
@@ -63,102 +39,124 @@ public class SunshineWatchFaceUtil {
     public static final int[] DIGITAL_DATE_COLOR_RGB = {0xBB, 0xBB, 0xBB};
     public static final int DIGITAL_DATE_COLOR = parseColor(DIGITAL_DATE_COLOR_RGB);
 
-    // An impossibly low temperature so that the display shows a known default String version
-    public static final int INT_VALUE_DEFAULT_TEMPERATURE = -1000;
+    // Shown for WeatherState.UNKNOWN_TEMPERATURE, before any temperature has been received
     public static final String STRING_VALUE_DEFAULT_TEMPERATURE = "--";
 
     private static int parseColor(int[] rgbargs) {
         return  Color.rgb(rgbargs[0], rgbargs[1], rgbargs[2]);
     }
 
-    /**
-     * Callback interface to perform an action with the current config {@link DataMap} for
-     * {@link SunshineWatchFace}.
-     */
-    public interface FetchConfigDataMapCallback {
-        /**
-         * Callback invoked with the current config {@link DataMap} for
-         * {@link SunshineWatchFace}.
-         */
-        void onConfigDataMapFetched(DataMap config);
-    }
-
     private static int parseColor(String colorName) {
         return Color.parseColor(colorName.toLowerCase());
     }
 
-    public static String formatTemperature(Context context, double temperature) {
-        // For presentation, assume the user doesn't care about tenths of a degree.
-        return String.format(context.getString(R.string.format_temperature), temperature);
+    /**
+     * Builds the table of display strings for temperatures in {@code unit} and the current
+     * locale. For presentation, assume the user doesn't care about tenths of a degree.
+     */
+    public static TemperatureTable createTemperatureTable(Context context, int unit) {
+        return new TemperatureTable(context.getString(R.string.format_temperature),
+                STRING_VALUE_DEFAULT_TEMPERATURE,
+                context.getResources().getConfiguration().locale, unit);
     }
 
     /**
-     * Asynchronously fetches the current config {@link DataMap} for {@link SunshineWatchFace}
-     * and passes it to the given callback.
-     * <p>
-     * If the current config {@link DataItem} doesn't exist, it isn't created and the callback
-     * receives an empty DataMap.
+     * Adds the weather fields present in {@code config} to {@code update}. Keys that are missing
+     * are left out of the update rather than replaced with defaults, so they keep their current
+     * value when it is applied.
      */
-    public static void fetchConfigDataMap(final GoogleApiClient client,
-                                          final FetchConfigDataMapCallback callback) {
-        Wearable.NodeApi.getLocalNode(client).setResultCallback(
-                new ResultCallback<NodeApi.GetLocalNodeResult>() {
-                    @Override
-                    public void onResult(NodeApi.GetLocalNodeResult getLocalNodeResult) {
-                        String localNode = getLocalNodeResult.getNode().getId();
-                        Uri uri = new Uri.Builder()
-                                .scheme("wear")
-                                .path(SunshineWatchFaceUtil.SUNSHINE_PATH_FEATURE)
-                                .authority(localNode)
-                                .build();
-                        Wearable.DataApi.getDataItem(client, uri)
-                                .setResultCallback(new DataItemResultCallback(callback));
-                    }
-                }
-        );
+    public static void readWeatherUpdate(DataMap config, WeatherState.Update update) {
+        if (config.containsKey(WeatherDataItem.KEY_FORECAST)) {
+            readForecast(config.getByteArray(WeatherDataItem.KEY_FORECAST), update);
+        }
+        for (String configKey : config.keySet()) {
+            if (configKey.equals(WeatherDataItem.KEY_WEATHER_IMAGE)) {
+                update.setWeatherId(config.getInt(configKey));
+            } else if (configKey.equals(WeatherDataItem.KEY_HIGH_TEMP)) {
+                update.setHighTemp(config.getInt(configKey));
+            } else if (configKey.equals(WeatherDataItem.KEY_LOW_TEMP)) {
+                update.setLowTemp(config.getInt(configKey));
+            } else if (configKey.equals(WeatherDataItem.KEY_TEMPERATURE_UNIT)) {
+                update.setTemperatureUnit(config.getInt(configKey));
+            } else if (configKey.equals(WeatherDataItem.KEY_LATITUDE)
+                    || configKey.equals(WeatherDataItem.KEY_LONGITUDE)) {
+                // Handled as a pair below.
+            } else if (configKey.equals(WeatherDataItem.KEY_FORECAST)) {
+                // Handled above, so that the separate keys take precedence.
+            } else {
+                Log.w(TAG, "Ignoring unknown config key: " + configKey);
+            }
+        }
+        if (config.containsKey(WeatherDataItem.KEY_LATITUDE)
+                && config.containsKey(WeatherDataItem.KEY_LONGITUDE)) {
+            update.setLocation(config.getDouble(WeatherDataItem.KEY_LATITUDE),
+                    config.getDouble(WeatherDataItem.KEY_LONGITUDE));
+        }
     }
 
     /**
-     * Overwrites the current config {@link DataItem}'s {@link DataMap} with {@code newConfig}.
-     * If the config DataItem doesn't exist, it's created.
+     * Puts the weather fields carried by {@code update} into {@code config}, using the keys
+     * {@link #readWeatherUpdate} reads.
      */
-    public static void putConfigDataItem(GoogleApiClient googleApiClient, DataMap newConfig) {
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(SUNSHINE_PATH_FEATURE);
-        putDataMapRequest.setUrgent();
-        DataMap configToPut = putDataMapRequest.getDataMap();
-        configToPut.putAll(newConfig);
-        Wearable.DataApi.putDataItem(googleApiClient, putDataMapRequest.asPutDataRequest())
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (Log.isLoggable(TAG, Log.DEBUG)) {
-                            Log.d(TAG, "putDataItem result status: " + dataItemResult.getStatus());
-                        }
-                    }
-                });
+    public static void writeWeatherUpdate(WeatherState.Update update, DataMap config) {
+        int fields = update.getFields();
+        if ((fields & WeatherState.FIELD_WEATHER_ID) != 0) {
+            config.putInt(WeatherDataItem.KEY_WEATHER_IMAGE, update.getWeatherId());
+        }
+        if ((fields & WeatherState.FIELD_HIGH_TEMP) != 0) {
+            config.putInt(WeatherDataItem.KEY_HIGH_TEMP, update.getHighTemp());
+        }
+        if ((fields & WeatherState.FIELD_LOW_TEMP) != 0) {
+            config.putInt(WeatherDataItem.KEY_LOW_TEMP, update.getLowTemp());
+        }
+        if ((fields & WeatherState.FIELD_LOCATION) != 0) {
+            config.putDouble(WeatherDataItem.KEY_LATITUDE, update.getLatitude());
+            config.putDouble(WeatherDataItem.KEY_LONGITUDE, update.getLongitude());
+        }
+        if ((fields & WeatherState.FIELD_TEMPERATURE_UNIT) != 0) {
+            config.putInt(WeatherDataItem.KEY_TEMPERATURE_UNIT, update.getTemperatureUnit());
+        }
+        if ((fields & WeatherState.FIELD_FORECAST) != 0 && update.getForecast() != null) {
+            config.putByteArray(WeatherDataItem.KEY_FORECAST,
+                    update.getForecast().getPayload());
+        }
     }
 
-    private static class DataItemResultCallback implements ResultCallback<DataApi.DataItemResult> {
-
-        private final FetchConfigDataMapCallback mCallback;
-
-        public DataItemResultCallback(FetchConfigDataMapCallback callback) {
-            mCallback = callback;
+    private static void readForecast(byte[] payload, WeatherState.Update update) {
+        Forecast forecast;
+        try {
+            forecast = Forecast.fromPayload(payload);
+            if (forecast.getDayCount() > 0) {
+                update.setWeatherId(forecast.getDayWeatherId(0))
+                        .setHighTemp(forecast.getDayHigh(0))
+                        .setLowTemp(forecast.getDayLow(0));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring unreadable forecast", e);
+            return;
         }
+        update.setForecast(forecast);
+    }
 
-        @Override
-        public void onResult(DataApi.DataItemResult dataItemResult) {
-            if (dataItemResult.getStatus().isSuccess()) {
-                if (dataItemResult.getDataItem() != null) {
-                    DataItem configDataItem = dataItemResult.getDataItem();
-                    DataMapItem dataMapItem = DataMapItem.fromDataItem(configDataItem);
-                    DataMap config = dataMapItem.getDataMap();
-                    mCallback.onConfigDataMapFetched(config);
-                } else {
-                    mCallback.onConfigDataMapFetched(new DataMap());
-                }
-            }
+    /**
+     * Overwrites the current config {@link DataItem}'s {@link DataMap} with {@code newConfig}.
+     * If the config DataItem doesn't exist, it's created. The item is stamped with
+     * {@link WeatherDataItem#KEY_PUBLISHED_MS}. An {@code urgent} write is synced to
+     * the other device right away, waking both radios; otherwise the data layer batches it.
+     * {@code callback} receives the result of the write.
+     */
+    public static void putConfigDataItem(GoogleApiClient googleApiClient, DataMap newConfig,
+                                         boolean urgent,
+                                         ResultCallback<DataApi.DataItemResult> callback) {
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WeatherDataItem.PATH);
+        if (urgent) {
+            putDataMapRequest.setUrgent();
         }
+        DataMap configToPut = putDataMapRequest.getDataMap();
+        configToPut.putAll(newConfig);
+        configToPut.putLong(WeatherDataItem.KEY_PUBLISHED_MS, System.currentTimeMillis());
+        Wearable.DataApi.putDataItem(googleApiClient, putDataMapRequest.asPutDataRequest())
+                .setResultCallback(callback);
     }
 
     public enum WeatherBitmap {
@@ -180,6 +178,20 @@ public class SunshineWatchFaceUtil {
             this.id = id;
         }
 
+        public static WeatherBitmap getDefault() { return CLEAR; }
+
+        /**
+         * Returns the constant with the given {@link #value}, or null if there is none.
+         */
+        public static WeatherBitmap fromValue(int value) {
+            for (WeatherBitmap weatherBitmap : values()) {
+                if (weatherBitmap.value == value) {
+                    return weatherBitmap;
+                }
+            }
+            return null;
+        }
+
         public static int getDefaultValue() { return CLEAR.value; }
         public static int getDefaultID() { return CLEAR.id; }
     }
@@ -0,0 +1,318 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link WeatherTransport} over the Wearable data layer: the weather is the
+ * {@link WeatherDataItem#PATH} data item. The phone and the watch each own one, and the one
+ * written last, by {@link WeatherDataItem#KEY_PUBLISHED_MS}, is current.
+ * <p>
+ * Results and data events arrive on the UI thread, which only freezes the weather data items
+ * they carry. The items are parsed into updates and delivered on the thread of the handler
+ * given to the constructor. A callback that completes after {@link #disconnect()} belongs to an
+ * earlier connection and is ignored, as is a delivery that is still queued by then.
+ * <p>
+ * {@link #publish} reads the newest item and writes it back, with the update merged in, as this
+ * node's item. Publishes are written one at a time, so that each reads what the one before wrote.
+ */
+public class WearableWeatherTransport implements WeatherTransport, DataApi.DataListener,
+        GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+    private static final String TAG = "WearableWeatherTransport";
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final LatencyTrace mTrace;
+    private final Handler mDeliveryHandler;
+
+    /**
+     * Filled with each delivery; only used on the delivery thread.
+     */
+    private final WeatherState.Update mUpdate = new WeatherState.Update();
+
+    /**
+     * Fields published while an earlier publish is still being written; only used on the UI
+     * thread.
+     */
+    private final WeatherState.Update mPendingPublish = new WeatherState.Update();
+    private boolean mPublishing;
+
+    private volatile Listener mListener;
+
+    /**
+     * Counts connections, so that callbacks from an earlier one can be recognized.
+     */
+    private volatile int mConnection;
+
+    public WearableWeatherTransport(Context context, LatencyTrace trace,
+                                    Handler deliveryHandler) {
+        mTrace = trace;
+        mDeliveryHandler = deliveryHandler;
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        mListener = listener;
+        mConnection++;
+        mTrace.begin(LatencyTrace.STAGE_CONNECT, System.nanoTime());
+        mGoogleApiClient.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        mListener = null;
+        mConnection++;
+        mTrace.cancel(LatencyTrace.STAGE_CONNECT);
+        mTrace.cancel(LatencyTrace.STAGE_ITEM_FETCH);
+        mPendingPublish.clear();
+        mPublishing = false;
+        if (mGoogleApiClient.isConnected()) {
+            Wearable.DataApi.removeListener(mGoogleApiClient, this);
+        }
+        mGoogleApiClient.disconnect();
+    }
+
+    /**
+     * Fetches the config data item of every node and delivers the newest. If no node has one,
+     * none is created and the listener receives an empty update.
+     */
+    @Override
+    public void fetchCurrent() {
+        mTrace.begin(LatencyTrace.STAGE_ITEM_FETCH, System.nanoTime());
+        Wearable.DataApi.getDataItems(mGoogleApiClient, configUri())
+                .setResultCallback(new DataItemsResultCallback(mConnection));
+    }
+
+    @Override
+    public void publish(WeatherState.Update update) {
+        mPendingPublish.merge(update);
+        if (!mPublishing) {
+            publishPending();
+        }
+    }
+
+    /**
+     * Reads the items of every node, merges the pending fields into the newest and writes the
+     * result. Once written, starts over if more fields were published in the meantime.
+     */
+    private void publishPending() {
+        mPublishing = true;
+        final int connection = mConnection;
+        final DataMap changes = new DataMap();
+        SunshineWatchFaceUtil.writeWeatherUpdate(mPendingPublish, changes);
+        mPendingPublish.clear();
+        Wearable.DataApi.getDataItems(mGoogleApiClient, configUri()).setResultCallback(
+                new ResultCallback<DataItemBuffer>() {
+                    @Override
+                    public void onResult(DataItemBuffer dataItemBuffer) {
+                        DataMap config = new DataMap();
+                        try {
+                            if (connection != mConnection) {
+                                return;
+                            }
+                            DataMap newest = dataItemBuffer.getStatus().isSuccess()
+                                    ? newestConfig(dataItemBuffer) : null;
+                            if (newest != null) {
+                                config.putAll(newest);
+                            }
+                        } finally {
+                            dataItemBuffer.release();
+                        }
+                        config.putAll(changes);
+                        // Weather comes from the phone; nothing the watch publishes needs an
+                        // immediate sync.
+                        SunshineWatchFaceUtil.putConfigDataItem(mGoogleApiClient, config, false,
+                                new PutResultCallback(connection));
+                    }
+                });
+    }
+
+    @Override // DataApi.DataListener
+    public void onDataChanged(DataEventBuffer dataEventBuffer) {
+        if (mListener == null) {
+            return;
+        }
+        // The buffer is released when this returns, so keep frozen copies of the items.
+        final List<DataItem> dataItems = new ArrayList<>();
+        for (DataEvent dataEvent : dataEventBuffer) {
+            if (dataEvent.getType() != DataEvent.TYPE_CHANGED) {
+                continue;
+            }
+
+            DataItem dataItem = dataEvent.getDataItem();
+            if (!dataItem.getUri().getPath().equals(
+                    WeatherDataItem.PATH)) {
+                continue;
+            }
+            dataItems.add(dataItem.freeze());
+        }
+        if (dataItems.isEmpty()) {
+            return;
+        }
+        final int connection = mConnection;
+        mDeliveryHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Listener listener = mListener;
+                if (connection != mConnection || listener == null) {
+                    return;
+                }
+                mUpdate.clear();
+                for (DataItem dataItem : dataItems) {
+                    DataMap config = DataMapItem.fromDataItem(dataItem).getDataMap();
+                    if (Log.isLoggable(TAG, Log.DEBUG)) {
+                        Log.d(TAG, "Config DataItem updated:" + config);
+                    }
+                    SunshineWatchFaceUtil.readWeatherUpdate(config, mUpdate);
+                }
+                if (!mUpdate.isEmpty()) {
+                    listener.onWeatherChanged(mUpdate);
+                }
+            }
+        });
+    }
+
+    @Override // GoogleApiClient.ConnectionCallbacks
+    public void onConnected(@Nullable Bundle connectionHint) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "onConnected: " + connectionHint);
+        }
+        if (mListener == null) {
+            return;
+        }
+        mTrace.end(LatencyTrace.STAGE_CONNECT, System.nanoTime());
+        Wearable.DataApi.addListener(mGoogleApiClient, this);
+        mListener.onConnected();
+    }
+
+    @Override  // GoogleApiClient.ConnectionCallbacks
+    public void onConnectionSuspended(int cause) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "onConnectionSuspended: " + cause);
+        }
+    }
+
+    @Override  // GoogleApiClient.OnConnectionFailedListener
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "onConnectionFailed: " + connectionResult);
+        }
+        mTrace.cancel(LatencyTrace.STAGE_CONNECT);
+    }
+
+    /**
+     * Returns the URI that matches the config data item of every node.
+     */
+    private static Uri configUri() {
+        return Uri.parse("wear:" + WeatherDataItem.PATH);
+    }
+
+    /**
+     * Returns the data map of the item in {@code dataItems} with the latest
+     * {@link WeatherDataItem#KEY_PUBLISHED_MS}, or null if there are none.
+     */
+    private static DataMap newestConfig(Iterable<DataItem> dataItems) {
+        DataMap newest = null;
+        for (DataItem dataItem : dataItems) {
+            DataMap config = DataMapItem.fromDataItem(dataItem).getDataMap();
+            if (newest == null || config.getLong(WeatherDataItem.KEY_PUBLISHED_MS)
+                    > newest.getLong(WeatherDataItem.KEY_PUBLISHED_MS)) {
+                newest = config;
+            }
+        }
+        return newest;
+    }
+
+    private class PutResultCallback implements ResultCallback<DataApi.DataItemResult> {
+
+        private final int mConnection;
+
+        public PutResultCallback(int connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public void onResult(DataApi.DataItemResult dataItemResult) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "putDataItem result status: " + dataItemResult.getStatus());
+            }
+            if (mConnection != WearableWeatherTransport.this.mConnection) {
+                return;
+            }
+            mPublishing = false;
+            if (!mPendingPublish.isEmpty()) {
+                publishPending();
+            }
+        }
+    }
+
+    private class DataItemsResultCallback implements ResultCallback<DataItemBuffer> {
+
+        private final int mConnection;
+
+        public DataItemsResultCallback(int connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public void onResult(DataItemBuffer dataItemBuffer) {
+            // The buffer has to be released, so keep frozen copies of the items.
+            final List<DataItem> dataItems = new ArrayList<>();
+            try {
+                if (mConnection != WearableWeatherTransport.this.mConnection
+                        || mListener == null) {
+                    return;
+                }
+                mTrace.end(LatencyTrace.STAGE_ITEM_FETCH, System.nanoTime());
+                if (!dataItemBuffer.getStatus().isSuccess()) {
+                    return;
+                }
+                for (DataItem dataItem : dataItemBuffer) {
+                    dataItems.add(dataItem.freeze());
+                }
+            } finally {
+                dataItemBuffer.release();
+            }
+            mDeliveryHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Listener listener = mListener;
+                    if (mConnection != WearableWeatherTransport.this.mConnection
+                            || listener == null) {
+                        return;
+                    }
+                    mUpdate.clear();
+                    DataMap config = newestConfig(dataItems);
+                    if (config != null) {
+                        SunshineWatchFaceUtil.readWeatherUpdate(config, mUpdate);
+                    }
+                    listener.onWeatherFetched(mUpdate);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Size;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-wide cache of weather icons that have already been decoded at the size they are drawn.
+ * <p>
+ * Icons are decoded straight to the target size using a power-of-two sample size followed by a
+ * density rescale, so no full-size intermediate bitmap is created. The cache is shared by every
+ * {@link SunshineWatchFace} engine in the process (the live face and the picker preview) and is
+ * bounded by byte count. Cached bitmaps are never recycled here because an engine may still be
+ * drawing them; evicted entries are simply left to the garbage collector.
+ * <p>
+ * Ambient mode variants (grayscale, or dithered to one bit for low-bit displays) are derived from
+ * the color icon on first use and cached alongside it.
+ * <p>
+ * The cache may be used from any thread; decoding on a miss is expensive and is best done off the
+ * UI thread.
+ */
+public final class WeatherBitmapCache {
+    private static final String TAG = "WeatherBitmapCache";
+
+    /**
+     * Resources in {@code drawable/} are treated as mdpi by the framework.
+     */
+    private static final int RESOURCE_DENSITY = DisplayMetrics.DENSITY_DEFAULT;
+
+    /**
+     * Upper bound for the cache, as a fraction of the heap available to the process.
+     */
+    private static final int HEAP_FRACTION = 16;
+
+    /**
+     * Variants of an icon that can be cached: the original, a grayscale one for ambient mode and
+     * a 1-bit ordered-dither one for low-bit ambient displays.
+     */
+    private static final int VARIANT_COLOR = 0;
+    private static final int VARIANT_AMBIENT = 1;
+    private static final int VARIANT_LOW_BIT_AMBIENT = 2;
+
+    /**
+     * 4x4 Bayer threshold matrix, scaled to [0, 255], for the low-bit ambient variant.
+     */
+    private static final int[] BAYER_4X4 = {
+            8, 136, 40, 168,
+            200, 72, 232, 104,
+            56, 184, 24, 152,
+            248, 120, 216, 88,
+    };
+
+    /**
+     * Ambient icons are dimmed so that they don't outshine the time.
+     */
+    private static final float AMBIENT_BRIGHTNESS = 0.6f;
+
+    private static WeatherBitmapCache sInstance;
+
+    private final LruCache<Long, Bitmap> mBitmaps;
+
+    /**
+     * Raw pixel dimensions of each icon resource, indexed by {@link Enum#ordinal()} and filled
+     * in lazily so that repeated lookups don't have to parse the PNG header again. Each entry is
+     * published whole, so a thread that sees it sees both dimensions.
+     */
+    private final AtomicReferenceArray<Size> mResourceSizes =
+            new AtomicReferenceArray<>(SunshineWatchFaceUtil.WeatherBitmap.values().length);
+
+    private WeatherBitmapCache(int maxBytes) {
+        mBitmaps = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized WeatherBitmapCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new WeatherBitmapCache((int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the icon for {@code weatherBitmap} scaled by {@code scale} relative to the size the
+     * framework would normally decode it at for this display, decoding it on a cache miss.
+     */
+    public Bitmap get(Resources resources, SunshineWatchFaceUtil.WeatherBitmap weatherBitmap,
+                      float scale) {
+        return get(resources, weatherBitmap, scale, VARIANT_COLOR);
+    }
+
+    /**
+     * Returns the ambient mode variant of the icon returned by {@link #get(Resources,
+     * SunshineWatchFaceUtil.WeatherBitmap, float)}: dimmed grayscale, or white dithered to one bit
+     * per pixel if {@code lowBit}. Variants are derived from the color icon once and cached.
+     */
+    public Bitmap getAmbient(Resources resources,
+                             SunshineWatchFaceUtil.WeatherBitmap weatherBitmap, float scale,
+                             boolean lowBit) {
+        return get(resources, weatherBitmap, scale,
+                lowBit ? VARIANT_LOW_BIT_AMBIENT : VARIANT_AMBIENT);
+    }
+
+    private Bitmap get(Resources resources, SunshineWatchFaceUtil.WeatherBitmap weatherBitmap,
+                       float scale, int variant) {
+        int index = weatherBitmap.ordinal();
+        Size resourceSize = mResourceSizes.get(index);
+        if (resourceSize == null) {
+            BitmapFactory.Options bounds = decodeBounds(resources, weatherBitmap.id);
+            // Two threads may both read the header; they store equal sizes.
+            resourceSize = new Size(bounds.outWidth, bounds.outHeight);
+            mResourceSizes.set(index, resourceSize);
+        }
+        int targetWidth = scaledSize(resources, resourceSize.getWidth(), scale);
+        int targetHeight = scaledSize(resources, resourceSize.getHeight(), scale);
+        if (variant == VARIANT_COLOR) {
+            return get(resources, weatherBitmap, targetWidth, targetHeight);
+        }
+
+        Long key = key(weatherBitmap, targetWidth, targetHeight, variant);
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+            Bitmap color = get(resources, weatherBitmap, targetWidth, targetHeight);
+            if (color == null) {
+                return null;
+            }
+            bitmap = toAmbient(color, variant == VARIANT_LOW_BIT_AMBIENT);
+            mBitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the icon for {@code weatherBitmap} at exactly {@code width} x {@code height} pixels,
+     * decoding it on a cache miss.
+     */
+    public Bitmap get(Resources resources, SunshineWatchFaceUtil.WeatherBitmap weatherBitmap,
+                      int width, int height) {
+        Long key = key(weatherBitmap, width, height, VARIANT_COLOR);
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = decode(resources, weatherBitmap.id, width, height);
+            if (bitmap != null) {
+                mBitmaps.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Releases cached icons in response to {@link ComponentCallbacks2#onTrimMemory(int)}: all of
+     * them from {@code TRIM_MEMORY_MODERATE} up, half of them from {@code TRIM_MEMORY_RUNNING_LOW}
+     * up, which includes the hidden and background levels.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mBitmaps.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mBitmaps.trimToSize(mBitmaps.size() / 2);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "onTrimMemory(" + level + "): " + mBitmaps.size() + " bytes cached");
+        }
+    }
+
+    private static int scaledSize(Resources resources, int resourceSize, float scale) {
+        int densityDpi = resources.getDisplayMetrics().densityDpi;
+        return Math.max(1, Math.round(resourceSize * scale * densityDpi / RESOURCE_DENSITY));
+    }
+
+    private static Long key(SunshineWatchFaceUtil.WeatherBitmap weatherBitmap, int width,
+                            int height, int variant) {
+        return ((long) variant << 40) | ((long) weatherBitmap.ordinal() << 32)
+                | ((long) width << 16) | height;
+    }
+
+    private static Bitmap toAmbient(Bitmap color, boolean lowBit) {
+        int width = color.getWidth();
+        int height = color.getHeight();
+        int[] pixels = new int[width * height];
+        color.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int pixel = pixels[i];
+                int alpha = pixel >>> 24;
+                // Rec. 601 luma, weighted by coverage so antialiased edges dither sensibly.
+                int luma = (299 * ((pixel >> 16) & 0xFF) + 587 * ((pixel >> 8) & 0xFF)
+                        + 114 * (pixel & 0xFF)) / 1000;
+                if (lowBit) {
+                    boolean on = luma * alpha / 255 > BAYER_4X4[(y & 3) * 4 + (x & 3)];
+                    pixels[i] = on ? 0xFFFFFFFF : 0;
+                } else {
+                    int gray = (int) (luma * AMBIENT_BRIGHTNESS);
+                    pixels[i] = (alpha << 24) | (gray << 16) | (gray << 8) | gray;
+                }
+            }
+        }
+        Bitmap ambient = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        ambient.setPixels(pixels, 0, width, 0, 0, width, height);
+        return ambient;
+    }
+
+    private static BitmapFactory.Options decodeBounds(Resources resources, int resId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(resources, resId, options);
+        return options;
+    }
+
+    private static Bitmap decode(Resources resources, int resId, int width, int height) {
+        BitmapFactory.Options options = decodeBounds(resources, resId);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+
+        // Let the decoder do the final rescale by pretending the sampled image has a density
+        // equal to its width and asking for a density equal to the target width.
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = options.outWidth / sampleSize;
+        options.inTargetDensity = width;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height)) {
+            // Rounding in the density rescale can leave us a pixel off; fix that up once here.
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+}
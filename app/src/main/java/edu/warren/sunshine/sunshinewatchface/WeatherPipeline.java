@@ -0,0 +1,479 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns weather updates into the {@link WeatherRenderState} {@link SunshineWatchFace} draws, on
+ * a background thread.
+ * <p>
+ * The transport delivers updates on the thread of {@link #getHandler()}, where they are merged,
+ * applied to the current {@link WeatherState} and saved to the snapshot. A burst of changes is
+ * coalesced into one state. Only the weather that came through the transport is saved, without
+ * the changes made on the watch by {@link #applyLocal}, so a restart never shows a tapped
+ * condition as if it were the real weather. The icon and its ambient variant are decoded and the
+ * temperatures formatted on the same thread, and the finished render state replaces the published one in a single
+ * {@link AtomicReference} swap. The UI thread reads it with {@link #getRenderState()} once per
+ * frame, so it never parses anything and never draws a half-updated state.
+ * <p>
+ * Fields not marked volatile or final are only used on the pipeline thread, apart from the
+ * constructor, which restores the snapshot before the thread starts.
+ */
+final class WeatherPipeline {
+    private static final String TAG = "WeatherPipeline";
+
+    /**
+     * How long to wait for more changes after one arrives, so that a burst of data events is
+     * applied as a single state change and redraws only once.
+     */
+    private static final long COALESCE_MS = 100;
+
+    /**
+     * File in the app's files directory holding the last weather received.
+     */
+    static final String SNAPSHOT_FILE = "weather_snapshot.bin";
+
+    /**
+     * Told about every newly published render state.
+     */
+    interface Callback {
+        /**
+         * A new state is available from {@link #getRenderState()}. Called on the pipeline
+         * thread.
+         */
+        void onRenderStatePublished();
+    }
+
+    private final Context mContext;
+    private final Resources mResources;
+    private final float mIconScale;
+    private final Callback mCallback;
+    private final WeatherSnapshot mSnapshot;
+    private final boolean mRestored;
+    private final long mCreatedRealtimeMs;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    private final AtomicReference<WeatherRenderState> mRenderState = new AtomicReference<>();
+
+    /**
+     * Set while a {@link RenderTarget} client shows its own states with {@link #showNow};
+     * updates are still applied but not published.
+     */
+    private volatile boolean mHeld;
+    private volatile boolean mLowBitAmbient;
+
+    /**
+     * Where the input is being recorded, if it is, for replaying with {@link InputTraceReplayer}.
+     * {@link #mRecording} lets other threads skip posting taps when nothing is recorded.
+     */
+    private volatile boolean mRecording;
+    private InputTrace.Writer mRecorder;
+
+    /**
+     * The weather shown, and the weather as the transport delivered it, which is what the
+     * snapshot saves. They differ once a tap has changed the shown weather.
+     */
+    private WeatherState mState = WeatherState.DEFAULT;
+    private WeatherState mReceivedState = WeatherState.DEFAULT;
+
+    /**
+     * Every change waiting to be applied, and only those from the transport.
+     */
+    private final WeatherState.Update mPending = new WeatherState.Update();
+    private final WeatherState.Update mReceivedPending = new WeatherState.Update();
+    private long mPendingSinceNs;
+    private boolean mApplyScheduled;
+    private TemperatureTable mTable;
+    private boolean mLiveWeatherLogged;
+
+    private final Runnable mApplyPending = new Runnable() {
+        @Override
+        public void run() {
+            mApplyScheduled = false;
+            applyPending();
+        }
+    };
+
+    /**
+     * Restores the saved weather, if there is any, and publishes it right away so that the
+     * first frame draws it like live data, then starts the pipeline thread.
+     */
+    WeatherPipeline(Context context, float iconScale, Callback callback) {
+        mContext = context;
+        mResources = context.getResources();
+        mIconScale = iconScale;
+        mCallback = callback;
+        mCreatedRealtimeMs = SystemClock.elapsedRealtime();
+
+        long startNs = System.nanoTime();
+        mSnapshot = new WeatherSnapshot(new File(context.getFilesDir(), SNAPSHOT_FILE));
+        WeatherState restored = mSnapshot.read();
+        mRestored = restored != null;
+        if (restored != null) {
+            mState = restored;
+            mReceivedState = restored;
+        }
+        mTable = SunshineWatchFaceUtil.createTemperatureTable(context,
+                mState.getTemperatureUnit());
+        mRenderState.set(build(mState, null, mTable, 0));
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Weather snapshot " + (restored != null ? "restored" : "not found")
+                    + " in " + (System.nanoTime() - startNs) / 1000 + " us: " + restored);
+        }
+
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Returns the handler of the pipeline thread, for the transport to deliver updates on.
+     */
+    Handler getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * Returns whether the first state came from the saved snapshot.
+     */
+    boolean isRestored() {
+        return mRestored;
+    }
+
+    /**
+     * Returns the latest published state. May be called on any thread.
+     */
+    WeatherRenderState getRenderState() {
+        return mRenderState.get();
+    }
+
+    /**
+     * Sets which ambient variant of the icon to prepare, and publishes the current state again
+     * with that variant if it changed. May be called on any thread.
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        if (lowBitAmbient == mLowBitAmbient) {
+            return;
+        }
+        mLowBitAmbient = lowBitAmbient;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                publish(0);
+            }
+        });
+    }
+
+    /**
+     * Applies every field currently stored. Called on the pipeline thread.
+     */
+    void onWeatherFetched(WeatherState.Update current) {
+        record(InputTrace.RECORD_FETCHED, current);
+        // If the DataItem hasn't been created yet or some keys are missing, those fields keep
+        // their current values.
+        merge(current);
+        applyPending();
+    }
+
+    /**
+     * Applies published changes, together with any that follow within {@link #COALESCE_MS}.
+     * Called on the pipeline thread.
+     */
+    void onWeatherChanged(WeatherState.Update changes) {
+        record(InputTrace.RECORD_CHANGED, changes);
+        merge(changes);
+        if (!mApplyScheduled) {
+            mApplyScheduled = true;
+            mHandler.postDelayed(mApplyPending, COALESCE_MS);
+        }
+    }
+
+    /**
+     * Applies a change made on the watch itself, like a tap cycling the weather, without waiting
+     * for more. It didn't come through the transport, so it isn't logged as live weather and
+     * its state is published with no receive time, keeping it out of the latency trace. Changes
+     * from the transport still waiting to be applied go out with it, with their own receive
+     * time. May be called on any thread.
+     */
+    void applyLocal(WeatherState.Update update) {
+        final WeatherState.Update copy = new WeatherState.Update().merge(update);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPending.merge(copy);
+                applyPending();
+            }
+        });
+    }
+
+    /**
+     * Reformats the temperatures for the new locale. May be called on any thread.
+     */
+    void onLocaleChanged() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mTable = SunshineWatchFaceUtil.createTemperatureTable(mContext,
+                        mState.getTemperatureUnit());
+                publish(0);
+            }
+        });
+    }
+
+    /**
+     * Stops publishing while {@code held}. Releasing publishes the current state again, so it
+     * replaces whatever {@link #showNow} left behind. Called on the UI thread.
+     */
+    void setHeld(boolean held) {
+        mHeld = held;
+        if (!held) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    publish(0);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds and publishes {@code state} on the calling thread, decoding its icon if need be,
+     * so the next frame draws it. For offscreen {@link RenderTarget} frames, while the pipeline
+     * is held; nothing is saved.
+     */
+    void showNow(WeatherState state) {
+        TemperatureTable table = SunshineWatchFaceUtil.createTemperatureTable(mContext,
+                state.getTemperatureUnit());
+        mRenderState.set(build(state, mRenderState.get(), table, 0));
+    }
+
+    /**
+     * Starts recording every update delivered and every tap passed to {@link #recordTap} to
+     * {@code file}, replacing what it held. May be called on any thread.
+     */
+    void startRecording(final File file) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeRecorder();
+                try {
+                    mRecorder = new InputTrace.Writer(new FileOutputStream(file),
+                            System.nanoTime());
+                    mRecording = true;
+                    Log.i(TAG, "Recording input to " + file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't start recording to " + file, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops recording and closes the trace. May be called on any thread.
+     */
+    void stopRecording() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeRecorder();
+            }
+        });
+    }
+
+    /**
+     * Records a tap at ({@code x}, {@code y}) that cycles the weather, if input is being
+     * recorded. May be called on any thread.
+     */
+    void recordTap(final int x, final int y) {
+        if (!mRecording) {
+            return;
+        }
+        final long nowNs = System.nanoTime();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mRecorder == null) {
+                    return;
+                }
+                try {
+                    mRecorder.writeTap(nowNs, x, y);
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't record a tap", e);
+                    closeRecorder();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the pipeline thread once it has run what is already queued. Changes still waiting
+     * out the coalescing window are applied and saved right away instead of being dropped;
+     * nothing is published any more. Called on the UI thread.
+     */
+    void quit() {
+        mHeld = true;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                applyPending();
+                closeRecorder();
+            }
+        });
+        mThread.quitSafely();
+    }
+
+    private void record(int type, WeatherState.Update update) {
+        if (mRecorder == null) {
+            return;
+        }
+        try {
+            mRecorder.writeUpdate(type, System.nanoTime(), update);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't record an update", e);
+            closeRecorder();
+        }
+    }
+
+    private void closeRecorder() {
+        mRecording = false;
+        if (mRecorder == null) {
+            return;
+        }
+        int records = mRecorder.getRecordCount();
+        try {
+            mRecorder.close();
+            Log.i(TAG, "Recorded " + records + " input records");
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't finish the input recording", e);
+        }
+        mRecorder = null;
+    }
+
+    /**
+     * Adds an update from the transport to the pending changes, noting when the first arrived.
+     */
+    private void merge(WeatherState.Update update) {
+        if (mPendingSinceNs == 0) {
+            mPendingSinceNs = System.nanoTime();
+        }
+        mPending.merge(update);
+        mReceivedPending.merge(update);
+        logLiveWeatherArrival();
+    }
+
+    /**
+     * Logs how long after create the first live config arrived and, if the snapshot was
+     * restored, which of its fields the live config is about to change.
+     */
+    private void logLiveWeatherArrival() {
+        if (mLiveWeatherLogged) {
+            return;
+        }
+        mLiveWeatherLogged = true;
+        int stale = mState.diff(mState.apply(mPending));
+        Log.i(TAG, "Live weather arrived "
+                + (SystemClock.elapsedRealtime() - mCreatedRealtimeMs) + " ms after create"
+                + (mRestored ? " (snapshot fields changed: 0x"
+                + Integer.toHexString(stale) + ")" : ""));
+    }
+
+    /**
+     * Applies every update merged since the last call as one state change, publishing the
+     * result if anything changed, and saves the weather received from the transport if that
+     * changed.
+     */
+    private void applyPending() {
+        mHandler.removeCallbacks(mApplyPending);
+        mApplyScheduled = false;
+        if (mPending.isEmpty()) {
+            return;
+        }
+        WeatherState state = mState.apply(mPending);
+        WeatherState received = mReceivedState.apply(mReceivedPending);
+        long receivedNs = mPendingSinceNs;
+        mPending.clear();
+        mReceivedPending.clear();
+        mPendingSinceNs = 0;
+        int changed = mState.diff(state);
+        if (changed != 0) {
+            mState = state;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Applying " + state);
+            }
+            if ((changed & WeatherState.FIELD_TEMPERATURE_UNIT) != 0) {
+                mTable = SunshineWatchFaceUtil.createTemperatureTable(mContext,
+                        state.getTemperatureUnit());
+            }
+            publish(receivedNs);
+        }
+
+        // Off the path to the screen: save the received weather for the next start. It can
+        // change without the shown weather changing, when it catches up with a tap.
+        if (received != mReceivedState) {
+            mReceivedState = received;
+            try {
+                mSnapshot.write(received);
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't save the weather snapshot", e);
+            }
+        }
+    }
+
+    private void publish(long receivedNs) {
+        if (mHeld) {
+            return;
+        }
+        mRenderState.set(build(mState, mRenderState.get(), mTable, receivedNs));
+        mCallback.onRenderStatePublished();
+    }
+
+    /**
+     * Builds the render state for {@code state}, reusing the icons of {@code previous} if it
+     * shows the same condition, and its ambient icon if that is also the variant wanted.
+     */
+    private WeatherRenderState build(WeatherState state, WeatherRenderState previous,
+                                     TemperatureTable table, long receivedNs) {
+        SunshineWatchFaceUtil.WeatherBitmap weather =
+                SunshineWatchFaceUtil.WeatherBitmap.fromValue(state.getWeatherId());
+        if (weather == null) {
+            weather = previous != null
+                    ? previous.weather : SunshineWatchFaceUtil.WeatherBitmap.getDefault();
+        }
+        boolean lowBitAmbient = mLowBitAmbient;
+        Bitmap icon;
+        Bitmap ambientIcon;
+        if (previous != null && previous.weather == weather) {
+            icon = previous.icon;
+            ambientIcon = previous.lowBitAmbient == lowBitAmbient
+                    ? previous.ambientIcon : WeatherBitmapCache.getInstance().getAmbient(
+                            mResources, weather, mIconScale, lowBitAmbient);
+        } else {
+            long decodeStartNs = System.nanoTime();
+            icon = WeatherBitmapCache.getInstance().get(mResources, weather, mIconScale);
+            ambientIcon = WeatherBitmapCache.getInstance().getAmbient(mResources, weather,
+                    mIconScale, lowBitAmbient);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Got the " + weather + " icons in "
+                        + (System.nanoTime() - decodeStartNs) / 1000 + " us");
+            }
+        }
+        char[] temperature = new char[table.getMaxHighLowLength()];
+        int temperatureLength = table.formatHighLow(temperature, state.getHighTemp(),
+                state.getLowTemp());
+        return new WeatherRenderState(state, weather, icon, ambientIcon, lowBitAmbient,
+                temperature, temperatureLength, receivedNs,
+                receivedNs != 0 ? System.nanoTime() : 0);
+    }
+}
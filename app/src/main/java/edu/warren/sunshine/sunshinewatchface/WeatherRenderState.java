@@ -0,0 +1,54 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.graphics.Bitmap;
+
+/**
+ * Everything weather-related a frame of {@link SunshineWatchFace} draws, built together by the
+ * {@link WeatherPipeline} so that a frame never shows the icon of one update with the
+ * temperatures of another.
+ * <p>
+ * Immutable once published: neither the icons nor the temperature characters are modified after
+ * construction, and a new state is built for every change. Both icons are decoded before the
+ * state is published, so drawing it never decodes on the UI thread.
+ */
+final class WeatherRenderState {
+    final WeatherState state;
+    final SunshineWatchFaceUtil.WeatherBitmap weather;
+    final Bitmap icon;
+
+    /**
+     * The ambient variant of {@link #icon}: dithered to one bit if {@link #lowBitAmbient}, dimmed
+     * grayscale otherwise. Null if it couldn't be decoded.
+     */
+    final Bitmap ambientIcon;
+    final boolean lowBitAmbient;
+
+    /**
+     * The high and low temperatures, formatted in the state's unit and the current locale.
+     */
+    final char[] temperature;
+    final int temperatureLength;
+
+    /**
+     * When the earliest update in this state was received and when the state was published,
+     * in {@link System#nanoTime()} terms, for the {@link LatencyTrace}; 0 if it didn't come
+     * from the transport.
+     */
+    final long receivedNs;
+    final long publishedNs;
+
+    WeatherRenderState(WeatherState state, SunshineWatchFaceUtil.WeatherBitmap weather,
+                       Bitmap icon, Bitmap ambientIcon, boolean lowBitAmbient,
+                       char[] temperature, int temperatureLength, long receivedNs,
+                       long publishedNs) {
+        this.state = state;
+        this.weather = weather;
+        this.icon = icon;
+        this.ambientIcon = ambientIcon;
+        this.lowBitAmbient = lowBitAmbient;
+        this.temperature = temperature;
+        this.temperatureLength = temperatureLength;
+        this.receivedNs = receivedNs;
+        this.publishedNs = publishedNs;
+    }
+}
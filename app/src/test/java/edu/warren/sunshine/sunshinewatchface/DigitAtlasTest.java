@@ -0,0 +1,136 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the digit atlas lays the clock out like {@link Paint#measureText} and draws it as
+ * one unscaled blit per character, each from the character's own cell.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+// The same shadows as RenderBenchmarkTest: Robolectric 3.1 can't run tests with different sets
+// of shadows in one JVM.
+@Config(constants = BuildConfig.class, sdk = 23, shadows = {ShadowRecordingCanvas.class,
+        ShadowFacePaint.class, ShadowScaledBitmap.class, ShadowQuitSafelyLooper.class})
+public class DigitAtlasTest {
+
+    private static final String[] TIMES = {"0:00:00", "9:59:59", "10:10:10", "12:34:56", "23:58"};
+    private static final float TEXT_SIZE = 45;
+    private static final int SIZE = 320;
+    private static final float X = 40.3f;
+    private static final float Y = 170.6f;
+
+    private Paint mPaint;
+    private DigitAtlas mAtlas;
+    private Bitmap mFrame;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mPaint = new Paint();
+        mPaint.setColor(Color.WHITE);
+        mPaint.setTextSize(TEXT_SIZE);
+        mAtlas = DigitAtlas.create(mPaint);
+        ShadowRecordingCanvas.reset();
+        mFrame = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mFrame);
+    }
+
+    @After
+    public void tearDown() {
+        mAtlas.recycle();
+    }
+
+    @Test
+    public void measureMatchesPaint() {
+        for (String time : TIMES) {
+            char[] text = time.toCharArray();
+            assertEquals(time, mPaint.measureText(text, 0, text.length),
+                    mAtlas.measure(text, text.length), 0.01f);
+        }
+    }
+
+    @Test
+    public void drawsOneBitmapPerCharacter() {
+        for (String time : TIMES) {
+            assertEquals(time, time.length(), draw(time).size());
+        }
+    }
+
+    @Test
+    public void placesEachCharacterAtItsAdvance() {
+        for (String time : TIMES) {
+            List<int[]> blits = draw(time);
+            int[] first = blits.get(0);
+            for (int i = 0; i < blits.size(); i++) {
+                int[] blit = blits.get(i);
+                String where = time + " character " + i;
+                float x = X + mPaint.measureText(time, 0, i);
+                // Each blit is rounded to whole pixels on its own, so allow a pixel either way.
+                assertEquals(where, Math.round(x) - Math.round(X), blit[0] - first[0], 1);
+                assertEquals(where, first[1], blit[1]);
+                // Drawn at the size of its cell, unscaled.
+                assertEquals(where, blit[6] - blit[4], blit[2] - blit[0]);
+                assertEquals(where, blit[7] - blit[5], blit[3] - blit[1]);
+            }
+        }
+    }
+
+    @Test
+    public void drawsEachCharacterFromItsOwnCell() {
+        String time = "10:10:10";
+        List<int[]> blits = draw(time);
+        for (int i = 0; i < time.length(); i++) {
+            for (int j = 0; j < i; j++) {
+                String where = time + " characters " + j + " and " + i;
+                if (time.charAt(i) == time.charAt(j)) {
+                    assertEquals(where, blits.get(j)[4], blits.get(i)[4]);
+                } else {
+                    assertNotEquals(where, blits.get(j)[4], blits.get(i)[4]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws {@code time} onto the cleared frame and returns the blits from the atlas it
+     * recorded, each as the destination rectangle followed by the source rectangle.
+     */
+    private List<int[]> draw(String time) {
+        char[] text = time.toCharArray();
+        mCanvas.drawColor(Color.BLACK);
+        mAtlas.draw(mCanvas, text, text.length, X, Y, mPaint);
+        String[] lines = ShadowRecordingCanvas.describe(mFrame).split("\n");
+        // The clear starts the frame's list, so nothing drawn before it is left.
+        assertEquals(time, "  color #ff000000", lines[1]);
+        List<int[]> blits = new ArrayList<>();
+        for (String line : lines) {
+            // "  bitmap 1 left,top,right,bottom,srcLeft,srcTop,srcRight,srcBottom paint ..."
+            if (!line.startsWith("  bitmap ")) {
+                continue;
+            }
+            String[] args = line.split(" ")[4].split(",");
+            int[] blit = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                blit[i] = Math.round(Float.parseFloat(args[i]));
+            }
+            blits.add(blit);
+        }
+        return blits;
+    }
+}
@@ -0,0 +1,290 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.service.wallpaper.WallpaperService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+/**
+ * Drives the watch face's frame rendering offscreen to measure it and guard it against
+ * regressions, as part of the unit tests that {@code check} runs.
+ * <p>
+ * For each of the round and square layouts, in interactive and ambient mode, and for the round
+ * layout with 100 and 500 weather particles, the test draws {@link #FRAMES} frames into a bitmap.
+ * The clock moves one second per frame and jumps three hours, with new weather, every
+ * {@link #SEGMENT_FRAMES} frames, so a run passes through every weather condition and through
+ * day and night. The run is drawn twice and only the second pass is measured: for every frame
+ * it records the draw time and the bytes allocated on the drawing thread, and for the
+ * configuration how often each layer of the face was redrawn.
+ * <p>
+ * A configuration fails if its steady-state frames allocate more than
+ * {@link #ALLOCATION_BUDGET_BYTES} on average, or if a frame at one of the {@link #GOLDEN_FRAMES}
+ * differs from its golden in {@code src/test/resources/render_golden}. Steady-state frames are
+ * those after the warm-up that don't start a new minute and don't follow a weather change. The
+ * budget is an average because the JVM now and then allocates a few hundred bytes of its own
+ * while running Robolectric's shadows; no object is smaller than 16 bytes, so anything the face
+ * allocates on even one steady frame in four goes over it.
+ * <p>
+ * Frames are compared as the draw calls {@link ShadowRecordingCanvas} recorded for them, since
+ * Robolectric doesn't rasterize, and a missing golden fails too. The actual frames of failed
+ * comparisons are written to {@code build/render_golden}. Running the tests with
+ * {@code -PrecordRenderGoldens} writes the goldens instead, for a change that is meant to alter
+ * the face.
+ * <p>
+ * Draw times on the JVM say little about a watch, so they are only reported.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23, shadows = {ShadowRecordingCanvas.class,
+        ShadowFacePaint.class, ShadowScaledBitmap.class, ShadowQuitSafelyLooper.class})
+public class RenderBenchmarkTest {
+
+    static final String GOLDEN_DIR = "render_golden";
+
+    /**
+     * Directory to write the goldens to instead of comparing against them, if set.
+     */
+    static final String RECORD_GOLDENS_PROPERTY = "renderGoldenDir";
+
+    private static final double ALLOCATION_BUDGET_BYTES = 4;
+
+    private static final int FRAMES = 2000;
+    private static final int SEGMENT_FRAMES = 250;
+    private static final int WARMUP_FRAMES = 50;
+    private static final int[] GOLDEN_FRAMES = {WARMUP_FRAMES, 600, 1300};
+
+    private static final int ROUND_SIZE = 320;
+    private static final int SQUARE_SIZE = 280;
+
+    private static final long START_MS = 1466488800000L; // 2016-06-21T06:00:00Z
+    private static final long SEGMENT_JUMP_MS = 3 * 60 * 60 * 1000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private WallpaperService.Engine mEngine;
+    private RenderTarget mTarget;
+    private WeatherState mWeatherState = WeatherState.DEFAULT;
+    private long mThreadId;
+    private long mMeasurementBytes;
+
+    @Before
+    public void setUp() {
+        assertTrue("The JVM can't count allocated bytes",
+                THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        mThreadId = Thread.currentThread().getId();
+        // Reading the counter may itself allocate; that much is taken off every frame.
+        mMeasurementBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = allocatedBytes();
+            mMeasurementBytes = Math.min(mMeasurementBytes, allocatedBytes() - before);
+        }
+
+        ShadowRecordingCanvas.reset();
+        SunshineWatchFace service = Robolectric.setupService(SunshineWatchFace.class);
+        mEngine = service.onCreateEngine();
+        mEngine.onCreate(mEngine.getSurfaceHolder());
+        mTarget = (RenderTarget) mEngine;
+        mTarget.beginOffscreenRendering();
+    }
+
+    @After
+    public void tearDown() {
+        // The engine isn't destroyed: Robolectric 3.1 can't quit the pipeline's HandlerThread.
+        mTarget.finishOffscreenRendering();
+    }
+
+    @Test
+    public void roundInteractive() throws IOException {
+        run("round_interactive", true, false, 0);
+    }
+
+    @Test
+    public void roundAmbient() throws IOException {
+        run("round_ambient", true, true, 0);
+    }
+
+    @Test
+    public void squareInteractive() throws IOException {
+        run("square_interactive", false, false, 0);
+    }
+
+    @Test
+    public void squareAmbient() throws IOException {
+        run("square_ambient", false, true, 0);
+    }
+
+    @Test
+    public void roundWith100Particles() throws IOException {
+        run("round_particles_100", true, false, 100);
+    }
+
+    @Test
+    public void roundWith500Particles() throws IOException {
+        run("round_particles_500", true, false, 500);
+    }
+
+    private void run(String name, boolean isRound, boolean ambient, int particles)
+            throws IOException {
+        int size = isRound ? ROUND_SIZE : SQUARE_SIZE;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect bounds = new Rect(0, 0, size, size);
+        mTarget.setRenderLayout(isRound);
+        mTarget.setRenderAmbient(ambient);
+        mTarget.setRenderParticles(particles);
+
+        // Robolectric links each drawing path the first time it runs, and the recording canvas
+        // grows its buffers to the frames it sees, so a first pass through the schedule isn't
+        // measured.
+        runSchedule(name, canvas, bitmap, bounds, null, null, null);
+        FrameSamples samples = new FrameSamples(FRAMES);
+        FrameSamples steadySamples = new FrameSamples(FRAMES);
+        StringBuilder goldenFailures = new StringBuilder();
+        mTarget.takeRenderLayerCounts();
+        runSchedule(name, canvas, bitmap, bounds, samples, steadySamples, goldenFailures);
+
+        boolean allocationsOk = steadySamples.getMeanAllocatedBytes() <= ALLOCATION_BUDGET_BYTES;
+        String report = name + ":\n"
+                + "  all    " + samples + "\n"
+                + "  steady " + steadySamples + (allocationsOk ? "" : "  OVER BUDGET") + "\n"
+                + "  layers " + mTarget.takeRenderLayerCounts() + "\n"
+                + goldenFailures;
+        System.out.print(report);
+        if (!allocationsOk || goldenFailures.length() > 0) {
+            fail(report + "allocation budget: " + ALLOCATION_BUDGET_BYTES
+                    + " bytes per steady frame on average");
+        }
+    }
+
+    /**
+     * Draws the {@link #FRAMES} frames of a run, adding them to {@code samples} and checking the
+     * goldens unless {@code samples} is null.
+     */
+    private void runSchedule(String name, Canvas canvas, Bitmap bitmap, Rect bounds,
+            FrameSamples samples, FrameSamples steadySamples, StringBuilder goldenFailures)
+            throws IOException {
+        long nowMs = START_MS;
+        applyWeather(0);
+        boolean weatherChanged = true;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            if (frame > 0 && frame % SEGMENT_FRAMES == 0) {
+                nowMs += SEGMENT_JUMP_MS;
+                applyWeather(frame / SEGMENT_FRAMES);
+                weatherChanged = true;
+            }
+            boolean newMinute = nowMs % 60000 < 1000;
+
+            long bytesBefore = allocatedBytes();
+            long startNs = System.nanoTime();
+            mTarget.renderFrame(canvas, bounds, nowMs);
+            long durationNs = System.nanoTime() - startNs;
+            long bytes = Math.max(0, allocatedBytes() - bytesBefore - mMeasurementBytes);
+
+            if (samples != null) {
+                samples.add(durationNs, bytes);
+                if (frame >= WARMUP_FRAMES && !newMinute && !weatherChanged) {
+                    steadySamples.add(durationNs, bytes);
+                }
+                for (int goldenFrame : GOLDEN_FRAMES) {
+                    if (frame == goldenFrame) {
+                        checkGolden(name + "_" + frame, bitmap, goldenFailures);
+                    }
+                }
+            }
+            weatherChanged = false;
+            nowMs += 1000;
+        }
+    }
+
+    /**
+     * Switches to the weather for {@code segment}, cycling through every condition with
+     * temperatures that go below zero and above 30 degrees.
+     */
+    private void applyWeather(int segment) {
+        SunshineWatchFaceUtil.WeatherBitmap[] conditions =
+                SunshineWatchFaceUtil.WeatherBitmap.values();
+        int high = -80 + segment * 55 % 420;
+        mWeatherState = mWeatherState.apply(new WeatherState.Update()
+                .setWeatherId(conditions[segment % conditions.length].value)
+                .setHighTemp(high)
+                .setLowTemp(high - 75)
+                .setLocation(37.77, -122.42));
+        mTarget.setRenderWeather(mWeatherState);
+    }
+
+    private long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(mThreadId);
+    }
+
+    private void checkGolden(String name, Bitmap frame, StringBuilder failures)
+            throws IOException {
+        String actual = ShadowRecordingCanvas.describe(frame);
+        String recordDir = System.getProperty(RECORD_GOLDENS_PROPERTY);
+        if (recordDir != null) {
+            write(new File(recordDir, name + ".txt"), actual);
+            return;
+        }
+        String expected = readGolden(name);
+        if (expected == null) {
+            failures.append("  MISSING golden ").append(name).append('\n');
+        } else if (!expected.equals(actual)) {
+            failures.append("  MISMATCH ").append(name).append('\n');
+        } else {
+            return;
+        }
+        write(new File("build/" + GOLDEN_DIR, name + ".txt"), actual);
+    }
+
+    private static String readGolden(String name) throws IOException {
+        InputStream in = RenderBenchmarkTest.class.getResourceAsStream(
+                "/" + GOLDEN_DIR + "/" + name + ".txt");
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+            return new String(bytes.toByteArray(), Charset.forName("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes(Charset.forName("UTF-8")));
+        } finally {
+            out.close();
+        }
+    }
+}
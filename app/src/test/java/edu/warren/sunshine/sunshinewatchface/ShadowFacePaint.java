@@ -0,0 +1,147 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.internal.Shadow;
+import org.robolectric.shadows.ShadowPaint;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+/**
+ * A {@link Paint} shadow that behaves like the real one wherever the face depends on it.
+ * Robolectric's keeps the alpha apart from the color, has no default style, doesn't copy
+ * anything into a paint made from another, measures every character as one pixel wide and has
+ * no font metrics, which leaves the digit atlas empty. This one measures text in a monospace font
+ * with typical proportions, so text is laid out the same way whichever call measures it.
+ */
+@Implements(Paint.class)
+public class ShadowFacePaint extends ShadowPaint {
+
+    private static final float ADVANCE = 0.6f;
+    private static final float TOP = -1.06f;
+    private static final float ASCENT = -0.93f;
+    private static final float DESCENT = 0.24f;
+    private static final float BOTTOM = 0.27f;
+
+    @RealObject
+    private Paint mRealPaint;
+
+    private int mColor = Color.BLACK;
+    private Paint.Style mStyle = Paint.Style.FILL;
+    private Paint.Cap mStrokeCap = Paint.Cap.BUTT;
+
+    public void __constructor__(Paint paint) {
+        Shadow.invokeConstructor(Paint.class, mRealPaint, ClassParameter.from(Paint.class, paint));
+        setColor(paint.getColor());
+        setStyle(paint.getStyle());
+        setStrokeWidth(paint.getStrokeWidth());
+        setStrokeCap(paint.getStrokeCap());
+        setStrokeJoin(paint.getStrokeJoin());
+        setShader(paint.getShader());
+        setColorFilter(paint.getColorFilter());
+        setAntiAlias(paint.isAntiAlias());
+        setTypeface(paint.getTypeface());
+        setTextSize(paint.getTextSize());
+        setTextAlign(paint.getTextAlign());
+    }
+
+    @Implementation
+    @Override
+    public void setColor(int color) {
+        mColor = color;
+    }
+
+    @Implementation
+    @Override
+    public int getColor() {
+        return mColor;
+    }
+
+    @Implementation
+    @Override
+    public void setStyle(Paint.Style style) {
+        mStyle = style;
+    }
+
+    @Implementation
+    @Override
+    public Paint.Style getStyle() {
+        return mStyle;
+    }
+
+    @Implementation
+    @Override
+    public void setStrokeCap(Paint.Cap cap) {
+        mStrokeCap = cap;
+    }
+
+    @Implementation
+    @Override
+    public Paint.Cap getStrokeCap() {
+        return mStrokeCap;
+    }
+
+    @Implementation
+    @Override
+    public void setAlpha(int alpha) {
+        mColor = (alpha << 24) | (mColor & 0xFFFFFF);
+    }
+
+    @Implementation
+    @Override
+    public int getAlpha() {
+        return Color.alpha(mColor);
+    }
+
+    @Implementation
+    public float getFontMetrics(Paint.FontMetrics metrics) {
+        float size = getTextSize();
+        if (metrics != null) {
+            metrics.top = TOP * size;
+            metrics.ascent = ASCENT * size;
+            metrics.descent = DESCENT * size;
+            metrics.bottom = BOTTOM * size;
+            metrics.leading = 0;
+        }
+        return (DESCENT - ASCENT) * size;
+    }
+
+    @Implementation
+    public int getTextWidths(String text, int start, int end, float[] widths) {
+        for (int i = 0; i < end - start; i++) {
+            widths[i] = advance();
+        }
+        return end - start;
+    }
+
+    @Implementation
+    @Override
+    public float measureText(String text) {
+        return text.length() * advance();
+    }
+
+    @Implementation
+    @Override
+    public float measureText(CharSequence text, int start, int end) {
+        return (end - start) * advance();
+    }
+
+    @Implementation
+    @Override
+    public float measureText(String text, int start, int end) {
+        return (end - start) * advance();
+    }
+
+    @Implementation
+    @Override
+    public float measureText(char[] text, int index, int count) {
+        return count * advance();
+    }
+
+    private float advance() {
+        return ADVANCE * getTextSize();
+    }
+}
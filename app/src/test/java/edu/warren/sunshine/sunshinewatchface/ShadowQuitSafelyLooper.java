@@ -0,0 +1,21 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.os.Looper;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * A {@link Looper} shadow that supports {@link Looper#quitSafely}: it runs the tasks that are due
+ * and then quits. Robolectric's lets the real method reach a native call that fails the test.
+ */
+@Implements(Looper.class)
+public class ShadowQuitSafelyLooper extends ShadowLooper {
+
+    @Implementation
+    public void quitSafely() {
+        idle();
+        quit();
+    }
+}
@@ -0,0 +1,433 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowCanvas;
+import org.robolectric.shadows.ShadowLinearGradient;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A {@link Canvas} shadow that keeps, for every bitmap drawn into, the list of draw calls that
+ * make up its current contents, so that a frame can be compared with a golden one without a
+ * rasterizer.
+ * <p>
+ * A call that paints over the whole bitmap with something opaque starts the list again, so the
+ * lists stay as long as one frame. The calls are recorded into reused objects, which means that
+ * once every list has reached its usual length, drawing allocates nothing and doesn't disturb
+ * the allocations being measured. {@link #describe} writes out a bitmap's list, followed by the
+ * list of every bitmap drawn from it.
+ * <p>
+ * The Robolectric {@link ShadowCanvas} this replaces keeps an ever growing history and ignores
+ * text drawn from a {@code char[]}, which is all the face draws.
+ */
+@Implements(Canvas.class)
+public class ShadowRecordingCanvas extends ShadowCanvas {
+
+    private static final int OP_COLOR = 0;
+    private static final int OP_RECT = 1;
+    private static final int OP_BITMAP = 2;
+    private static final int OP_BITMAP_RECT = 3;
+    private static final int OP_TEXT = 4;
+    private static final int OP_LINES = 5;
+    private static final int OP_POINTS = 6;
+    private static final int OP_SAVE = 7;
+    private static final int OP_CLIP = 8;
+    private static final int OP_RESTORE = 9;
+
+    private static final IdentityHashMap<Bitmap, DrawList> sDrawLists = new IdentityHashMap<>();
+
+    private Bitmap mBitmap;
+    private int mSaveCount;
+
+    /**
+     * Forgets everything drawn so far. Called before each test.
+     */
+    public static void reset() {
+        sDrawLists.clear();
+    }
+
+    @Override
+    public void __constructor__(Bitmap bitmap) {
+        super.__constructor__(bitmap);
+        mBitmap = bitmap;
+    }
+
+    @Implementation
+    @Override
+    public void setBitmap(Bitmap bitmap) {
+        super.setBitmap(bitmap);
+        mBitmap = bitmap;
+        mSaveCount = 0;
+    }
+
+    @Implementation
+    @Override
+    public void drawColor(int color) {
+        if (Color.alpha(color) == 0xFF && covers(0, 0, Float.MAX_VALUE, Float.MAX_VALUE)) {
+            restart();
+        }
+        Op op = next(OP_COLOR, 0);
+        if (op != null) {
+            op.mColor = color;
+        }
+    }
+
+    @Implementation
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        if (paint.getAlpha() == 0xFF && paint.getShader() == null
+                && paint.getStyle() == Paint.Style.FILL && covers(left, top, right, bottom)) {
+            restart();
+        }
+        Op op = next(OP_RECT, 4);
+        if (op != null) {
+            op.set(left, top, right, bottom);
+            op.setPaint(paint);
+        }
+    }
+
+    @Implementation
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        if (paint == null && isOpaque(bitmap)
+                && covers(left, top, left + bitmap.getWidth(), top + bitmap.getHeight())) {
+            restart();
+        }
+        Op op = next(OP_BITMAP, 2);
+        if (op != null) {
+            op.mBitmap = bitmap;
+            op.set(left, top, 0, 0);
+            op.setPaint(paint);
+        }
+    }
+
+    @Implementation
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        Op op = next(OP_BITMAP_RECT, 8);
+        if (op != null) {
+            op.mBitmap = bitmap;
+            op.set(dst.left, dst.top, dst.right, dst.bottom);
+            op.mArgs[4] = src.left;
+            op.mArgs[5] = src.top;
+            op.mArgs[6] = src.right;
+            op.mArgs[7] = src.bottom;
+            op.setPaint(paint);
+        }
+    }
+
+    @Implementation
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        Op op = next(OP_TEXT, 2);
+        if (op != null) {
+            op.set(x, y, 0, 0);
+            if (op.mText.length < count) {
+                op.mText = new char[count];
+            }
+            System.arraycopy(text, index, op.mText, 0, count);
+            op.mTextLength = count;
+            op.setPaint(paint);
+        }
+    }
+
+    @Implementation
+    public void drawLines(float[] points, int offset, int count, Paint paint) {
+        drawPoints(OP_LINES, points, offset, count, paint);
+    }
+
+    @Implementation
+    public void drawPoints(float[] points, int offset, int count, Paint paint) {
+        drawPoints(OP_POINTS, points, offset, count, paint);
+    }
+
+    private void drawPoints(int type, float[] points, int offset, int count, Paint paint) {
+        Op op = next(type, 0);
+        if (op != null) {
+            if (op.mPoints.length < count) {
+                op.mPoints = new float[count];
+            }
+            System.arraycopy(points, offset, op.mPoints, 0, count);
+            op.mPointCount = count;
+            op.setPaint(paint);
+        }
+    }
+
+    @Implementation
+    public int save() {
+        next(OP_SAVE, 0);
+        return ++mSaveCount;
+    }
+
+    @Implementation
+    public boolean clipRect(float left, float top, float right, float bottom) {
+        Op op = next(OP_CLIP, 4);
+        if (op != null) {
+            op.set(left, top, right, bottom);
+        }
+        return true;
+    }
+
+    @Implementation
+    public void restore() {
+        if (mSaveCount == 0) {
+            throw new IllegalStateException("Underflow in restore");
+        }
+        next(OP_RESTORE, 0);
+        mSaveCount--;
+    }
+
+    /**
+     * Returns the next op of {@code bitmap}'s list, or null if there is no bitmap to draw into.
+     */
+    private Op next(int type, int argCount) {
+        if (mBitmap == null) {
+            return null;
+        }
+        DrawList list = sDrawLists.get(mBitmap);
+        if (list == null) {
+            list = new DrawList();
+            sDrawLists.put(mBitmap, list);
+        }
+        Op op = list.add();
+        op.mType = type;
+        op.mArgCount = argCount;
+        op.mBitmap = null;
+        op.mHasPaint = false;
+        return op;
+    }
+
+    /**
+     * Returns whether the rectangle covers all of the bitmap, with no clip to get in the way.
+     */
+    private boolean covers(float left, float top, float right, float bottom) {
+        return mBitmap != null && mSaveCount == 0 && left <= 0 && top <= 0
+                && right >= mBitmap.getWidth() && bottom >= mBitmap.getHeight();
+    }
+
+    /**
+     * Starts the list of the bitmap again, for a call that covers all of it.
+     */
+    private void restart() {
+        DrawList list = sDrawLists.get(mBitmap);
+        if (list == null) {
+            list = new DrawList();
+            sDrawLists.put(mBitmap, list);
+        }
+        list.mSize = 0;
+        list.mOpaque = true;
+    }
+
+    private static boolean isOpaque(Bitmap bitmap) {
+        DrawList list = sDrawLists.get(bitmap);
+        return list != null && list.mOpaque;
+    }
+
+    /**
+     * Describes what {@code bitmap} shows: its draw calls, then those of every bitmap they draw
+     * from, each listed once. Bitmaps that were never drawn into, such as decoded resources, are
+     * described by where they came from and a hash of their pixels.
+     */
+    public static String describe(Bitmap bitmap) {
+        StringBuilder out = new StringBuilder();
+        List<Bitmap> bitmaps = new ArrayList<>();
+        bitmaps.add(bitmap);
+        for (int i = 0; i < bitmaps.size(); i++) {
+            Bitmap current = bitmaps.get(i);
+            out.append(i == 0 ? "frame" : "bitmap " + i).append(' ')
+                    .append(current.getWidth()).append('x').append(current.getHeight())
+                    .append(' ').append(current.getConfig());
+            DrawList list = sDrawLists.get(current);
+            if (list == null) {
+                out.append(" \"").append(shadowOf(current).getDescription())
+                        .append("\" pixels ").append(hashPixels(current)).append('\n');
+                continue;
+            }
+            out.append(list.mOpaque ? " opaque\n" : "\n");
+            for (int j = 0; j < list.mSize; j++) {
+                out.append("  ");
+                list.mOps.get(j).describe(out, bitmaps);
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String hashPixels(Bitmap bitmap) {
+        int hash = 1;
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            for (int x = 0; x < bitmap.getWidth(); x++) {
+                hash = 31 * hash + bitmap.getPixel(x, y);
+            }
+        }
+        return Integer.toHexString(hash);
+    }
+
+    private static final class DrawList {
+        final List<Op> mOps = new ArrayList<>();
+        int mSize;
+
+        /**
+         * Whether the list starts by covering the whole bitmap with something opaque.
+         */
+        boolean mOpaque;
+
+        Op add() {
+            if (mSize == mOps.size()) {
+                mOps.add(new Op());
+            }
+            return mOps.get(mSize++);
+        }
+    }
+
+    private static final class Op {
+        int mType;
+        final float[] mArgs = new float[8];
+        int mArgCount;
+        Bitmap mBitmap;
+        char[] mText = new char[16];
+        int mTextLength;
+        float[] mPoints = new float[0];
+        int mPointCount;
+        int mColor;
+
+        boolean mHasPaint;
+        int mPaintColor;
+        Paint.Style mStyle;
+        float mStrokeWidth;
+        Paint.Cap mStrokeCap;
+        float mTextSize;
+        Paint.Align mTextAlign;
+        boolean mAntiAlias;
+        Shader mShader;
+        float mShaderX0;
+        float mShaderY0;
+        float mShaderX1;
+        float mShaderY1;
+        int mShaderColor0;
+        int mShaderColor1;
+
+        void set(float a, float b, float c, float d) {
+            mArgs[0] = a;
+            mArgs[1] = b;
+            mArgs[2] = c;
+            mArgs[3] = d;
+        }
+
+        void setPaint(Paint paint) {
+            mHasPaint = paint != null;
+            if (paint == null) {
+                return;
+            }
+            mPaintColor = paint.getColor();
+            mStyle = paint.getStyle();
+            mStrokeWidth = paint.getStrokeWidth();
+            mStrokeCap = paint.getStrokeCap();
+            mTextSize = paint.getTextSize();
+            mTextAlign = paint.getTextAlign();
+            mAntiAlias = paint.isAntiAlias();
+            mShader = paint.getShader();
+            if (mShader instanceof LinearGradient) {
+                // The gradient is described as it is now, not when describe() is called.
+                ShadowLinearGradient gradient = shadowOf((LinearGradient) mShader);
+                mShaderX0 = gradient.getX0();
+                mShaderY0 = gradient.getY0();
+                mShaderX1 = gradient.getX1();
+                mShaderY1 = gradient.getY1();
+                mShaderColor0 = gradient.getColor0();
+                mShaderColor1 = gradient.getColor1();
+            }
+        }
+
+        void describe(StringBuilder out, List<Bitmap> bitmaps) {
+            switch (mType) {
+                case OP_COLOR:
+                    out.append("color ").append(color(mColor));
+                    break;
+                case OP_RECT:
+                    out.append("rect");
+                    break;
+                case OP_BITMAP:
+                case OP_BITMAP_RECT:
+                    int index = bitmaps.indexOf(mBitmap);
+                    if (index < 0) {
+                        index = bitmaps.size();
+                        bitmaps.add(mBitmap);
+                    }
+                    out.append(index == 0 ? "frame" : "bitmap " + index);
+                    break;
+                case OP_TEXT:
+                    out.append("text \"").append(mText, 0, mTextLength).append('"');
+                    break;
+                case OP_LINES:
+                case OP_POINTS:
+                    out.append(mType == OP_LINES ? "lines " : "points ").append(mPointCount / 2)
+                            .append(" hash ").append(hashPoints());
+                    break;
+                case OP_SAVE:
+                    out.append("save");
+                    break;
+                case OP_CLIP:
+                    out.append("clip");
+                    break;
+                case OP_RESTORE:
+                    out.append("restore");
+                    break;
+            }
+            for (int i = 0; i < mArgCount; i++) {
+                out.append(i == 0 ? " " : ",").append(number(mArgs[i]));
+            }
+            if (mHasPaint) {
+                out.append(" paint ").append(color(mPaintColor))
+                        .append(' ').append(mStyle)
+                        .append(" stroke ").append(number(mStrokeWidth)).append(' ')
+                        .append(mStrokeCap)
+                        .append(" text ").append(number(mTextSize)).append(' ')
+                        .append(mTextAlign)
+                        .append(mAntiAlias ? " aa" : "");
+                if (mShader instanceof LinearGradient) {
+                    out.append(" gradient ").append(number(mShaderX0)).append(',')
+                            .append(number(mShaderY0)).append(',').append(number(mShaderX1))
+                            .append(',').append(number(mShaderY1)).append(' ')
+                            .append(color(mShaderColor0)).append(',')
+                            .append(color(mShaderColor1));
+                } else if (mShader != null) {
+                    out.append(" shader ").append(mShader.getClass().getSimpleName());
+                }
+            }
+        }
+
+        /**
+         * Hashes the points to a tenth of a pixel, well above any difference in floating point
+         * rounding between JVMs.
+         */
+        private String hashPoints() {
+            int hash = 1;
+            for (int i = 0; i < mPointCount; i++) {
+                hash = 31 * hash + Math.round(mPoints[i] * 10);
+            }
+            return Integer.toHexString(hash);
+        }
+
+        private static String color(int color) {
+            return String.format(Locale.US, "#%08x", color);
+        }
+
+        private static String number(float value) {
+            return String.format(Locale.US, "%.1f", value);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.graphics.Bitmap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+
+/**
+ * A {@link Bitmap} shadow whose scaled bitmaps keep the config of their source. Robolectric's
+ * leaves it null, which makes {@link Bitmap#getByteCount} throw when the weather icons are cached.
+ */
+@Implements(Bitmap.class)
+public class ShadowScaledBitmap extends ShadowBitmap {
+
+    @Implementation
+    public static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight,
+            boolean filter) {
+        Bitmap scaled = ShadowBitmap.createScaledBitmap(src, dstWidth, dstHeight, filter);
+        if (scaled.getConfig() == null) {
+            shadowOf(scaled).setConfig(src.getConfig());
+        }
+        return scaled;
+    }
+}
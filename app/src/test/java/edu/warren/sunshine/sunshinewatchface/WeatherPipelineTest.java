@@ -0,0 +1,62 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.robolectric.Shadows.shadowOf;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+/**
+ * Drives the {@link WeatherPipeline} on its own thread and checks what it saves.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+// The same shadows as RenderBenchmarkTest: Robolectric 3.1 can't run tests with different sets
+// of shadows in one JVM.
+@Config(constants = BuildConfig.class, sdk = 23, shadows = {ShadowRecordingCanvas.class,
+        ShadowFacePaint.class, ShadowScaledBitmap.class, ShadowQuitSafelyLooper.class})
+public class WeatherPipelineTest {
+
+    private File mSnapshotFile;
+
+    @Before
+    public void setUp() {
+        mSnapshotFile = new File(RuntimeEnvironment.application.getFilesDir(),
+                WeatherPipeline.SNAPSHOT_FILE);
+        mSnapshotFile.delete();
+    }
+
+    @Test
+    public void quitSavesChangesStillBeingCoalesced() {
+        final WeatherPipeline pipeline = new WeatherPipeline(RuntimeEnvironment.application,
+                0.5f, new WeatherPipeline.Callback() {
+                    @Override
+                    public void onRenderStatePublished() {
+                    }
+                });
+        pipeline.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.onWeatherChanged(new WeatherState.Update().setWeatherId(5)
+                        .setHighTemp(215).setLowTemp(120));
+            }
+        });
+        // Runs the delivery but not the coalesced apply, which is still COALESCE_MS away.
+        shadowOf(pipeline.getHandler().getLooper()).idle();
+
+        pipeline.quit();
+        shadowOf(pipeline.getHandler().getLooper()).idle();
+
+        WeatherState saved = new WeatherSnapshot(mSnapshotFile).read();
+        assertNotNull(saved);
+        assertEquals(5, saved.getWeatherId());
+        assertEquals(215, saved.getHighTemp());
+        assertEquals(120, saved.getLowTemp());
+    }
+}
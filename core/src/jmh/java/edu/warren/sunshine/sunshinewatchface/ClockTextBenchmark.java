@@ -0,0 +1,50 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+
+/**
+ * The per-frame time path of {@code onDraw}: advancing the {@link ClockModel} and formatting
+ * the time into the reusable buffer. Each operation moves the clock on by one second, so most
+ * operations stay within a minute and every sixtieth decomposes a new one, as on the watch.
+ */
+@State(Scope.Thread)
+public class ClockTextBenchmark {
+
+    private static final long START_MS = 1466467200000L; // 2016-06-21T00:00:00Z
+
+    private final char[] mBuffer = new char[CharFormat.MAX_TIME_LENGTH];
+    private ClockModel mClock;
+    private long mNowMs;
+
+    @Setup
+    public void setUp() {
+        mClock = new ClockModel(TimeZone.getTimeZone("America/Los_Angeles"));
+        mNowMs = START_MS;
+    }
+
+    @Benchmark
+    public int updateClock() {
+        mNowMs += 1000;
+        return mClock.update(mNowMs);
+    }
+
+    @Benchmark
+    public int formatTime() {
+        mNowMs += 1000;
+        int second = (int) (mNowMs / 1000 % 60);
+        return CharFormat.formatTime(mBuffer, 10, 9, second, true);
+    }
+
+    @Benchmark
+    public int updateAndFormat() {
+        mNowMs += 1000;
+        mClock.update(mNowMs);
+        return CharFormat.formatTime(mBuffer, mClock.getHour(), mClock.getMinute(),
+                mClock.getSecond(), true);
+    }
+}
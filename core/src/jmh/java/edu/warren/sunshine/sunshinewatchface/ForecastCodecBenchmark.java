@@ -0,0 +1,60 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Encoding and decoding a 7-day, 24-hour {@link Forecast}. {@link #wrap} is what receiving a
+ * payload costs while nothing reads the entries; {@link #decode} adds the first read.
+ */
+@State(Scope.Thread)
+public class ForecastCodecBenchmark {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long START_MS = 1466467200000L; // 2016-06-21T00:00:00Z
+
+    private Forecast mForecast;
+    private byte[] mPayload;
+
+    static Forecast createForecast() {
+        Forecast.Builder builder = new Forecast.Builder();
+        for (int day = 0; day < 7; day++) {
+            int high = 180 + (day * 37) % 90;
+            builder.addDay(START_MS + day * DAY_MS, day % 8, high, high - 60 - day * 5,
+                    (day * 23) % 120);
+        }
+        int temp = 150;
+        for (int hour = 0; hour < 24; hour++) {
+            temp += (hour * 13) % 21 - 10;
+            builder.addHour(START_MS + hour * HOUR_MS, hour % 8, temp, (hour * 7) % 30);
+        }
+        return builder.build();
+    }
+
+    @Setup
+    public void setUp() {
+        mForecast = createForecast();
+        mPayload = mForecast.getPayload();
+        // Decoded once, so encode() below measures encoding only.
+        mForecast.decode();
+    }
+
+    @Benchmark
+    public Forecast wrap() {
+        return Forecast.fromPayload(mPayload);
+    }
+
+    @Benchmark
+    public int decode() {
+        Forecast forecast = Forecast.fromPayload(mPayload);
+        return forecast.getDayHigh(0) + forecast.getHourTemp(23);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return ForecastCodec.encode(mForecast);
+    }
+}
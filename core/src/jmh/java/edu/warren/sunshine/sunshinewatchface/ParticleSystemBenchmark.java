@@ -0,0 +1,44 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One animation frame of {@link ParticleSystem} work, moving the particles on by a frame and
+ * writing their points, with none, 100 and 500 storm particles over a round face's sky. The
+ * drawing itself is measured by the app's {@code RenderBenchmarkTest}.
+ */
+@State(Scope.Thread)
+public class ParticleSystemBenchmark {
+
+    private static final int SIZE = 320;
+
+    @Param({"0", "100", "500"})
+    public int particles;
+
+    private ParticleSystem mParticles;
+    private float[] mPoints;
+    private long mNowMs;
+
+    @Setup
+    public void setUp() {
+        mParticles = new ParticleSystem(500, 0x5eed);
+        mParticles.setArea(0, 0, SIZE, SIZE / 2);
+        mParticles.setLimit(particles);
+        mParticles.setStyle(particles > 0
+                ? ParticleSystem.STYLE_STORM : ParticleSystem.STYLE_NONE);
+        mPoints = new float[mParticles.getCapacity() * 4];
+        mNowMs = 0;
+        mParticles.update(mNowMs);
+    }
+
+    @Benchmark
+    public int frame() {
+        mNowMs += ParticleSystem.FRAME_INTERVAL_MS;
+        mParticles.update(mNowMs);
+        return mParticles.fillPoints(mPoints);
+    }
+}
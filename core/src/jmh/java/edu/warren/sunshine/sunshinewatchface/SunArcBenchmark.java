@@ -0,0 +1,65 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+
+/**
+ * Sun-arc positioning: the daily table rebuild (one {@link SolarCalculator} call per minute), the
+ * palette and layout derived from it, and the per-frame lookup that replaced computing the
+ * position on every draw.
+ */
+@State(Scope.Thread)
+public class SunArcBenchmark {
+
+    private static final double LATITUDE = 37.77;
+    private static final double LONGITUDE = -122.42;
+    private static final long MIDNIGHT_UTC_MS = 1466492400000L; // 2016-06-21T00:00 PDT
+
+    private final TimeZone mTimeZone = TimeZone.getTimeZone("America/Los_Angeles");
+    private final SunArc mSunArc = new SunArc();
+    private final SkyPalette mSkyPalette = new SkyPalette(0xFF03A9F4, 0xFF00FA00, 0xFF008000);
+    private int mMinute;
+    private int mRadius;
+
+    @Setup
+    public void setUp() {
+        mSunArc.computeDay(true, LATITUDE, LONGITUDE, MIDNIGHT_UTC_MS, mTimeZone);
+        mSunArc.layout(160, 160, 110f);
+    }
+
+    @Benchmark
+    public double solarElevation() {
+        mMinute = (mMinute + 1) % SunArc.MINUTES_PER_DAY;
+        return SolarCalculator.elevation(LATITUDE, LONGITUDE, MIDNIGHT_UTC_MS + mMinute * 60000L);
+    }
+
+    @Benchmark
+    public int computeDay() {
+        mSunArc.computeDay(true, LATITUDE, LONGITUDE, MIDNIGHT_UTC_MS, mTimeZone);
+        return mSunArc.getSunriseMinute();
+    }
+
+    @Benchmark
+    public int computePalette() {
+        mSkyPalette.compute(mSunArc);
+        return mSkyPalette.getSkyColor(720);
+    }
+
+    @Benchmark
+    public int layout() {
+        // A different radius each time, so the layout isn't skipped as already done.
+        mRadius = (mRadius + 1) & 0xFF;
+        mSunArc.layout(160, 160, 100f + mRadius);
+        return mSunArc.getX(720);
+    }
+
+    @Benchmark
+    public int framePosition() {
+        mMinute = (mMinute + 1) % SunArc.MINUTES_PER_DAY;
+        return mSunArc.isVisible(mMinute) ? mSunArc.getX(mMinute) + mSunArc.getY(mMinute) : 0;
+    }
+}
@@ -0,0 +1,51 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+
+/**
+ * Temperature formatting: the per-update {@link TemperatureTable#formatHighLow} against the
+ * {@link String#format} call it replaced, and the one-off cost of building a table on a unit or
+ * locale change.
+ */
+@State(Scope.Thread)
+public class TemperatureTableBenchmark {
+
+    private static final String PATTERN = "%1.0f\u00B0";
+
+    @Param({"0", "1"})
+    public int unit;
+
+    private final char[] mBuffer = new char[32];
+    private TemperatureTable mTable;
+    private int mHigh;
+
+    @Setup
+    public void setUp() {
+        mTable = new TemperatureTable(PATTERN, "--", Locale.US, unit);
+        mHigh = 215;
+    }
+
+    @Benchmark
+    public int formatHighLow() {
+        mHigh = mHigh >= 400 ? -100 : mHigh + 7;
+        return mTable.formatHighLow(mBuffer, mHigh, mHigh - 85);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        mHigh = mHigh >= 400 ? -100 : mHigh + 7;
+        return String.format(Locale.US, PATTERN, mHigh / 10.0) + " "
+                + String.format(Locale.US, PATTERN, (mHigh - 85) / 10.0);
+    }
+
+    @Benchmark
+    public TemperatureTable buildTable() {
+        return new TemperatureTable(PATTERN, "--", Locale.US, unit);
+    }
+}
@@ -0,0 +1,56 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Config diffing in the {@code onDataChanged} path: applying a config that repeats the current
+ * values (the common case, which must not produce a new state), applying one that changes a
+ * field, and diffing two states.
+ */
+@State(Scope.Thread)
+public class WeatherStateBenchmark {
+
+    private final WeatherState.Update mUnchanged = new WeatherState.Update();
+    private final WeatherState.Update mChanged = new WeatherState.Update();
+    private final WeatherState.Update mPending = new WeatherState.Update();
+    private WeatherState mState;
+    private WeatherState mOther;
+    private int mHigh;
+
+    @Setup
+    public void setUp() {
+        Forecast forecast = ForecastCodecBenchmark.createForecast();
+        mUnchanged.setWeatherId(5).setHighTemp(215).setLowTemp(120).setLocation(37.77, -122.42)
+                .setForecast(Forecast.fromPayload(forecast.getPayload().clone()));
+        mState = WeatherState.DEFAULT.apply(mUnchanged);
+        mOther = mState.apply(new WeatherState.Update().setHighTemp(230));
+    }
+
+    @Benchmark
+    public WeatherState applyUnchanged() {
+        return mState.apply(mUnchanged);
+    }
+
+    @Benchmark
+    public WeatherState applyChanged() {
+        mHigh = (mHigh + 1) & 0x1FF;
+        mChanged.clear();
+        mChanged.setHighTemp(mHigh);
+        return mState.apply(mChanged);
+    }
+
+    @Benchmark
+    public WeatherState mergeAndApply() {
+        mPending.clear();
+        mPending.merge(mUnchanged);
+        return mState.apply(mPending);
+    }
+
+    @Benchmark
+    public int diff() {
+        return mState.diff(mOther);
+    }
+}
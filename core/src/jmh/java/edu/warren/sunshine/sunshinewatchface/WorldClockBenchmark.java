@@ -0,0 +1,76 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Local time in three secondary zones, per frame: through a {@link Calendar} per zone, as a
+ * straightforward implementation would, and through {@link ZoneTransitions} tables. Each
+ * operation moves the clock on by one second, wrapping around before the tables run out;
+ * {@link #updateRow} also formats the {@link WorldClock} row, which only happens once a minute.
+ */
+@State(Scope.Thread)
+public class WorldClockBenchmark {
+
+    private static final long START_MS = 1466467200000L; // 2016-06-21T00:00:00Z
+    private static final long WRAP_MS = START_MS + ZoneTransitions.DEFAULT_HORIZON_MS / 2;
+    private static final String[] ZONE_IDS =
+            {"Europe/London", "Asia/Tokyo", "America/New_York"};
+
+    private final Calendar[] mCalendars = new Calendar[ZONE_IDS.length];
+    private final ZoneTransitions[] mTables = new ZoneTransitions[ZONE_IDS.length];
+    private WorldClock mWorldClock;
+    private long mNowMs;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < ZONE_IDS.length; i++) {
+            TimeZone timeZone = TimeZone.getTimeZone(ZONE_IDS[i]);
+            mCalendars[i] = Calendar.getInstance(timeZone);
+            mTables[i] = new ZoneTransitions(timeZone);
+            mTables[i].rebuild(START_MS, ZoneTransitions.DEFAULT_HORIZON_MS);
+        }
+        mWorldClock = new WorldClock(ZONE_IDS);
+        mWorldClock.rebuild(START_MS);
+        mNowMs = START_MS;
+    }
+
+    @Benchmark
+    public int calendarLookup() {
+        advance();
+        int sum = 0;
+        for (Calendar calendar : mCalendars) {
+            calendar.setTimeInMillis(mNowMs);
+            sum += calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int tableLookup() {
+        advance();
+        int sum = 0;
+        for (ZoneTransitions table : mTables) {
+            sum += (int) ((mNowMs + table.getOffset(mNowMs)) / 60000 % (24 * 60));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public boolean updateRow() {
+        advance();
+        return mWorldClock.update(mNowMs);
+    }
+
+    private void advance() {
+        mNowMs += 1000;
+        if (mNowMs >= WRAP_MS) {
+            mNowMs = START_MS;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Allocation-free formatting of the numbers drawn by {@code SunshineWatchFace} into reusable
+ * {@code char[]} buffers, for use from {@code onDraw} where {@link String#format} would create
+ * garbage on every frame.
+ */
+public final class CharFormat {
+
+    /**
+     * Longest text written by {@link #formatTime}: "HH:MM:SS".
+     */
+    public static final int MAX_TIME_LENGTH = 8;
+
+    /**
+     * Longest text written by {@link #appendInt}: "-2147483648".
+     */
+    public static final int MAX_INT_LENGTH = 11;
+
+    /**
+     * Writes {@code value} at {@code offset} without leading zeros.
+     *
+     * @return the offset just past the last written character
+     */
+    public static int appendInt(char[] buffer, int offset, int value) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                return appendString(buffer, offset, "-2147483648");
+            }
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Writes {@code value}, which must be in [0, 99], as exactly two digits at {@code offset}.
+     *
+     * @return the offset just past the last written character
+     */
+    public static int appendTwoDigits(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+        return offset + 2;
+    }
+
+    /**
+     * Copies {@code text} into {@code buffer} at {@code offset}.
+     *
+     * @return the offset just past the last written character
+     */
+    public static int appendString(char[] buffer, int offset, String text) {
+        int length = text.length();
+        text.getChars(0, length, buffer, offset);
+        return offset + length;
+    }
+
+    /**
+     * Writes "H:MM" or, if {@code showSeconds}, "H:MM:SS" to the start of {@code buffer}, which
+     * must hold at least {@link #MAX_TIME_LENGTH} characters.
+     *
+     * @return the number of characters written
+     */
+    public static int formatTime(char[] buffer, int hour, int minute, int second,
+                                 boolean showSeconds) {
+        int offset = appendInt(buffer, 0, hour);
+        buffer[offset++] = ':';
+        offset = appendTwoDigits(buffer, offset, minute);
+        if (showSeconds) {
+            buffer[offset++] = ':';
+            offset = appendTwoDigits(buffer, offset, second);
+        }
+        return offset;
+    }
+
+    /**
+     * Returns {@code buffer} if it can hold {@code length} characters, otherwise a larger one.
+     * Only called when the text it is going to hold has changed.
+     */
+    public static char[] ensureCapacity(char[] buffer, int length) {
+        return buffer.length >= length ? buffer : new char[Math.max(length, buffer.length * 2)];
+    }
+
+    /**
+     * Returns whether the first {@code length} characters of {@code a} and the first
+     * {@code otherLength} of {@code b} are the same text.
+     */
+    public static boolean equals(char[] a, int length, char[] b, int otherLength) {
+        if (length != otherLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CharFormat() { }
+}
@@ -0,0 +1,129 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Wall-clock time for {@code SunshineWatchFace}, decomposed into fields incrementally.
+ * <p>
+ * A full {@link Calendar} decomposition (with its time zone and DST math) only happens when the
+ * time crosses into a new minute, or after {@link #invalidate()} / {@link #setTimeZone}. Within a
+ * minute only the second is advanced. {@link #update} reports which fields changed so callers can
+ * keep derived values, like formatted date strings, until the next day rollover.
+ */
+public final class ClockModel {
+
+    public static final int CHANGED_SECOND = 1;
+    public static final int CHANGED_MINUTE = 1 << 1;
+    public static final int CHANGED_HOUR = 1 << 2;
+    public static final int CHANGED_DAY = 1 << 3;
+
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private final Calendar mCalendar;
+
+    /**
+     * Start (inclusive) of the minute the fields were last fully decomposed for, or
+     * {@link Long#MIN_VALUE} if they must be decomposed on the next update.
+     */
+    private long mMinuteStart = Long.MIN_VALUE;
+
+    private int mYear = -1;
+    private int mDayOfYear = -1;
+    private int mHour = -1;
+    private int mMinute = -1;
+    private int mSecond = -1;
+
+    public ClockModel(TimeZone timeZone) {
+        mCalendar = Calendar.getInstance(timeZone);
+    }
+
+    /**
+     * Switches to {@code timeZone}; the next {@link #update} decomposes the time fully.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        invalidate();
+    }
+
+    public TimeZone getTimeZone() {
+        return mCalendar.getTimeZone();
+    }
+
+    /**
+     * Forces a full decomposition on the next {@link #update}, reported as a day change. Used when
+     * the locale changes, or the time was set, so that every derived value is rebuilt.
+     */
+    public void invalidate() {
+        mMinuteStart = Long.MIN_VALUE;
+        mYear = -1;
+        mDayOfYear = -1;
+    }
+
+    /**
+     * Advances the clock to {@code nowMs}.
+     *
+     * @return a combination of the {@code CHANGED_*} flags for the fields that changed
+     */
+    public int update(long nowMs) {
+        if (mMinuteStart != Long.MIN_VALUE && nowMs >= mMinuteStart
+                && nowMs < mMinuteStart + MINUTE_MS) {
+            int second = (int) ((nowMs - mMinuteStart) / 1000);
+            if (second == mSecond) {
+                return 0;
+            }
+            mSecond = second;
+            return CHANGED_SECOND;
+        }
+        return decompose(nowMs);
+    }
+
+    private int decompose(long nowMs) {
+        mCalendar.setTimeInMillis(nowMs);
+        int year = mCalendar.get(Calendar.YEAR);
+        int dayOfYear = mCalendar.get(Calendar.DAY_OF_YEAR);
+        int hour = mCalendar.get(Calendar.HOUR_OF_DAY);
+        int minute = mCalendar.get(Calendar.MINUTE);
+        int second = mCalendar.get(Calendar.SECOND);
+        mMinuteStart = nowMs - second * 1000L - mCalendar.get(Calendar.MILLISECOND);
+
+        int changed = 0;
+        if (second != mSecond) {
+            changed |= CHANGED_SECOND;
+        }
+        if (minute != mMinute) {
+            changed |= CHANGED_MINUTE;
+        }
+        if (hour != mHour) {
+            changed |= CHANGED_HOUR;
+        }
+        if (dayOfYear != mDayOfYear || year != mYear) {
+            changed |= CHANGED_DAY;
+        }
+        mYear = year;
+        mDayOfYear = dayOfYear;
+        mHour = hour;
+        mMinute = minute;
+        mSecond = second;
+        return changed;
+    }
+
+    public int getHour() {
+        return mHour;
+    }
+
+    public int getMinute() {
+        return mMinute;
+    }
+
+    public int getSecond() {
+        return mSecond;
+    }
+
+    /**
+     * Minutes since local midnight, in [0, 1440).
+     */
+    public int getMinuteOfDay() {
+        return mHour * 60 + mMinute;
+    }
+}
@@ -0,0 +1,197 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Where everything on {@code SunshineWatchFace} goes for one set of bounds, text sizes and peek
+ * card state. Immutable; a {@link Builder} holds the inputs and builds a new layout only when
+ * one of them has changed, so the per-frame code only reads positions from here.
+ * <p>
+ * The horizon runs through the center of the bounds: the sky above it, the ground below. The
+ * temperature sits on the horizon, the time below it, then the date and the world clock a line
+ * apart each, and the sun arc is centered on the horizon.
+ */
+public final class FaceLayout {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mCenterX;
+    private final int mCenterY;
+    private final float mTemperatureBaseline;
+    private final int mTimeBaseline;
+    private final float mDateBaseline;
+    private final float mWorldClockBaseline;
+    private final float mAmbientIconBottom;
+    private final float mSunArcRadius;
+    private final boolean mShowingDate;
+
+    private FaceLayout(Builder builder) {
+        mWidth = builder.mWidth;
+        mHeight = builder.mHeight;
+        mCenterX = builder.mWidth / 2;
+        mCenterY = builder.mHeight / 2;
+        mTemperatureBaseline = mCenterY - builder.mHorizonOffset;
+        mTimeBaseline = mCenterY + (int) builder.mTimeTextSize;
+        mDateBaseline = mTimeBaseline + builder.mLineHeight;
+        mWorldClockBaseline = mTimeBaseline + 2 * builder.mLineHeight;
+        mAmbientIconBottom = mTemperatureBaseline - builder.mTemperatureTextSize;
+        mSunArcRadius = builder.mSunArcRadius;
+        mShowingDate = builder.mShowingDate;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the x coordinate everything is centered on.
+     */
+    public int getCenterX() {
+        return mCenterX;
+    }
+
+    /**
+     * Returns the y coordinate of the horizon, which is also the bottom of the sky and the
+     * center of the sun arc.
+     */
+    public int getHorizonY() {
+        return mCenterY;
+    }
+
+    public float getTemperatureBaseline() {
+        return mTemperatureBaseline;
+    }
+
+    public int getTimeBaseline() {
+        return mTimeBaseline;
+    }
+
+    public float getDateBaseline() {
+        return mDateBaseline;
+    }
+
+    public float getWorldClockBaseline() {
+        return mWorldClockBaseline;
+    }
+
+    /**
+     * Returns where the bottom of the weather icon goes in ambient mode, just above the
+     * temperature.
+     */
+    public float getAmbientIconBottom() {
+        return mAmbientIconBottom;
+    }
+
+    public float getSunArcRadius() {
+        return mSunArcRadius;
+    }
+
+    /**
+     * Returns whether the date and world clock are shown. They are hidden while a peek card
+     * is up, so that the two don't bleed into each other in ambient mode.
+     */
+    public boolean isShowingDate() {
+        return mShowingDate;
+    }
+
+    @Override
+    public String toString() {
+        return "FaceLayout{" + mWidth + "x" + mHeight
+                + ", horizon=" + mCenterY
+                + ", time=" + mTimeBaseline
+                + ", date=" + (mShowingDate ? String.valueOf(mDateBaseline) : "hidden") + "}";
+    }
+
+    /**
+     * The inputs of a layout. Setters only record changes; {@link #build} returns the last
+     * layout until one of them has actually changed.
+     */
+    public static final class Builder {
+        private int mWidth;
+        private int mHeight;
+        private float mTimeTextSize;
+        private float mTemperatureTextSize;
+        private float mLineHeight;
+        private float mHorizonOffset;
+        private float mSunArcRadius;
+        private boolean mShowingDate = true;
+
+        private FaceLayout mLayout;
+
+        public Builder setSize(int width, int height) {
+            if (width != mWidth || height != mHeight) {
+                mWidth = width;
+                mHeight = height;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        public Builder setTimeTextSize(float timeTextSize) {
+            if (timeTextSize != mTimeTextSize) {
+                mTimeTextSize = timeTextSize;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        public Builder setTemperatureTextSize(float temperatureTextSize) {
+            if (temperatureTextSize != mTemperatureTextSize) {
+                mTemperatureTextSize = temperatureTextSize;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        /**
+         * Sets the distance between the time, date and world clock baselines.
+         */
+        public Builder setLineHeight(float lineHeight) {
+            if (lineHeight != mLineHeight) {
+                mLineHeight = lineHeight;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        /**
+         * Sets how far above the horizon the temperature's baseline is.
+         */
+        public Builder setHorizonOffset(float horizonOffset) {
+            if (horizonOffset != mHorizonOffset) {
+                mHorizonOffset = horizonOffset;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        public Builder setSunArcRadius(float sunArcRadius) {
+            if (sunArcRadius != mSunArcRadius) {
+                mSunArcRadius = sunArcRadius;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        public Builder setShowingDate(boolean showingDate) {
+            if (showingDate != mShowingDate) {
+                mShowingDate = showingDate;
+                mLayout = null;
+            }
+            return this;
+        }
+
+        /**
+         * Returns the layout for the current inputs, the same instance as last time unless one
+         * of them changed since.
+         */
+        public FaceLayout build() {
+            if (mLayout == null) {
+                mLayout = new FaceLayout(this);
+            }
+            return mLayout;
+        }
+    }
+}
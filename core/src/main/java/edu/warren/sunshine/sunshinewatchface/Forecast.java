@@ -0,0 +1,254 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.Arrays;
+
+/**
+ * Multi-day and hourly forecast received in the {@link WeatherDataItem#KEY_FORECAST} payload.
+ * <p>
+ * A forecast received from the phone keeps only its {@link ForecastCodec} payload until one of
+ * the entry getters is first called, and then decodes it once into primitive arrays. Forecasts
+ * that nothing on the watch looks at are never decoded, and two forecasts are equal when their
+ * payloads are, so comparing a new one with the current one doesn't decode either.
+ * <p>
+ * The payload never changes, but decoding fills in the arrays lazily and isn't synchronized. A
+ * forecast built on the weather pipeline thread and published to the UI thread must be
+ * {@link #decode() decoded} before it is published, or only read on one of the two.
+ */
+public final class Forecast {
+
+    private final byte[] mPayload;
+
+    private boolean mDecoded;
+    private long[] mDayStarts;
+    private int[] mDayWeatherIds;
+    private int[] mDayHighs;
+    private int[] mDayLows;
+    private int[] mDayPrecipitation;
+    private long[] mHourTimes;
+    private int[] mHourWeatherIds;
+    private int[] mHourTemps;
+    private int[] mHourPrecipitation;
+
+    private Forecast(byte[] payload) {
+        mPayload = payload;
+    }
+
+    /**
+     * Wraps a received payload. Only the version is checked here; the rest is decoded on first
+     * use.
+     *
+     * @throws IllegalArgumentException if the payload is empty or has an unsupported version
+     */
+    public static Forecast fromPayload(byte[] payload) {
+        int version = ForecastCodec.readVersion(payload);
+        if (version != ForecastCodec.VERSION) {
+            throw new IllegalArgumentException("Unsupported forecast version " + version);
+        }
+        return new Forecast(payload);
+    }
+
+    /**
+     * The encoded form of this forecast. Must not be modified.
+     */
+    public byte[] getPayload() {
+        return mPayload;
+    }
+
+    /**
+     * Decodes the payload now, rather than in the first getter that needs it.
+     *
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public void decode() {
+        if (!mDecoded) {
+            ForecastCodec.decode(mPayload, this);
+            mDecoded = true;
+        }
+    }
+
+    public int getDayCount() {
+        decode();
+        return mDayStarts.length;
+    }
+
+    /**
+     * Start of day {@code index}, as UTC milliseconds at midnight UTC.
+     */
+    public long getDayStart(int index) {
+        decode();
+        return mDayStarts[index];
+    }
+
+    public int getDayWeatherId(int index) {
+        decode();
+        return mDayWeatherIds[index];
+    }
+
+    /**
+     * High for day {@code index}, in tenths of a degree Celsius.
+     */
+    public int getDayHigh(int index) {
+        decode();
+        return mDayHighs[index];
+    }
+
+    /**
+     * Low for day {@code index}, in tenths of a degree Celsius.
+     */
+    public int getDayLow(int index) {
+        decode();
+        return mDayLows[index];
+    }
+
+    /**
+     * Precipitation for day {@code index}, in tenths of a millimetre.
+     */
+    public int getDayPrecipitation(int index) {
+        decode();
+        return mDayPrecipitation[index];
+    }
+
+    public int getHourCount() {
+        decode();
+        return mHourTimes.length;
+    }
+
+    /**
+     * Time of hourly entry {@code index}, as UTC milliseconds.
+     */
+    public long getHourTime(int index) {
+        decode();
+        return mHourTimes[index];
+    }
+
+    public int getHourWeatherId(int index) {
+        decode();
+        return mHourWeatherIds[index];
+    }
+
+    /**
+     * Temperature of hourly entry {@code index}, in tenths of a degree Celsius.
+     */
+    public int getHourTemp(int index) {
+        decode();
+        return mHourTemps[index];
+    }
+
+    /**
+     * Precipitation of hourly entry {@code index}, in tenths of a millimetre.
+     */
+    public int getHourPrecipitation(int index) {
+        decode();
+        return mHourPrecipitation[index];
+    }
+
+    void setDays(long[] starts, int[] weatherIds, int[] highs, int[] lows, int[] precipitation) {
+        mDayStarts = starts;
+        mDayWeatherIds = weatherIds;
+        mDayHighs = highs;
+        mDayLows = lows;
+        mDayPrecipitation = precipitation;
+    }
+
+    void setHours(long[] times, int[] weatherIds, int[] temps, int[] precipitation) {
+        mHourTimes = times;
+        mHourWeatherIds = weatherIds;
+        mHourTemps = temps;
+        mHourPrecipitation = precipitation;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Forecast && Arrays.equals(mPayload, ((Forecast) o).mPayload);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mPayload);
+    }
+
+    @Override
+    public String toString() {
+        return "Forecast{" + mPayload.length + " bytes}";
+    }
+
+    /**
+     * Collects forecast entries on the sending side and encodes them with {@link #build()}.
+     */
+    public static final class Builder {
+        private int mDayCount;
+        private long[] mDayStarts = new long[7];
+        private int[] mDayWeatherIds = new int[7];
+        private int[] mDayHighs = new int[7];
+        private int[] mDayLows = new int[7];
+        private int[] mDayPrecipitation = new int[7];
+
+        private int mHourCount;
+        private long[] mHourTimes = new long[24];
+        private int[] mHourWeatherIds = new int[24];
+        private int[] mHourTemps = new int[24];
+        private int[] mHourPrecipitation = new int[24];
+
+        /**
+         * Adds a day, starting at {@code startMillis} UTC, with temperatures in tenths of a degree
+         * Celsius and precipitation in tenths of a millimetre.
+         */
+        public Builder addDay(long startMillis, int weatherId, int high, int low,
+                              int precipitation) {
+            if (mDayCount == mDayStarts.length) {
+                int capacity = mDayCount * 2;
+                mDayStarts = Arrays.copyOf(mDayStarts, capacity);
+                mDayWeatherIds = Arrays.copyOf(mDayWeatherIds, capacity);
+                mDayHighs = Arrays.copyOf(mDayHighs, capacity);
+                mDayLows = Arrays.copyOf(mDayLows, capacity);
+                mDayPrecipitation = Arrays.copyOf(mDayPrecipitation, capacity);
+            }
+            mDayStarts[mDayCount] = startMillis;
+            mDayWeatherIds[mDayCount] = weatherId;
+            mDayHighs[mDayCount] = high;
+            mDayLows[mDayCount] = low;
+            mDayPrecipitation[mDayCount] = precipitation;
+            mDayCount++;
+            return this;
+        }
+
+        /**
+         * Adds an hourly entry at {@code timeMillis} UTC, with the temperature in tenths of a
+         * degree Celsius and precipitation in tenths of a millimetre.
+         */
+        public Builder addHour(long timeMillis, int weatherId, int temp, int precipitation) {
+            if (mHourCount == mHourTimes.length) {
+                int capacity = mHourCount * 2;
+                mHourTimes = Arrays.copyOf(mHourTimes, capacity);
+                mHourWeatherIds = Arrays.copyOf(mHourWeatherIds, capacity);
+                mHourTemps = Arrays.copyOf(mHourTemps, capacity);
+                mHourPrecipitation = Arrays.copyOf(mHourPrecipitation, capacity);
+            }
+            mHourTimes[mHourCount] = timeMillis;
+            mHourWeatherIds[mHourCount] = weatherId;
+            mHourTemps[mHourCount] = temp;
+            mHourPrecipitation[mHourCount] = precipitation;
+            mHourCount++;
+            return this;
+        }
+
+        /**
+         * Encodes the entries added so far. The result reads back exactly what the receiver will
+         * decode, including the truncation of times described in {@link ForecastCodec#encode}.
+         */
+        public Forecast build() {
+            Forecast entries = new Forecast(null);
+            entries.setDays(Arrays.copyOf(mDayStarts, mDayCount),
+                    Arrays.copyOf(mDayWeatherIds, mDayCount),
+                    Arrays.copyOf(mDayHighs, mDayCount),
+                    Arrays.copyOf(mDayLows, mDayCount),
+                    Arrays.copyOf(mDayPrecipitation, mDayCount));
+            entries.setHours(Arrays.copyOf(mHourTimes, mHourCount),
+                    Arrays.copyOf(mHourWeatherIds, mHourCount),
+                    Arrays.copyOf(mHourTemps, mHourCount),
+                    Arrays.copyOf(mHourPrecipitation, mHourCount));
+            entries.mDecoded = true;
+            return new Forecast(ForecastCodec.encode(entries));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Binary wire format of the {@link WeatherDataItem#KEY_FORECAST} payload.
+ * <p>
+ * A payload is a version byte followed by a daily and an hourly section. Each section is a
+ * count, the time of its first entry and then one record per entry. Every value is a varint,
+ * and times and temperatures are stored as zigzag-encoded deltas from the previous entry, so a
+ * typical record fits in four or five bytes:
+ * <pre>
+ * byte    version
+ * varint  dayCount
+ * varint  first day, in days since the epoch (only if dayCount > 0)
+ * per day:  varint days since previous, varint weatherId, zigzag high delta,
+ *           zigzag low - high, varint precipitation
+ * varint  hourCount
+ * varint  first hour, in minutes since the epoch (only if hourCount > 0)
+ * per hour: varint minutes since previous, varint weatherId, zigzag temperature delta,
+ *           varint precipitation
+ * </pre>
+ * Temperatures are tenths of a degree Celsius and precipitation is tenths of a millimetre, as
+ * everywhere else in the watch face. Decoders reject payloads with a version they don't know.
+ */
+public final class ForecastCodec {
+
+    public static final int VERSION = 1;
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long DAY_MS = 24 * 60 * MINUTE_MS;
+
+    /**
+     * Encodes the entries of {@code forecast}. Day starts are truncated to whole UTC days and hour
+     * times to whole minutes. Entries are expected in time order; out of order ones still round
+     * trip, but cost ten bytes for their time delta.
+     */
+    public static byte[] encode(Forecast forecast) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+
+        int dayCount = forecast.getDayCount();
+        writeVarint(out, dayCount);
+        long previousDay = 0;
+        int previousHigh = 0;
+        for (int i = 0; i < dayCount; i++) {
+            long day = Math.max(0, forecast.getDayStart(i) / DAY_MS);
+            writeVarint(out, day - previousDay);
+            writeVarint(out, forecast.getDayWeatherId(i));
+            int high = forecast.getDayHigh(i);
+            writeVarint(out, zigzag(high - previousHigh));
+            writeVarint(out, zigzag(forecast.getDayLow(i) - high));
+            writeVarint(out, forecast.getDayPrecipitation(i));
+            previousDay = day;
+            previousHigh = high;
+        }
+
+        int hourCount = forecast.getHourCount();
+        writeVarint(out, hourCount);
+        long previousMinute = 0;
+        int previousTemp = 0;
+        for (int i = 0; i < hourCount; i++) {
+            long minute = Math.max(0, forecast.getHourTime(i) / MINUTE_MS);
+            writeVarint(out, minute - previousMinute);
+            writeVarint(out, forecast.getHourWeatherId(i));
+            int temp = forecast.getHourTemp(i);
+            writeVarint(out, zigzag(temp - previousTemp));
+            writeVarint(out, forecast.getHourPrecipitation(i));
+            previousMinute = minute;
+            previousTemp = temp;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the format version of {@code payload}, without decoding the rest.
+     *
+     * @throws IllegalArgumentException if the payload is empty
+     */
+    public static int readVersion(byte[] payload) {
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Empty forecast payload");
+        }
+        return payload[0] & 0xFF;
+    }
+
+    /**
+     * Decodes {@code payload} into the arrays of {@code target}.
+     *
+     * @throws IllegalArgumentException if the payload has an unknown version or is malformed
+     */
+    static void decode(byte[] payload, Forecast target) {
+        int version = readVersion(payload);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported forecast version " + version);
+        }
+        Reader in = new Reader(payload, 1);
+
+        int dayCount = in.readCount();
+        long[] dayStarts = new long[dayCount];
+        int[] dayWeatherIds = new int[dayCount];
+        int[] dayHighs = new int[dayCount];
+        int[] dayLows = new int[dayCount];
+        int[] dayPrecipitation = new int[dayCount];
+        long day = 0;
+        int high = 0;
+        for (int i = 0; i < dayCount; i++) {
+            day += in.readVarint();
+            dayStarts[i] = day * DAY_MS;
+            dayWeatherIds[i] = (int) in.readVarint();
+            high += unzigzag(in.readVarint());
+            dayHighs[i] = high;
+            dayLows[i] = high + unzigzag(in.readVarint());
+            dayPrecipitation[i] = (int) in.readVarint();
+        }
+
+        int hourCount = in.readCount();
+        long[] hourTimes = new long[hourCount];
+        int[] hourWeatherIds = new int[hourCount];
+        int[] hourTemps = new int[hourCount];
+        int[] hourPrecipitation = new int[hourCount];
+        long minute = 0;
+        int temp = 0;
+        for (int i = 0; i < hourCount; i++) {
+            minute += in.readVarint();
+            hourTimes[i] = minute * MINUTE_MS;
+            hourWeatherIds[i] = (int) in.readVarint();
+            temp += unzigzag(in.readVarint());
+            hourTemps[i] = temp;
+            hourPrecipitation[i] = (int) in.readVarint();
+        }
+
+        target.setDays(dayStarts, dayWeatherIds, dayHighs, dayLows, dayPrecipitation);
+        target.setHours(hourTimes, hourWeatherIds, hourTemps, hourPrecipitation);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long value) {
+        int v = (int) value;
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static final class Reader {
+        private final byte[] mBuffer;
+        private int mPosition;
+
+        Reader(byte[] buffer, int position) {
+            mBuffer = buffer;
+            mPosition = position;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (mPosition >= mBuffer.length) {
+                    throw new IllegalArgumentException("Truncated forecast payload");
+                }
+                int b = mBuffer[mPosition++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in forecast payload");
+        }
+
+        /**
+         * Reads an entry count, rejecting counts that can't fit in the rest of the payload
+         * before any array is allocated for them.
+         */
+        int readCount() {
+            long count = readVarint();
+            if (count > mBuffer.length - mPosition) {
+                throw new IllegalArgumentException("Bad forecast entry count " + count);
+            }
+            return (int) count;
+        }
+    }
+
+    private ForecastCodec() { }
+}
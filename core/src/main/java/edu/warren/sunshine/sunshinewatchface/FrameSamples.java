@@ -0,0 +1,92 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-frame draw times and allocated bytes collected by a benchmark run, with the percentiles
+ * and maxima worked out at the end.
+ * <p>
+ * Samples go into arrays sized up front, so recording one allocates nothing and doesn't disturb
+ * the allocations being measured. Samples past the capacity are dropped.
+ */
+public final class FrameSamples {
+
+    private final long[] mDurationsNs;
+    private final long[] mAllocatedBytes;
+    private int mCount;
+
+    public FrameSamples(int capacity) {
+        mDurationsNs = new long[capacity];
+        mAllocatedBytes = new long[capacity];
+    }
+
+    public void add(long durationNs, long allocatedBytes) {
+        if (mCount < mDurationsNs.length) {
+            mDurationsNs[mCount] = durationNs;
+            mAllocatedBytes[mCount] = allocatedBytes;
+            mCount++;
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the draw time at {@code percentile} (0 to 100), by the nearest-rank method, or 0 if
+     * there are no samples.
+     */
+    public long getPercentileNs(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mDurationsNs, mCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * mCount);
+        return sorted[Math.max(0, Math.min(mCount - 1, rank - 1))];
+    }
+
+    public long getMaxNs() {
+        long max = 0;
+        for (int i = 0; i < mCount; i++) {
+            max = Math.max(max, mDurationsNs[i]);
+        }
+        return max;
+    }
+
+    public long getMaxAllocatedBytes() {
+        long max = 0;
+        for (int i = 0; i < mCount; i++) {
+            max = Math.max(max, mAllocatedBytes[i]);
+        }
+        return max;
+    }
+
+    public double getMeanAllocatedBytes() {
+        if (mCount == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < mCount; i++) {
+            total += mAllocatedBytes[i];
+        }
+        return total / (double) mCount;
+    }
+
+    public void clear() {
+        mCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + mCount
+                + " p50=" + getPercentileNs(50) / 1000 + "us"
+                + " p90=" + getPercentileNs(90) / 1000 + "us"
+                + " p99=" + getPercentileNs(99) / 1000 + "us"
+                + " max=" + getMaxNs() / 1000 + "us"
+                + " alloc bytes/frame mean="
+                + String.format(Locale.US, "%.1f", getMeanAllocatedBytes())
+                + " max=" + getMaxAllocatedBytes();
+    }
+}
@@ -0,0 +1,195 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Decides when {@code SunshineWatchFace} needs to draw.
+ * <p>
+ * While ticking it wakes up once a second if seconds are shown and once a minute otherwise,
+ * switching to a high rate only while an animation is running. Redraw requests from data, taps and
+ * ticks that arrive before the pending frame is drawn are coalesced into that frame, and ticks
+ * whose visible content is unchanged are skipped. Counters for each outcome make the saved wakeups
+ * measurable.
+ * <p>
+ * The scheduler is single-threaded and has no Android dependencies; the engine supplies the timer
+ * and the invalidation through {@link Host}.
+ */
+public final class FrameScheduler {
+
+    /**
+     * Default frame interval while an animation is running.
+     */
+    public static final long ANIMATION_FRAME_MS = 33;
+
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+
+    /**
+     * What the scheduler drives.
+     */
+    public interface Host {
+        /**
+         * Calls {@link FrameScheduler#onTick} after {@code delayMs}, replacing any earlier tick.
+         */
+        void scheduleTick(long delayMs);
+
+        /**
+         * Cancels the pending tick, if any.
+         */
+        void cancelTick();
+
+        /**
+         * Requests a frame; the host calls {@link FrameScheduler#onFrameDrawn} when it is drawn.
+         */
+        void invalidate();
+    }
+
+    private final Host mHost;
+
+    private boolean mTicking;
+    private boolean mShowSeconds;
+    private long mAnimationEndMs;
+    private long mAnimationFrameMs = ANIMATION_FRAME_MS;
+
+    private boolean mFramePending;
+    private boolean mContentDirty;
+    private long mLastDrawnKey = Long.MIN_VALUE;
+
+    private long mFramesRequested;
+    private long mFramesCoalesced;
+    private long mTicksSkipped;
+    private long mFramesDrawn;
+
+    public FrameScheduler(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * Starts or stops the periodic tick. {@code showSeconds} selects the 1 Hz rate over the
+     * once-a-minute one. Any frame still marked pending is forgotten, since an invisible engine
+     * may never get to draw it.
+     */
+    public void setTicking(boolean ticking, boolean showSeconds) {
+        mTicking = ticking;
+        mShowSeconds = showSeconds;
+        mFramePending = false;
+        mHost.cancelTick();
+        if (ticking) {
+            mHost.scheduleTick(0);
+        } else {
+            mAnimationEndMs = 0;
+        }
+    }
+
+    public boolean isShowingSeconds() {
+        return mShowSeconds;
+    }
+
+    /**
+     * Requests a redraw because something other than the time changed.
+     */
+    public void requestFrame() {
+        mContentDirty = true;
+        requestInvalidate();
+    }
+
+    /**
+     * Sets the tick interval while animating, {@link #ANIMATION_FRAME_MS} by default. Effects
+     * that have to cut their work to fit the frame budget can lower the frame rate as well.
+     */
+    public void setAnimationFrameMs(long frameMs) {
+        mAnimationFrameMs = frameMs;
+    }
+
+    public long getAnimationFrameMs() {
+        return mAnimationFrameMs;
+    }
+
+    /**
+     * Runs the tick at the animation frame interval until {@code durationMs} from now.
+     */
+    public void requestAnimation(long nowMs, long durationMs) {
+        boolean wasAnimating = isAnimating(nowMs);
+        mAnimationEndMs = Math.max(mAnimationEndMs, nowMs + durationMs);
+        if (mTicking && !wasAnimating) {
+            mHost.scheduleTick(0);
+        }
+    }
+
+    public boolean isAnimating(long nowMs) {
+        return nowMs < mAnimationEndMs;
+    }
+
+    /**
+     * Handles the periodic tick. {@code contentKey} identifies what a frame drawn now would show,
+     * for example the current second; if it matches the last drawn frame the tick is skipped.
+     */
+    public void onTick(long nowMs, long contentKey) {
+        if (!mTicking) {
+            return;
+        }
+        boolean animating = isAnimating(nowMs);
+        if (animating || mContentDirty || contentKey != mLastDrawnKey) {
+            requestInvalidate();
+        } else {
+            mTicksSkipped++;
+        }
+        long delayMs;
+        if (animating) {
+            delayMs = mAnimationFrameMs;
+        } else {
+            long period = mShowSeconds ? SECOND_MS : MINUTE_MS;
+            delayMs = period - nowMs % period;
+        }
+        mHost.scheduleTick(delayMs);
+    }
+
+    /**
+     * Must be called at the start of every draw with the key of the content being drawn.
+     */
+    public void onFrameDrawn(long contentKey) {
+        mFramePending = false;
+        mContentDirty = false;
+        mLastDrawnKey = contentKey;
+        mFramesDrawn++;
+    }
+
+    /**
+     * Returns the content key for {@code nowMs} at the current tick rate.
+     */
+    public long contentKey(long nowMs) {
+        return nowMs / (mShowSeconds ? SECOND_MS : MINUTE_MS);
+    }
+
+    private void requestInvalidate() {
+        mFramesRequested++;
+        if (mFramePending) {
+            mFramesCoalesced++;
+            return;
+        }
+        mFramePending = true;
+        mHost.invalidate();
+    }
+
+    public long getFramesRequested() {
+        return mFramesRequested;
+    }
+
+    public long getFramesCoalesced() {
+        return mFramesCoalesced;
+    }
+
+    public long getTicksSkipped() {
+        return mTicksSkipped;
+    }
+
+    public long getFramesDrawn() {
+        return mFramesDrawn;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameScheduler{requested=" + mFramesRequested
+                + ", coalesced=" + mFramesCoalesced
+                + ", skipped=" + mTicksSkipped
+                + ", drawn=" + mFramesDrawn + "}";
+    }
+}
@@ -0,0 +1,290 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary format of a recording of what {@code SunshineWatchFace} was fed: the weather updates
+ * the transport delivered and the taps that cycled the weather, each with the time it arrived.
+ * Recorded on the watch with a {@link Writer} and replayed on the JVM by
+ * {@link InputTraceReplayer}.
+ * <p>
+ * A trace is a header followed by records. Times are microseconds since the previous record, so
+ * a typical update costs a handful of bytes:
+ * <pre>
+ * int     magic "SIT1"
+ * byte    version
+ * per record:
+ *   byte    type: RECORD_FETCHED, RECORD_CHANGED or RECORD_TAP
+ *   varint  microseconds since the previous record, or since recording started
+ *   fetched or changed:
+ *     byte    WeatherState FIELD_* flags of the fields present, then in flag order:
+ *     zigzag  weather id, zigzag high, zigzag low
+ *     double  latitude, double longitude
+ *     byte    temperature unit
+ *     varint  forecast payload length, payload
+ *   tap:
+ *     zigzag  x, zigzag y
+ * </pre>
+ * A recording cut short mid-record, because the watch face was killed say, reads up to its last
+ * complete record.
+ */
+public final class InputTrace {
+
+    public static final int RECORD_FETCHED = 1;
+    public static final int RECORD_CHANGED = 2;
+    public static final int RECORD_TAP = 3;
+
+    private static final int MAGIC = 0x53495431; // "SIT1"
+    private static final int VERSION = 1;
+
+    /**
+     * Larger forecast lengths can only come from a damaged file.
+     */
+    private static final int MAX_FORECAST_LENGTH = 64 * 1024;
+
+    /**
+     * Appends records to a trace. Not thread safe.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream mOut;
+        private long mLastNs;
+        private int mRecordCount;
+
+        /**
+         * Writes the header to {@code out}; record times are taken relative to {@code startNs}.
+         */
+        public Writer(OutputStream out, long startNs) throws IOException {
+            mOut = new DataOutputStream(new BufferedOutputStream(out));
+            mLastNs = startNs;
+            mOut.writeInt(MAGIC);
+            mOut.writeByte(VERSION);
+        }
+
+        /**
+         * Records an update the transport delivered at {@code timeNs}.
+         *
+         * @param type {@link #RECORD_FETCHED} or {@link #RECORD_CHANGED}
+         */
+        public void writeUpdate(int type, long timeNs, WeatherState.Update update)
+                throws IOException {
+            if (type != RECORD_FETCHED && type != RECORD_CHANGED) {
+                throw new IllegalArgumentException("Not an update record: " + type);
+            }
+            writeHeader(type, timeNs);
+            int fields = update.getFields();
+            mOut.writeByte(fields);
+            if ((fields & WeatherState.FIELD_WEATHER_ID) != 0) {
+                writeVarint(zigzag(update.getWeatherId()));
+            }
+            if ((fields & WeatherState.FIELD_HIGH_TEMP) != 0) {
+                writeVarint(zigzag(update.getHighTemp()));
+            }
+            if ((fields & WeatherState.FIELD_LOW_TEMP) != 0) {
+                writeVarint(zigzag(update.getLowTemp()));
+            }
+            if ((fields & WeatherState.FIELD_LOCATION) != 0) {
+                mOut.writeDouble(update.getLatitude());
+                mOut.writeDouble(update.getLongitude());
+            }
+            if ((fields & WeatherState.FIELD_TEMPERATURE_UNIT) != 0) {
+                mOut.writeByte(update.getTemperatureUnit());
+            }
+            if ((fields & WeatherState.FIELD_FORECAST) != 0) {
+                byte[] payload = update.getForecast().getPayload();
+                writeVarint(payload.length);
+                mOut.write(payload);
+            }
+        }
+
+        /**
+         * Records a tap at ({@code x}, {@code y}) that cycled the weather at {@code timeNs}.
+         */
+        public void writeTap(long timeNs, int x, int y) throws IOException {
+            writeHeader(RECORD_TAP, timeNs);
+            writeVarint(zigzag(x));
+            writeVarint(zigzag(y));
+        }
+
+        public int getRecordCount() {
+            return mRecordCount;
+        }
+
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
+        }
+
+        private void writeHeader(int type, long timeNs) throws IOException {
+            // Clamped, so a record that raced another one for its timestamp still writes.
+            long deltaUs = Math.max(0, (timeNs - mLastNs) / 1000);
+            mLastNs += deltaUs * 1000;
+            mOut.writeByte(type);
+            writeVarint(deltaUs);
+            mRecordCount++;
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                mOut.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            mOut.writeByte((int) value);
+        }
+    }
+
+    /**
+     * Reads a trace one record at a time. The update returned by {@link #getUpdate} is reused
+     * for every record. Not thread safe.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream mIn;
+        private final WeatherState.Update mUpdate = new WeatherState.Update();
+        private int mType;
+        private long mTimeNs;
+        private int mTapX;
+        private int mTapY;
+
+        /**
+         * Reads the header from {@code in}.
+         *
+         * @throws IOException if {@code in} doesn't hold a trace in this format
+         */
+        public Reader(InputStream in) throws IOException {
+            mIn = new DataInputStream(new BufferedInputStream(in));
+            if (mIn.readInt() != MAGIC || mIn.readUnsignedByte() != VERSION) {
+                throw new IOException("Not an input trace");
+            }
+        }
+
+        /**
+         * Moves on to the next record.
+         *
+         * @return false at the end of the trace, or of its last complete record
+         * @throws IOException if the trace is damaged
+         */
+        public boolean next() throws IOException {
+            int type = mIn.read();
+            if (type < 0) {
+                return false;
+            }
+            try {
+                mTimeNs += readVarint() * 1000;
+                switch (type) {
+                    case RECORD_FETCHED:
+                    case RECORD_CHANGED:
+                        readUpdate();
+                        break;
+                    case RECORD_TAP:
+                        mTapX = unzigzag(readVarint());
+                        mTapY = unzigzag(readVarint());
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+            mType = type;
+            return true;
+        }
+
+        /**
+         * Returns the {@code RECORD_*} type of the current record.
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * Returns when the current record arrived, in nanoseconds since recording started.
+         */
+        public long getTimeNs() {
+            return mTimeNs;
+        }
+
+        public WeatherState.Update getUpdate() {
+            return mUpdate;
+        }
+
+        public int getTapX() {
+            return mTapX;
+        }
+
+        public int getTapY() {
+            return mTapY;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+
+        private void readUpdate() throws IOException {
+            mUpdate.clear();
+            int fields = mIn.readUnsignedByte();
+            if ((fields & WeatherState.FIELD_WEATHER_ID) != 0) {
+                mUpdate.setWeatherId(unzigzag(readVarint()));
+            }
+            if ((fields & WeatherState.FIELD_HIGH_TEMP) != 0) {
+                mUpdate.setHighTemp(unzigzag(readVarint()));
+            }
+            if ((fields & WeatherState.FIELD_LOW_TEMP) != 0) {
+                mUpdate.setLowTemp(unzigzag(readVarint()));
+            }
+            if ((fields & WeatherState.FIELD_LOCATION) != 0) {
+                mUpdate.setLocation(mIn.readDouble(), mIn.readDouble());
+            }
+            if ((fields & WeatherState.FIELD_TEMPERATURE_UNIT) != 0) {
+                mUpdate.setTemperatureUnit(mIn.readUnsignedByte());
+            }
+            if ((fields & WeatherState.FIELD_FORECAST) != 0) {
+                long length = readVarint();
+                if (length > MAX_FORECAST_LENGTH) {
+                    throw new IOException("Bad forecast length " + length);
+                }
+                byte[] payload = new byte[(int) length];
+                mIn.readFully(payload);
+                try {
+                    mUpdate.setForecast(Forecast.fromPayload(payload));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Bad forecast payload", e);
+                }
+            }
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = mIn.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in input trace");
+        }
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long value) {
+        int v = (int) value;
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private InputTrace() { }
+}
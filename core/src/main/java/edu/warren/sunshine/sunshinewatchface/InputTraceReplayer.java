@@ -0,0 +1,329 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Replays an {@link InputTrace} on a plain JVM through the same steps {@code SunshineWatchFace}
+ * takes for its input, and reports how they cope: updates are merged and coalesced for the
+ * pipeline's window, applied to a {@link WeatherState}, their temperatures formatted with a
+ * {@link TemperatureTable}, and every changed state requests a frame that redraws the icon and
+ * temperature {@link RenderLayers} it affects. Taps cycle the weather as they do on the watch.
+ * <p>
+ * Time is simulated: at the default speed of 1 the replay waits for each record's time to come
+ * round, so a recorded session plays back as it happened; at speed 0 it runs as fast as it can
+ * on the same simulated clock, which makes the counts deterministic. Latency is measured from a
+ * record's arrival to the frame that shows it, in trace time, so it includes the coalescing
+ * window. The processing cost of each update is measured on the wall clock.
+ * <p>
+ * Usage: {@code InputTraceReplayer [--speed factor] (traceFile | --synthetic updatesPerSecond
+ * seconds)}. A synthetic trace is a steady burst of changes at the given rate, with a tap every
+ * thousandth record.
+ */
+public final class InputTraceReplayer {
+
+    /**
+     * Same window as {@code WeatherPipeline}'s.
+     */
+    private static final long COALESCE_NS = 100 * 1000000L;
+
+    /**
+     * Stand-in for the time from requesting a frame to the end of {@code onDraw}.
+     */
+    private static final long FRAME_NS = 16 * 1000000L;
+
+    private static final String TEMPERATURE_PATTERN = "%1.0f\u00B0";
+
+    /**
+     * Number of weather icons taps cycle through, as in {@code SunshineWatchFaceUtil}.
+     */
+    private static final int TAP_WEATHER_COUNT = 8;
+
+    private static final long NONE = Long.MAX_VALUE;
+
+    private final double mSpeed;
+    private final RenderLayers mLayers = new RenderLayers();
+    private final int mIconLayer;
+    private final int mTemperatureLayer;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final WeatherState.Update mPending = new WeatherState.Update();
+
+    private WeatherState mState = WeatherState.DEFAULT;
+    private TemperatureTable mTable;
+    private char[] mTemperature;
+    private int mTemperatureLength;
+    private char[] mDrawnTemperature = new char[0];
+    private int mDrawnTemperatureLength = -1;
+    private int mDrawnWeatherId = -1;
+    private int mTapCount;
+
+    /**
+     * Simulated time, in nanoseconds since the trace started; when the pending updates are
+     * applied and when the requested frame is drawn, or {@link #NONE}.
+     */
+    private long mNowNs;
+    private long mApplyAtNs = NONE;
+    private long mFrameAtNs = NONE;
+
+    /**
+     * Arrival times of the updates not yet applied, and of those applied but not yet drawn.
+     */
+    private long[] mPendingNs = new long[64];
+    private int mPendingCount;
+    private long[] mUnshownNs = new long[64];
+    private int mUnshownCount;
+
+    private long mUpdates;
+    private long mTaps;
+    private long mApplied;
+    private long mFrames;
+    private long mProcessingNs;
+    private long mMaxProcessingNs;
+    private long mMaxLagNs;
+
+    InputTraceReplayer(double speed) {
+        mSpeed = speed;
+        mIconLayer = mLayers.addLayer("icon", RenderLayers.TRIGGER_DATA);
+        mTemperatureLayer = mLayers.addLayer("temperature", RenderLayers.TRIGGER_DATA);
+        updateTable();
+    }
+
+    /**
+     * Plays {@code trace} through to the last frame it causes.
+     */
+    void replay(InputTrace.Reader trace) throws IOException {
+        long startNs = System.nanoTime();
+        boolean hasRecord = trace.next();
+        while (true) {
+            long inputNs = hasRecord ? trace.getTimeNs() : NONE;
+            long nextNs = Math.min(inputNs, Math.min(mApplyAtNs, mFrameAtNs));
+            if (nextNs == NONE) {
+                break;
+            }
+            waitFor(startNs, nextNs);
+            mNowNs = nextNs;
+            if (mApplyAtNs == nextNs) {
+                applyPending();
+            } else if (mFrameAtNs == nextNs) {
+                drawFrame();
+            } else {
+                long processingStartNs = System.nanoTime();
+                handleRecord(trace);
+                long processingNs = System.nanoTime() - processingStartNs;
+                mProcessingNs += processingNs;
+                mMaxProcessingNs = Math.max(mMaxProcessingNs, processingNs);
+                hasRecord = trace.next();
+            }
+        }
+        report(System.nanoTime() - startNs);
+    }
+
+    /**
+     * At a positive speed, sleeps until simulated time {@code nextNs} is due on the wall clock,
+     * keeping track of how far behind the replay has fallen.
+     */
+    private void waitFor(long startNs, long nextNs) {
+        if (mSpeed <= 0) {
+            return;
+        }
+        long dueNs = startNs + (long) (nextNs / mSpeed);
+        long aheadNs = dueNs - System.nanoTime();
+        if (aheadNs < 0) {
+            mMaxLagNs = Math.max(mMaxLagNs, -aheadNs);
+            return;
+        }
+        try {
+            Thread.sleep(aheadNs / 1000000, (int) (aheadNs % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleRecord(InputTrace.Reader trace) {
+        switch (trace.getType()) {
+            case InputTrace.RECORD_FETCHED:
+                mUpdates++;
+                merge(trace.getUpdate());
+                applyPending();
+                break;
+            case InputTrace.RECORD_CHANGED:
+                mUpdates++;
+                merge(trace.getUpdate());
+                if (mApplyAtNs == NONE) {
+                    mApplyAtNs = mNowNs + COALESCE_NS;
+                }
+                break;
+            case InputTrace.RECORD_TAP:
+                mTaps++;
+                // A local change, as in the pipeline: applied, but not timed as an update.
+                mPending.setWeatherId(mTapCount);
+                mTapCount = (mTapCount + 1) % TAP_WEATHER_COUNT;
+                applyPending();
+                break;
+        }
+    }
+
+    private void merge(WeatherState.Update update) {
+        mPending.merge(update);
+        if (mPendingCount == mPendingNs.length) {
+            mPendingNs = Arrays.copyOf(mPendingNs, mPendingCount * 2);
+        }
+        mPendingNs[mPendingCount++] = mNowNs;
+    }
+
+    /**
+     * Applies everything merged since the last call as one state, as the pipeline does, and
+     * requests a frame if it changed anything.
+     */
+    private void applyPending() {
+        mApplyAtNs = NONE;
+        if (mPending.isEmpty()) {
+            return;
+        }
+        WeatherState state = mState.apply(mPending);
+        mPending.clear();
+        int changed = mState.diff(state);
+        if (changed == 0) {
+            // Nothing new to show: these updates never reach the screen.
+            mPendingCount = 0;
+            return;
+        }
+        mState = state;
+        mApplied++;
+        if ((changed & WeatherState.FIELD_TEMPERATURE_UNIT) != 0) {
+            updateTable();
+        }
+        mTemperatureLength = mTable.formatHighLow(mTemperature, state.getHighTemp(),
+                state.getLowTemp());
+
+        if (mUnshownCount + mPendingCount > mUnshownNs.length) {
+            mUnshownNs = Arrays.copyOf(mUnshownNs,
+                    Math.max(mUnshownNs.length * 2, mUnshownCount + mPendingCount));
+        }
+        System.arraycopy(mPendingNs, 0, mUnshownNs, mUnshownCount, mPendingCount);
+        mUnshownCount += mPendingCount;
+        mPendingCount = 0;
+        if (mFrameAtNs == NONE) {
+            mFrameAtNs = mNowNs + FRAME_NS;
+        }
+    }
+
+    /**
+     * Draws the frame requested for the latest state: only the layers whose content differs
+     * from the last frame are redrawn, as in the engine's {@code updateWeather}.
+     */
+    private void drawFrame() {
+        mFrameAtNs = NONE;
+        mFrames++;
+        mLayers.onFrame();
+        if (mState.getWeatherId() != mDrawnWeatherId) {
+            mDrawnWeatherId = mState.getWeatherId();
+            mLayers.invalidateLayer(mIconLayer);
+        }
+        if (!CharFormat.equals(mTemperature, mTemperatureLength, mDrawnTemperature,
+                mDrawnTemperatureLength)) {
+            mDrawnTemperature = CharFormat.ensureCapacity(mDrawnTemperature, mTemperatureLength);
+            System.arraycopy(mTemperature, 0, mDrawnTemperature, 0, mTemperatureLength);
+            mDrawnTemperatureLength = mTemperatureLength;
+            mLayers.invalidateLayer(mTemperatureLayer);
+        }
+        mLayers.onDrawn(mIconLayer, mTemperatureLayer);
+        for (int i = 0; i < mUnshownCount; i++) {
+            mLatency.record((mNowNs - mUnshownNs[i]) / 1000);
+        }
+        mUnshownCount = 0;
+    }
+
+    private void updateTable() {
+        mTable = new TemperatureTable(TEMPERATURE_PATTERN, "--", Locale.US,
+                mState.getTemperatureUnit());
+        mTemperature = CharFormat.ensureCapacity(mTemperature != null ? mTemperature
+                : new char[0], mTable.getMaxHighLowLength());
+    }
+
+    private void report(long wallNs) {
+        double traceSeconds = mNowNs / 1e9;
+        double wallSeconds = wallNs / 1e9;
+        long records = mUpdates + mTaps;
+        System.out.println(String.format(Locale.US,
+                "records=%d updates=%d taps=%d applied=%d frames=%d",
+                records, mUpdates, mTaps, mApplied, mFrames));
+        System.out.println(String.format(Locale.US,
+                "trace=%.3f s wall=%.3f s throughput=%.0f records/s (%.0f/s processing only)",
+                traceSeconds, wallSeconds, records / Math.max(wallSeconds, 1e-9),
+                records / Math.max(mProcessingNs / 1e9, 1e-9)));
+        System.out.println(String.format(Locale.US,
+                "processing per record: mean %d ns, max %d us; max lag %.1f ms",
+                records > 0 ? mProcessingNs / records : 0, mMaxProcessingNs / 1000,
+                mMaxLagNs / 1e6));
+        System.out.println("arrival to frame: " + mLatency);
+        System.out.println(mLayers);
+    }
+
+    /**
+     * Writes a trace of {@code seconds} of changes arriving {@code updatesPerSecond} times a
+     * second: mostly new temperatures, a new condition every tenth, a move every hundredth and
+     * a tap every thousandth record.
+     */
+    static byte[] synthesize(int updatesPerSecond, int seconds) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputTrace.Writer writer = new InputTrace.Writer(out, 0);
+        long intervalNs = 1000000000L / updatesPerSecond;
+        long count = (long) updatesPerSecond * seconds;
+        WeatherState.Update update = new WeatherState.Update();
+        for (long i = 0; i < count; i++) {
+            long timeNs = i * intervalNs;
+            if (i % 1000 == 999) {
+                writer.writeTap(timeNs, 160, 160);
+                continue;
+            }
+            update.clear();
+            int high = -100 + (int) (i * 7 % 450);
+            update.setHighTemp(high).setLowTemp(high - 80);
+            if (i % 10 == 0) {
+                update.setWeatherId((int) (i / 10 % TAP_WEATHER_COUNT));
+            }
+            if (i % 100 == 0) {
+                update.setLocation(37.77 + i % 7, -122.42);
+            }
+            writer.writeUpdate(i == 0 ? InputTrace.RECORD_FETCHED : InputTrace.RECORD_CHANGED,
+                    timeNs, update);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        double speed = 1;
+        int i = 0;
+        if (args.length > i + 1 && args[i].equals("--speed")) {
+            speed = Double.parseDouble(args[i + 1]);
+            i += 2;
+        }
+        InputStream in;
+        if (args.length > i + 2 && args[i].equals("--synthetic")) {
+            byte[] trace = synthesize(Integer.parseInt(args[i + 1]),
+                    Integer.parseInt(args[i + 2]));
+            System.out.println("synthetic trace: " + trace.length + " bytes");
+            in = new ByteArrayInputStream(trace);
+        } else if (args.length > i) {
+            in = new FileInputStream(args[i]);
+        } else {
+            System.err.println("Usage: InputTraceReplayer [--speed factor] "
+                    + "(traceFile | --synthetic updatesPerSecond seconds)");
+            System.exit(2);
+            return;
+        }
+        InputTrace.Reader reader = new InputTrace.Reader(in);
+        try {
+            new InputTraceReplayer(speed).replay(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
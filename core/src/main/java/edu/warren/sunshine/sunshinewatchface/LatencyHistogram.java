@@ -0,0 +1,169 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Fixed-bucket histogram of durations in microseconds, for recording frame timings on the watch.
+ * <p>
+ * Buckets are log-linear: exact below 8 us, then eight buckets per power of two, so every value is
+ * placed within 12.5% and 200 buckets reach past two minutes. Larger values go in the last bucket.
+ * The counts live in one {@code int[]} allocated up front; {@link #record} and the percentile and
+ * text methods allocate nothing, so the histogram can be fed and shown from {@code onDraw}. Not
+ * thread safe.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = 200;
+
+    /**
+     * Most characters {@link #appendSummary} can write.
+     */
+    public static final int MAX_SUMMARY_LENGTH = 96;
+
+    private final int[] mCounts = new int[BUCKET_COUNT];
+    private long mCount;
+    private long mTotalUs;
+    private long mMaxUs;
+
+    public void record(long valueUs) {
+        if (valueUs < 0) {
+            valueUs = 0;
+        }
+        mCounts[bucketFor(valueUs)]++;
+        mCount++;
+        mTotalUs += valueUs;
+        if (valueUs > mMaxUs) {
+            mMaxUs = valueUs;
+        }
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMaxUs() {
+        return mMaxUs;
+    }
+
+    public long getMeanUs() {
+        return mCount == 0 ? 0 : mTotalUs / mCount;
+    }
+
+    /**
+     * Returns the value at {@code percentile} (0 to 100) as the upper bound of the bucket it falls
+     * in, capped at the largest value recorded; 0 if nothing has been recorded.
+     */
+    public long getPercentileUs(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mCounts[bucket];
+            if (seen >= rank) {
+                return Math.min(mMaxUs, upperBound(bucket));
+            }
+        }
+        return mMaxUs;
+    }
+
+    /**
+     * Returns how many recorded values were at least {@code valueUs}, to bucket precision: values
+     * in the bucket containing {@code valueUs} count only if that bucket starts at it.
+     */
+    public long getCountAtLeast(long valueUs) {
+        int first = bucketFor(valueUs);
+        if (lowerBound(first) < valueUs) {
+            first++;
+        }
+        long count = 0;
+        for (int bucket = first; bucket < BUCKET_COUNT; bucket++) {
+            count += mCounts[bucket];
+        }
+        return count;
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            mCounts[bucket] = 0;
+        }
+        mCount = 0;
+        mTotalUs = 0;
+        mMaxUs = 0;
+    }
+
+    /**
+     * Writes "p50 1.2 p95 3.4 p99 5.6 max 7.8 ms n=123" at {@code offset}; {@code buffer} needs
+     * {@link #MAX_SUMMARY_LENGTH} free characters.
+     *
+     * @return the offset just past the last written character
+     */
+    public int appendSummary(char[] buffer, int offset) {
+        offset = appendMillis(buffer, appendLabel(buffer, offset, "p50 "), getPercentileUs(50));
+        offset = appendMillis(buffer, appendLabel(buffer, offset, " p95 "), getPercentileUs(95));
+        offset = appendMillis(buffer, appendLabel(buffer, offset, " p99 "), getPercentileUs(99));
+        offset = appendMillis(buffer, appendLabel(buffer, offset, " max "), mMaxUs);
+        offset = appendLabel(buffer, offset, " ms n=");
+        return CharFormat.appendInt(buffer, offset, (int) Math.min(Integer.MAX_VALUE, mCount));
+    }
+
+    @Override
+    public String toString() {
+        char[] buffer = new char[MAX_SUMMARY_LENGTH];
+        return new String(buffer, 0, appendSummary(buffer, 0));
+    }
+
+    /**
+     * Returns one line per non-empty bucket, "lower-upper us: count", for dumping to a log.
+     */
+    public String dumpBuckets() {
+        StringBuilder builder = new StringBuilder();
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (mCounts[bucket] != 0) {
+                builder.append(lowerBound(bucket)).append('-').append(upperBound(bucket))
+                        .append(" us: ").append(mCounts[bucket]).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int appendLabel(char[] buffer, int offset, String label) {
+        return CharFormat.appendString(buffer, offset, label);
+    }
+
+    /**
+     * Writes {@code us} as milliseconds with one decimal, e.g. "12.3".
+     */
+    private static int appendMillis(char[] buffer, int offset, long us) {
+        long tenths = (us + 50) / 100;
+        offset = CharFormat.appendInt(buffer, offset, (int) Math.min(Integer.MAX_VALUE,
+                tenths / 10));
+        buffer[offset++] = '.';
+        buffer[offset++] = (char) ('0' + tenths % 10);
+        return offset;
+    }
+
+    private static int bucketFor(long valueUs) {
+        if (valueUs < SUB_BUCKETS) {
+            return (int) valueUs;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(valueUs);
+        int mantissa = (int) (valueUs >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKET_COUNT - 1,
+                SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + mantissa);
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return mantissa << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+}
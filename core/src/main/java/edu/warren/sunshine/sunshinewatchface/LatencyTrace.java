@@ -0,0 +1,142 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Records how long each stage of the weather data path takes, from connecting to the transport
+ * to the first frame that shows the received data.
+ * <p>
+ * A stage is timed from its {@link #begin} to its {@link #end}; a second {@code begin} before the
+ * {@code end} keeps the earlier start, so a stage fed by a burst of events is timed from the first
+ * one. Each stage keeps the last, maximum and total duration and a count, in primitive fields, so
+ * recording allocates nothing. Startup latency is the first sample of each stage, update latency
+ * the later ones. Times are {@link System#nanoTime()} values passed in by the caller. Not thread
+ * safe; use it from one thread.
+ */
+public final class LatencyTrace {
+
+    /** From asking the transport to connect until it reports being connected. */
+    public static final int STAGE_CONNECT = 0;
+    /** Fetching the config data items of every node. */
+    public static final int STAGE_ITEM_FETCH = 1;
+    /** From receiving weather until it is the current state, including coalescing. */
+    public static final int STAGE_APPLY = 2;
+    /** From applying weather until the frame that shows it has been drawn. */
+    public static final int STAGE_REDRAW = 3;
+
+    public static final int STAGE_COUNT = 4;
+
+    private static final String[] STAGE_NAMES =
+            {"connect", "itemFetch", "apply", "redraw"};
+
+    private final long[] mStartNs = new long[STAGE_COUNT];
+    private final boolean[] mStarted = new boolean[STAGE_COUNT];
+    private final long[] mFirstNs = new long[STAGE_COUNT];
+    private final long[] mLastNs = new long[STAGE_COUNT];
+    private final long[] mMaxNs = new long[STAGE_COUNT];
+    private final long[] mTotalNs = new long[STAGE_COUNT];
+    private final int[] mCount = new int[STAGE_COUNT];
+
+    /**
+     * Starts timing {@code stage}, unless it is already running.
+     */
+    public void begin(int stage, long nowNs) {
+        if (!mStarted[stage]) {
+            mStarted[stage] = true;
+            mStartNs[stage] = nowNs;
+        }
+    }
+
+    /**
+     * Ends the running {@code stage} and records its duration. Does nothing if the stage isn't
+     * running.
+     */
+    public void end(int stage, long nowNs) {
+        if (!mStarted[stage]) {
+            return;
+        }
+        mStarted[stage] = false;
+        long duration = nowNs - mStartNs[stage];
+        if (mCount[stage] == 0) {
+            mFirstNs[stage] = duration;
+        }
+        mLastNs[stage] = duration;
+        mMaxNs[stage] = Math.max(mMaxNs[stage], duration);
+        mTotalNs[stage] += duration;
+        mCount[stage]++;
+    }
+
+    /**
+     * Drops the running {@code stage} without recording it, for example when the transport
+     * disconnects before a fetch completes.
+     */
+    public void cancel(int stage) {
+        mStarted[stage] = false;
+    }
+
+    public boolean isRunning(int stage) {
+        return mStarted[stage];
+    }
+
+    public int getCount(int stage) {
+        return mCount[stage];
+    }
+
+    /**
+     * Duration of the first recorded run of {@code stage}; this is the startup latency.
+     */
+    public long getFirstNs(int stage) {
+        return mFirstNs[stage];
+    }
+
+    public long getLastNs(int stage) {
+        return mLastNs[stage];
+    }
+
+    public long getMaxNs(int stage) {
+        return mMaxNs[stage];
+    }
+
+    public long getMeanNs(int stage) {
+        return mCount[stage] == 0 ? 0 : mTotalNs[stage] / mCount[stage];
+    }
+
+    /**
+     * Sum of the first run of every stage: the time from connecting to the first frame with
+     * data, not counting gaps between stages.
+     */
+    public long getStartupNs() {
+        long total = 0;
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            total += mFirstNs[stage];
+        }
+        return total;
+    }
+
+    public void reset() {
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            mStarted[stage] = false;
+            mFirstNs[stage] = 0;
+            mLastNs[stage] = 0;
+            mMaxNs[stage] = 0;
+            mTotalNs[stage] = 0;
+            mCount[stage] = 0;
+        }
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("LatencyTrace{startup=")
+                .append(getStartupNs() / 1000000).append("ms");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            builder.append(", ").append(STAGE_NAMES[stage])
+                    .append("={n=").append(mCount[stage])
+                    .append(", first=").append(mFirstNs[stage] / 1000000)
+                    .append("ms, mean=").append(getMeanNs(stage) / 1000000)
+                    .append("ms, max=").append(mMaxNs[stage] / 1000000).append("ms}");
+        }
+        return builder.append('}').toString();
+    }
+}
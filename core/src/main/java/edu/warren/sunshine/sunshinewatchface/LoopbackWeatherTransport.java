@@ -0,0 +1,145 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * In-process {@link WeatherTransport}: the config lives in this object and published updates are
+ * delivered back to the connected listener after configurable delays.
+ * <p>
+ * Each stage the real transport goes through (connecting, fetching the items, delivering a
+ * change) waits for its own delay, and {@link #injectBurst} publishes a series of
+ * updates at a fixed interval, the way a phone syncing several changes does. Together with a
+ * {@link LatencyTrace} this lets the startup and update latency of a consumer be measured on a
+ * plain JVM. Has no Android dependencies.
+ * <p>
+ * Everything runs on the thread behind the {@link Dispatcher}; calls must be made on it as well.
+ */
+public final class LoopbackWeatherTransport implements WeatherTransport {
+
+    /**
+     * Runs tasks on the transport's thread.
+     */
+    public interface Dispatcher {
+        /**
+         * Runs {@code task} after {@code delayMs}. Tasks with equal delays run in the order they
+         * were dispatched.
+         */
+        void dispatch(Runnable task, long delayMs);
+    }
+
+    private final Dispatcher mDispatcher;
+    private final LatencyTrace mTrace;
+
+    /**
+     * Every field published so far: the loopback equivalent of the config data item.
+     */
+    private final WeatherState.Update mStored = new WeatherState.Update();
+
+    private long mConnectDelayMs;
+    private long mItemFetchDelayMs;
+    private long mDeliveryDelayMs;
+
+    private Listener mListener;
+    private int mConnection;
+
+    private int mPublished;
+    private int mDelivered;
+
+    public LoopbackWeatherTransport(Dispatcher dispatcher, LatencyTrace trace) {
+        mDispatcher = dispatcher;
+        mTrace = trace;
+    }
+
+    /**
+     * Sets how long each stage takes: connecting, fetching the items, and delivering a published
+     * change to the listener.
+     */
+    public void setDelays(long connectMs, long itemFetchMs, long deliveryMs) {
+        mConnectDelayMs = connectMs;
+        mItemFetchDelayMs = itemFetchMs;
+        mDeliveryDelayMs = deliveryMs;
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        mListener = listener;
+        final int connection = ++mConnection;
+        mTrace.begin(LatencyTrace.STAGE_CONNECT, System.nanoTime());
+        mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                if (connection == mConnection) {
+                    mTrace.end(LatencyTrace.STAGE_CONNECT, System.nanoTime());
+                    mListener.onConnected();
+                }
+            }
+        }, mConnectDelayMs);
+    }
+
+    @Override
+    public void disconnect() {
+        mListener = null;
+        mConnection++;
+        mTrace.cancel(LatencyTrace.STAGE_CONNECT);
+        mTrace.cancel(LatencyTrace.STAGE_ITEM_FETCH);
+    }
+
+    @Override
+    public void fetchCurrent() {
+        final int connection = mConnection;
+        mTrace.begin(LatencyTrace.STAGE_ITEM_FETCH, System.nanoTime());
+        mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                if (connection != mConnection) {
+                    return;
+                }
+                mTrace.end(LatencyTrace.STAGE_ITEM_FETCH, System.nanoTime());
+                // Copied, so that listeners can't change the stored item.
+                mListener.onWeatherFetched(new WeatherState.Update().merge(mStored));
+            }
+        }, mItemFetchDelayMs);
+    }
+
+    /**
+     * Stores {@code update} right away and delivers it to the connected listener after the
+     * delivery delay.
+     */
+    @Override
+    public void publish(WeatherState.Update update) {
+        mStored.merge(update);
+        mPublished++;
+        final int connection = mConnection;
+        final WeatherState.Update changes = new WeatherState.Update().merge(update);
+        mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                if (connection == mConnection && mListener != null) {
+                    mDelivered++;
+                    mListener.onWeatherChanged(changes);
+                }
+            }
+        }, mDeliveryDelayMs);
+    }
+
+    /**
+     * Publishes {@code updates} one after the other, {@code intervalMs} apart, starting now.
+     */
+    public void injectBurst(final WeatherState.Update[] updates, long intervalMs) {
+        for (int i = 0; i < updates.length; i++) {
+            final WeatherState.Update update = updates[i];
+            mDispatcher.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    publish(update);
+                }
+            }, i * intervalMs);
+        }
+    }
+
+    public int getPublishedCount() {
+        return mPublished;
+    }
+
+    public int getDeliveredCount() {
+        return mDelivered;
+    }
+}
@@ -0,0 +1,324 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Falling rain or snow drawn over the sky of {@code SunshineWatchFace} in interactive mode.
+ * <p>
+ * Particles live in fixed-capacity primitive arrays: spawning writes the next free slot and a
+ * particle that leaves the area is replaced by the last live one, so neither {@link #update} nor
+ * {@link #fillPoints} ever allocates. Random numbers come from a seeded xorshift generator, which
+ * makes the same seed and times produce the same frames.
+ * <p>
+ * How many particles are alive is bounded by a limit that {@link #adapt} lowers when frames run
+ * close to their budget and raises again when there is room, and the suggested animation frame
+ * interval doubles once the limit has had to drop below half the capacity. Not thread safe.
+ */
+public final class ParticleSystem {
+
+    public static final int STYLE_NONE = 0;
+    public static final int STYLE_LIGHT_RAIN = 1;
+    public static final int STYLE_RAIN = 2;
+    public static final int STYLE_STORM = 3;
+    public static final int STYLE_SNOW = 4;
+
+    /**
+     * Animation frame intervals with plenty of budget, and once particles have had to be cut.
+     */
+    public static final long FRAME_INTERVAL_MS = 33;
+    public static final long REDUCED_FRAME_INTERVAL_MS = 66;
+
+    /**
+     * Longest step {@link #update} simulates, so that a late or first frame doesn't teleport
+     * every particle.
+     */
+    private static final float MAX_STEP_SECONDS = 0.1f;
+
+    /**
+     * Per style, indexed by {@code STYLE_*}: the share of the limit kept alive, the fall speed
+     * and wind in area heights per second, and the length of a streak in seconds of travel.
+     */
+    private static final float[] DENSITY = {0f, 0.3f, 0.7f, 1f, 0.5f};
+    private static final float[] FALL_SPEED = {0f, 0.9f, 1.4f, 1.8f, 0.15f};
+    private static final float[] WIND = {0f, 0.05f, 0.1f, 0.35f, 0f};
+    private static final float[] DRIFT = {0f, 0.01f, 0.02f, 0.05f, 0.06f};
+    private static final float[] STREAK_SECONDS = {0f, 0.025f, 0.035f, 0.035f, 0f};
+
+    private static final long FLASH_MS = 200;
+    private static final long MIN_FLASH_GAP_MS = 4000;
+    private static final long MAX_FLASH_GAP_MS = 12000;
+
+    private final int mCapacity;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mVx;
+    private final float[] mVy;
+    private final int mSeed;
+
+    private int mCount;
+    private int mLimit;
+    private int mStyle = STYLE_NONE;
+    private int mRandom;
+
+    private float mLeft;
+    private float mTop;
+    private float mRight;
+    private float mBottom;
+
+    private long mLastUpdateMs = Long.MIN_VALUE;
+    private float mSpawnDebt;
+    private long mNextFlashMs = Long.MIN_VALUE;
+    private long mFlashStartMs = Long.MIN_VALUE;
+    private int mFlashAlpha;
+
+    public ParticleSystem(int capacity, int seed) {
+        mCapacity = capacity;
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mVx = new float[capacity];
+        mVy = new float[capacity];
+        mSeed = seed == 0 ? 1 : seed;
+        mRandom = mSeed;
+        mLimit = capacity;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Sets the area particles fall through, usually the sky.
+     */
+    public void setArea(float left, float top, float right, float bottom) {
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+    }
+
+    /**
+     * Switches what new particles look like. With {@link #STYLE_NONE} nothing new spawns and the
+     * particles already falling run out.
+     */
+    public void setStyle(int style) {
+        mStyle = style;
+    }
+
+    public int getStyle() {
+        return mStyle;
+    }
+
+    /**
+     * Sets how many particles may be alive at once, at most the capacity.
+     */
+    public void setLimit(int limit) {
+        mLimit = Math.max(0, Math.min(mCapacity, limit));
+        if (mCount > mLimit) {
+            mCount = mLimit;
+        }
+    }
+
+    public int getLimit() {
+        return mLimit;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns whether there is anything to animate: a precipitation style, or particles still
+     * falling after the style was turned off.
+     */
+    public boolean isActive() {
+        return mStyle != STYLE_NONE || mCount > 0;
+    }
+
+    /**
+     * Removes every particle and restarts the random sequence and the clock.
+     */
+    public void reset() {
+        mCount = 0;
+        mRandom = mSeed;
+        mLastUpdateMs = Long.MIN_VALUE;
+        mSpawnDebt = 0;
+        mNextFlashMs = Long.MIN_VALUE;
+        mFlashStartMs = Long.MIN_VALUE;
+        mFlashAlpha = 0;
+    }
+
+    /**
+     * Spawns the style's share of the limit at random heights, so that a new shower starts out
+     * looking as it will once it has settled rather than as a front falling from the top.
+     */
+    public void prefill() {
+        int target = getTargetCount();
+        while (mCount < target) {
+            spawn(mTop + nextFloat() * (mBottom - mTop));
+        }
+    }
+
+    /**
+     * Moves every particle on to {@code nowMs}, drops those that have left the area and spawns
+     * new ones at the top. The first update after a {@link #reset} {@link #prefill}s instead.
+     */
+    public void update(long nowMs) {
+        if (mLastUpdateMs == Long.MIN_VALUE) {
+            mLastUpdateMs = nowMs;
+            if (mStyle != STYLE_NONE) {
+                prefill();
+            }
+            updateFlash(nowMs);
+            return;
+        }
+        // A clock set back counts as no time passing.
+        float seconds = Math.max(0f, Math.min(MAX_STEP_SECONDS, (nowMs - mLastUpdateMs) / 1000f));
+        mLastUpdateMs = nowMs;
+
+        for (int i = 0; i < mCount; ) {
+            float x = mX[i] + mVx[i] * seconds;
+            float y = mY[i] + mVy[i] * seconds;
+            if (y > mBottom || x < mLeft - (mRight - mLeft) || x > mRight + (mRight - mLeft)) {
+                remove(i);
+                continue;
+            }
+            mX[i] = x;
+            mY[i] = y;
+            i++;
+        }
+
+        if (mStyle != STYLE_NONE) {
+            // Spawn at the rate that keeps the target count alive while each particle takes
+            // the height of the area to fall through.
+            float lifetimeSeconds = 1f / FALL_SPEED[mStyle];
+            mSpawnDebt += getTargetCount() * seconds / lifetimeSeconds;
+            int target = getTargetCount();
+            while (mSpawnDebt >= 1f && mCount < target) {
+                mSpawnDebt -= 1f;
+                spawn(mTop);
+            }
+            if (mCount >= target) {
+                mSpawnDebt = 0;
+            }
+        }
+
+        updateFlash(nowMs);
+    }
+
+    private void updateFlash(long nowMs) {
+        if (mStyle != STYLE_STORM) {
+            mFlashAlpha = 0;
+            return;
+        }
+        if (mNextFlashMs == Long.MIN_VALUE) {
+            mNextFlashMs = nowMs + nextFlashGap();
+        }
+        if (nowMs >= mNextFlashMs) {
+            mFlashStartMs = nowMs;
+            mNextFlashMs = nowMs + nextFlashGap();
+        }
+        long sinceFlash = nowMs - mFlashStartMs;
+        mFlashAlpha = mFlashStartMs != Long.MIN_VALUE && sinceFlash < FLASH_MS
+                ? (int) (160 * (FLASH_MS - sinceFlash) / FLASH_MS) : 0;
+    }
+
+    private long nextFlashGap() {
+        return MIN_FLASH_GAP_MS + (long) (nextFloat() * (MAX_FLASH_GAP_MS - MIN_FLASH_GAP_MS));
+    }
+
+    /**
+     * Returns the alpha, 0 to 255, of the lightning flash over the sky after the last
+     * {@link #update}; 0 except for a moment now and then in a storm.
+     */
+    public int getFlashAlpha() {
+        return mFlashAlpha;
+    }
+
+    /**
+     * Returns whether the particles are drawn as streaks, with {@link #fillPoints} writing line
+     * segments, or as flakes, with it writing points.
+     */
+    public boolean isStreaks() {
+        return mStyle != STYLE_SNOW;
+    }
+
+    /**
+     * Writes the particles into {@code points}: four floats (x0, y0, x1, y1) per streak or two
+     * (x, y) per flake, ready for {@code Canvas.drawLines} or {@code drawPoints}. The array must
+     * hold four floats per particle of capacity.
+     *
+     * @return the number of floats written
+     */
+    public int fillPoints(float[] points) {
+        int offset = 0;
+        if (isStreaks()) {
+            float streakSeconds = STREAK_SECONDS[mStyle == STYLE_NONE ? STYLE_RAIN : mStyle];
+            for (int i = 0; i < mCount; i++) {
+                points[offset++] = mX[i] - mVx[i] * streakSeconds;
+                points[offset++] = mY[i] - mVy[i] * streakSeconds;
+                points[offset++] = mX[i];
+                points[offset++] = mY[i];
+            }
+        } else {
+            for (int i = 0; i < mCount; i++) {
+                points[offset++] = mX[i];
+                points[offset++] = mY[i];
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Adjusts the limit to the last frame's draw time: cut by a quarter once a frame takes more
+     * than three quarters of {@code budgetNs}, grown by a tenth while frames take under half.
+     */
+    public void adapt(long frameNs, long budgetNs) {
+        if (frameNs > budgetNs * 3 / 4) {
+            setLimit(Math.max(mCapacity / 10, mLimit * 3 / 4));
+        } else if (frameNs < budgetNs / 2 && mLimit < mCapacity) {
+            setLimit(mLimit + Math.max(1, mLimit / 10));
+        }
+    }
+
+    /**
+     * Returns the animation frame interval that suits the current limit.
+     */
+    public long getFrameIntervalMs() {
+        return mLimit * 2 >= mCapacity ? FRAME_INTERVAL_MS : REDUCED_FRAME_INTERVAL_MS;
+    }
+
+    private int getTargetCount() {
+        return (int) (mLimit * DENSITY[mStyle]);
+    }
+
+    private void spawn(float y) {
+        float height = mBottom - mTop;
+        float fall = FALL_SPEED[mStyle] * height;
+        float wind = WIND[mStyle] * height;
+        // Start far enough upwind that the wind carries particles over the whole area.
+        float upwind = wind / FALL_SPEED[mStyle];
+        int i = mCount++;
+        mX[i] = mLeft - upwind + nextFloat() * (mRight - mLeft + upwind);
+        mY[i] = y;
+        mVx[i] = wind + (nextFloat() - 0.5f) * 2f * DRIFT[mStyle] * height;
+        mVy[i] = fall * (0.8f + 0.4f * nextFloat());
+    }
+
+    private void remove(int i) {
+        int last = --mCount;
+        mX[i] = mX[last];
+        mY[i] = mY[last];
+        mVx[i] = mVx[last];
+        mVy[i] = mVy[last];
+    }
+
+    /**
+     * Returns a uniformly distributed float in [0, 1).
+     */
+    private float nextFloat() {
+        int x = mRandom;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        mRandom = x;
+        return (x >>> 8) / (float) (1 << 24);
+    }
+}
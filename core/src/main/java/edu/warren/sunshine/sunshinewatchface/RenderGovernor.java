@@ -0,0 +1,204 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Picks how much work {@code SunshineWatchFace} puts into each interactive frame, from recent
+ * draw times and the battery level.
+ * <p>
+ * Draw times are judged in windows of {@link #WINDOW_FRAMES} frames. A window with
+ * {@link #OVER_BUDGET_FRAMES} or more frames over the budget steps the quality down one level;
+ * a single slow frame, like the one that follows a weather icon decode, does not. Stepping back up
+ * takes {@link #RECOVERY_NS} of frames in a row within half the budget, so that a face sitting
+ * near the budget settles on a level instead of flapping between two. Recovery is measured in
+ * time rather than frames because the frame rate depends on the level: without seconds the face
+ * only draws once a minute, and a frame count tuned for one frame a second would keep it there
+ * for the better part of half an hour. Low battery sets a floor under the level, with its own
+ * margin before it is lifted.
+ * <p>
+ * The governor only does arithmetic on the times it is given, so frames can be injected to drive
+ * it through every level; see {@code RenderGovernorTest}.
+ */
+public final class RenderGovernor {
+
+    /**
+     * Everything is drawn, with the time updated every second.
+     */
+    public static final int LEVEL_FULL = 0;
+
+    /**
+     * The time is shown as H:MM and the face is only redrawn once a minute.
+     */
+    public static final int LEVEL_NO_SECONDS = 1;
+
+    /**
+     * As above, and the weather icon stays where it was on the sun arc.
+     */
+    public static final int LEVEL_FROZEN_SUN = 2;
+
+    /**
+     * As above, and the ground is a flat color and text is drawn without antialiasing.
+     */
+    public static final int LEVEL_NO_EFFECTS = 3;
+
+    private static final String[] LEVEL_NAMES = {"full", "no_seconds", "frozen_sun", "no_effects"};
+
+    /**
+     * Time an interactive frame may take to draw before it counts against the current level.
+     */
+    public static final long DEFAULT_BUDGET_NS = 16 * 1000 * 1000;
+
+    static final int WINDOW_FRAMES = 8;
+    static final int OVER_BUDGET_FRAMES = 3;
+
+    /**
+     * How long frames have to stay within half the budget before the level steps back up. A run
+     * needs at least two frames, so at one frame a minute each step up takes a minute.
+     */
+    static final long RECOVERY_NS = 24L * 1000 * 1000 * 1000;
+
+    /**
+     * Below these battery percentages, unless charging, the level is kept at least at
+     * {@link #LEVEL_NO_SECONDS} or {@link #LEVEL_NO_EFFECTS}. Each floor is lifted again
+     * {@link #BATTERY_MARGIN_PERCENT} above where it was set.
+     */
+    static final int LOW_BATTERY_PERCENT = 15;
+    static final int CRITICAL_BATTERY_PERCENT = 5;
+    static final int BATTERY_MARGIN_PERCENT = 5;
+
+    private final long mBudgetNs;
+
+    private int mLoadLevel = LEVEL_FULL;
+    private int mBatteryFloor = LEVEL_FULL;
+    private boolean mSuspended;
+
+    private int mWindowFrames;
+    private int mWindowOverBudget;
+    private int mCalmFrames;
+    private long mCalmSinceNs;
+
+    private int mBatteryPercent = -1;
+    private boolean mCharging;
+
+    private int mStepDowns;
+    private int mStepUps;
+
+    public RenderGovernor(long budgetNs) {
+        mBudgetNs = budgetNs;
+    }
+
+    /**
+     * Returns the level to draw at, one of the {@code LEVEL_*} constants.
+     */
+    public int getLevel() {
+        return mSuspended ? LEVEL_FULL : Math.max(mLoadLevel, mBatteryFloor);
+    }
+
+    public boolean isShowingSeconds() {
+        return getLevel() < LEVEL_NO_SECONDS;
+    }
+
+    public boolean isSunFrozen() {
+        return getLevel() >= LEVEL_FROZEN_SUN;
+    }
+
+    public boolean areEffectsEnabled() {
+        return getLevel() < LEVEL_NO_EFFECTS;
+    }
+
+    /**
+     * Records how long an interactive frame took to draw.
+     *
+     * @param startNs when the frame started, on the {@link System#nanoTime()} clock
+     * @return true if the level changed
+     */
+    public boolean recordFrame(long startNs, long durationNs) {
+        int level = getLevel();
+        mWindowFrames++;
+        if (durationNs > mBudgetNs) {
+            mWindowOverBudget++;
+        }
+        if (mWindowFrames == WINDOW_FRAMES) {
+            closeWindow();
+        }
+        if (durationNs > mBudgetNs / 2) {
+            mCalmFrames = 0;
+        } else if (mCalmFrames++ == 0) {
+            mCalmSinceNs = startNs;
+        } else if (startNs - mCalmSinceNs >= RECOVERY_NS && mLoadLevel > LEVEL_FULL) {
+            mLoadLevel--;
+            mStepUps++;
+            // This frame starts the run that has to be calm at the new level.
+            mCalmFrames = 1;
+            mCalmSinceNs = startNs;
+        }
+        return getLevel() != level;
+    }
+
+    private void closeWindow() {
+        if (mWindowOverBudget >= OVER_BUDGET_FRAMES && mLoadLevel < LEVEL_NO_EFFECTS) {
+            mLoadLevel++;
+            mStepDowns++;
+        }
+        mWindowFrames = 0;
+        mWindowOverBudget = 0;
+    }
+
+    /**
+     * Updates the battery state.
+     *
+     * @return true if the level changed
+     */
+    public boolean setBattery(int percent, boolean charging) {
+        int level = getLevel();
+        mBatteryPercent = percent;
+        mCharging = charging;
+        if (charging) {
+            mBatteryFloor = LEVEL_FULL;
+        } else if (percent < CRITICAL_BATTERY_PERCENT) {
+            mBatteryFloor = LEVEL_NO_EFFECTS;
+        } else if (percent < LOW_BATTERY_PERCENT) {
+            if (mBatteryFloor < LEVEL_NO_SECONDS
+                    || percent >= CRITICAL_BATTERY_PERCENT + BATTERY_MARGIN_PERCENT) {
+                mBatteryFloor = LEVEL_NO_SECONDS;
+            }
+        } else if (percent >= LOW_BATTERY_PERCENT + BATTERY_MARGIN_PERCENT) {
+            mBatteryFloor = LEVEL_FULL;
+        } else if (mBatteryFloor > LEVEL_NO_SECONDS) {
+            mBatteryFloor = LEVEL_NO_SECONDS;
+        }
+        return getLevel() != level;
+    }
+
+    /**
+     * While suspended the level is {@link #LEVEL_FULL} whatever the load and battery, for drawing
+     * reference frames that must not depend on the device's state.
+     *
+     * @return true if the level changed
+     */
+    public boolean setSuspended(boolean suspended) {
+        int level = getLevel();
+        mSuspended = suspended;
+        return getLevel() != level;
+    }
+
+    public int getStepDowns() {
+        return mStepDowns;
+    }
+
+    public int getStepUps() {
+        return mStepUps;
+    }
+
+    public static String getLevelName(int level) {
+        return LEVEL_NAMES[level];
+    }
+
+    @Override
+    public String toString() {
+        return "RenderGovernor{level=" + getLevelName(getLevel())
+                + ", load=" + getLevelName(mLoadLevel)
+                + ", battery=" + mBatteryPercent + "%" + (mCharging ? " charging" : "")
+                + (mSuspended ? ", suspended" : "")
+                + ", stepDowns=" + mStepDowns
+                + ", stepUps=" + mStepUps + "}";
+    }
+}
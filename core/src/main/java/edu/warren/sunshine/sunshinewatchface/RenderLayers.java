@@ -0,0 +1,175 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * The layers {@code SunshineWatchFace} is drawn in, which of them need redrawing, and how often
+ * each one has been redrawn.
+ * <p>
+ * Every layer declares the {@code TRIGGER_*} events that change it: the time ticking over a
+ * second, minute or day, new weather data, or a new sky palette entry. {@link #invalidate}
+ * marks the layers that respond to an event, {@link #invalidateAll} every layer, for changes
+ * such as a new layout or mode that affect them all. The engine redraws a dirty layer, or the
+ * cache it is part of, and calls {@link #onDrawn} for it. Layers with
+ * {@link #TRIGGER_FRAME} are drawn in every frame rather than cached.
+ * <p>
+ * Holds up to 32 layers. Not thread safe.
+ */
+public final class RenderLayers {
+
+    public static final int TRIGGER_SECOND = 1;
+    public static final int TRIGGER_MINUTE = 1 << 1;
+    public static final int TRIGGER_DAY = 1 << 2;
+    public static final int TRIGGER_DATA = 1 << 3;
+    public static final int TRIGGER_PALETTE = 1 << 4;
+    public static final int TRIGGER_FRAME = 1 << 5;
+
+    private static final int MAX_LAYERS = 32;
+
+    private final String[] mNames = new String[MAX_LAYERS];
+    private final int[] mTriggers = new int[MAX_LAYERS];
+    private final long[] mRedraws = new long[MAX_LAYERS];
+    private int mCount;
+    private int mDirty;
+    private long mFrames;
+
+    /**
+     * Adds a layer, initially dirty.
+     *
+     * @return the layer's index, for the other methods
+     */
+    public int addLayer(String name, int triggers) {
+        if (mCount == MAX_LAYERS) {
+            throw new IllegalStateException("Too many layers");
+        }
+        int layer = mCount++;
+        mNames[layer] = name;
+        mTriggers[layer] = triggers;
+        mDirty |= 1 << layer;
+        return layer;
+    }
+
+    /**
+     * Replaces the {@code TRIGGER_*} events {@code layer} responds to, for a layer whose content
+     * is only known once the engine is set up. 0 leaves it to {@link #invalidateLayer} and
+     * {@link #invalidateAll}.
+     */
+    public void setTriggers(int layer, int triggers) {
+        mTriggers[layer] = triggers;
+    }
+
+    /**
+     * Returns the {@code TRIGGER_*} events behind a combination of {@link ClockModel}
+     * {@code CHANGED_*} flags.
+     */
+    public static int clockTriggers(int clockChanges) {
+        int triggers = 0;
+        if ((clockChanges & ClockModel.CHANGED_SECOND) != 0) {
+            triggers |= TRIGGER_SECOND;
+        }
+        if ((clockChanges & (ClockModel.CHANGED_MINUTE | ClockModel.CHANGED_HOUR)) != 0) {
+            triggers |= TRIGGER_MINUTE;
+        }
+        if ((clockChanges & ClockModel.CHANGED_DAY) != 0) {
+            triggers |= TRIGGER_DAY;
+        }
+        return triggers;
+    }
+
+    /**
+     * Marks every layer that responds to any of {@code triggers} dirty.
+     */
+    public void invalidate(int triggers) {
+        for (int layer = 0; layer < mCount; layer++) {
+            if ((mTriggers[layer] & triggers) != 0) {
+                mDirty |= 1 << layer;
+            }
+        }
+    }
+
+    public void invalidateLayer(int layer) {
+        mDirty |= 1 << layer;
+    }
+
+    public void invalidateAll() {
+        mDirty = mCount == MAX_LAYERS ? -1 : (1 << mCount) - 1;
+    }
+
+    public boolean isDirty(int layer) {
+        return (mDirty & (1 << layer)) != 0;
+    }
+
+    /**
+     * Returns whether any layer from {@code first} to {@code last}, inclusive, is dirty.
+     */
+    public boolean isAnyDirty(int first, int last) {
+        for (int layer = first; layer <= last; layer++) {
+            if (isDirty(layer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records that {@code layer} has been redrawn.
+     */
+    public void onDrawn(int layer) {
+        mDirty &= ~(1 << layer);
+        mRedraws[layer]++;
+    }
+
+    /**
+     * Records that the layers from {@code first} to {@code last}, inclusive, have been redrawn
+     * together into the cache they share. Only the ones that were dirty count as redrawn, so a
+     * layer's count says how often its own content changed, not how often the cache was rebuilt.
+     */
+    public void onDrawn(int first, int last) {
+        for (int layer = first; layer <= last; layer++) {
+            if (isDirty(layer)) {
+                onDrawn(layer);
+            }
+        }
+    }
+
+    /**
+     * Records a frame, marking the layers drawn in every frame dirty.
+     */
+    public void onFrame() {
+        mFrames++;
+        invalidate(TRIGGER_FRAME);
+    }
+
+    public int getLayerCount() {
+        return mCount;
+    }
+
+    public String getName(int layer) {
+        return mNames[layer];
+    }
+
+    public long getRedrawCount(int layer) {
+        return mRedraws[layer];
+    }
+
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Clears the frame and redraw counts, leaving the layers as they are.
+     */
+    public void resetCounts() {
+        mFrames = 0;
+        for (int layer = 0; layer < mCount; layer++) {
+            mRedraws[layer] = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RenderLayers{frames=").append(mFrames);
+        for (int layer = 0; layer < mCount; layer++) {
+            builder.append(", ").append(mNames[layer]).append('=').append(mRedraws[layer]);
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,124 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Per-minute lookup table of the sky and ground colors for the local day, following the sun's
+ * elevation through night, dawn, day and dusk.
+ * <p>
+ * The table is built from a {@link SunArc} whenever its day is recomputed. Colors are interpolated
+ * between keyframes at fixed sun elevations, with separate keyframes for dawn and dusk, and then
+ * quantized so that consecutive minutes usually share an entry. Callers only need to rebuild their
+ * shaders when the entry for the current minute differs from the one they last applied, which
+ * happens a few hundred times a day rather than on every frame.
+ */
+public final class SkyPalette {
+
+    /**
+     * Sun elevations, in degrees, of the keyframes below; the last one is full daylight.
+     */
+    private static final float[] ELEVATIONS = {-18f, -6f, 0f, 10f};
+
+    private static final int[] DAWN_SKY = {0xFF0B1026, 0xFF2C3E70, 0xFFF4A261, 0};
+    private static final int[] DUSK_SKY = {0xFF0B1026, 0xFF3B2A5A, 0xFFE76F51, 0};
+    private static final int[] GROUND_TOP = {0xFF0A3D0A, 0xFF126B12, 0xFF3FAF3F, 0};
+    private static final int[] GROUND_BOTTOM = {0xFF052005, 0xFF0A3A0A, 0xFF1E601E, 0};
+
+    /**
+     * Each color channel is rounded to a multiple of this, so slowly changing twilight colors
+     * only produce a new table entry every few minutes.
+     */
+    private static final int CHANNEL_STEP = 4;
+
+    private final int[] mSky = new int[SunArc.MINUTES_PER_DAY];
+    private final int[] mGroundTop = new int[SunArc.MINUTES_PER_DAY];
+    private final int[] mGroundBottom = new int[SunArc.MINUTES_PER_DAY];
+
+    private final int mDaySky;
+    private final int mDayGroundTop;
+    private final int mDayGroundBottom;
+
+    /**
+     * Creates a palette whose full-daylight colors are the given ones.
+     */
+    public SkyPalette(int daySky, int dayGroundTop, int dayGroundBottom) {
+        mDaySky = daySky;
+        mDayGroundTop = dayGroundTop;
+        mDayGroundBottom = dayGroundBottom;
+    }
+
+    /**
+     * Rebuilds the table for the day currently held by {@code sunArc}.
+     */
+    public void compute(SunArc sunArc) {
+        int noonMinute = 0;
+        for (int minute = 1; minute < SunArc.MINUTES_PER_DAY; minute++) {
+            if (sunArc.getElevation(minute) > sunArc.getElevation(noonMinute)) {
+                noonMinute = minute;
+            }
+        }
+        for (int minute = 0; minute < SunArc.MINUTES_PER_DAY; minute++) {
+            float elevation = sunArc.getElevation(minute);
+            int[] sky = minute <= noonMinute ? DAWN_SKY : DUSK_SKY;
+            mSky[minute] = colorAt(elevation, sky, mDaySky);
+            mGroundTop[minute] = colorAt(elevation, GROUND_TOP, mDayGroundTop);
+            mGroundBottom[minute] = colorAt(elevation, GROUND_BOTTOM, mDayGroundBottom);
+        }
+    }
+
+    public int getSkyColor(int minuteOfDay) {
+        return mSky[minuteOfDay];
+    }
+
+    public int getGroundTopColor(int minuteOfDay) {
+        return mGroundTop[minuteOfDay];
+    }
+
+    public int getGroundBottomColor(int minuteOfDay) {
+        return mGroundBottom[minuteOfDay];
+    }
+
+    /**
+     * Interpolates {@code keyframes} at {@code elevation}, with {@code dayColor} standing in for
+     * the final (full daylight) keyframe.
+     */
+    private static int colorAt(float elevation, int[] keyframes, int dayColor) {
+        int last = ELEVATIONS.length - 1;
+        if (elevation <= ELEVATIONS[0]) {
+            return keyframes[0];
+        }
+        if (elevation >= ELEVATIONS[last]) {
+            return dayColor;
+        }
+        int i = 1;
+        while (elevation > ELEVATIONS[i]) {
+            i++;
+        }
+        float fraction = (elevation - ELEVATIONS[i - 1]) / (ELEVATIONS[i] - ELEVATIONS[i - 1]);
+        int to = i == last ? dayColor : keyframes[i];
+        return quantize(lerp(keyframes[i - 1], to, fraction));
+    }
+
+    private static int lerp(int from, int to, float fraction) {
+        int r = lerpChannel(from >> 16, to >> 16, fraction);
+        int g = lerpChannel(from >> 8, to >> 8, fraction);
+        int b = lerpChannel(from, to, fraction);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int lerpChannel(int from, int to, float fraction) {
+        from &= 0xFF;
+        to &= 0xFF;
+        return Math.round(from + (to - from) * fraction);
+    }
+
+    private static int quantize(int color) {
+        int r = quantizeChannel(color >> 16);
+        int g = quantizeChannel(color >> 8);
+        int b = quantizeChannel(color);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int quantizeChannel(int channel) {
+        channel &= 0xFF;
+        return Math.min(0xFF, Math.round(channel / (float) CHANNEL_STEP) * CHANNEL_STEP);
+    }
+}
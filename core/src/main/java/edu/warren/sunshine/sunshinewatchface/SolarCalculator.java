@@ -0,0 +1,73 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Sun position using the NOAA solar calculator equations (after Meeus, "Astronomical
+ * Algorithms"). Accurate to well under a minute for sunrise and sunset between +/-72 degrees of
+ * latitude, which is far more than the watch face needs.
+ */
+public final class SolarCalculator {
+
+    /**
+     * Elevation of the sun's centre at apparent sunrise and sunset, accounting for atmospheric
+     * refraction and the radius of the solar disc.
+     */
+    public static final double HORIZON_ELEVATION = -0.833;
+
+    private static final double MS_PER_DAY = 24 * 60 * 60 * 1000d;
+    private static final double JULIAN_DAY_UNIX_EPOCH = 2440587.5;
+    private static final double JULIAN_DAY_J2000 = 2451545.0;
+
+    /**
+     * Returns the elevation of the sun above the horizon, in degrees, at {@code utcMillis} for an
+     * observer at {@code latitude}/{@code longitude} (degrees, north and east positive).
+     */
+    public static double elevation(double latitude, double longitude, long utcMillis) {
+        double julianDay = utcMillis / MS_PER_DAY + JULIAN_DAY_UNIX_EPOCH;
+        double t = (julianDay - JULIAN_DAY_J2000) / 36525.0;
+
+        double geomMeanLong = normalizeDegrees(280.46646 + t * (36000.76983 + t * 0.0003032));
+        double geomMeanAnomaly = 357.52911 + t * (35999.05029 - 0.0001537 * t);
+        double eccentricity = 0.016708634 - t * (0.000042037 + 0.0000001267 * t);
+        double m = Math.toRadians(geomMeanAnomaly);
+        double equationOfCenter = Math.sin(m) * (1.914602 - t * (0.004817 + 0.000014 * t))
+                + Math.sin(2 * m) * (0.019993 - 0.000101 * t)
+                + Math.sin(3 * m) * 0.000289;
+        double trueLong = geomMeanLong + equationOfCenter;
+        double omega = Math.toRadians(125.04 - 1934.136 * t);
+        double apparentLong = Math.toRadians(trueLong - 0.00569 - 0.00478 * Math.sin(omega));
+
+        double meanObliquity = 23 + (26 + (21.448
+                - t * (46.815 + t * (0.00059 - t * 0.001813))) / 60) / 60;
+        double obliquity = Math.toRadians(meanObliquity + 0.00256 * Math.cos(omega));
+        double declination = Math.asin(Math.sin(obliquity) * Math.sin(apparentLong));
+
+        double y = Math.tan(obliquity / 2);
+        y *= y;
+        double l0 = Math.toRadians(geomMeanLong);
+        double equationOfTimeMinutes = 4 * Math.toDegrees(y * Math.sin(2 * l0)
+                - 2 * eccentricity * Math.sin(m)
+                + 4 * eccentricity * y * Math.sin(m) * Math.cos(2 * l0)
+                - 0.5 * y * y * Math.sin(4 * l0)
+                - 1.25 * eccentricity * eccentricity * Math.sin(2 * m));
+
+        double utcMinutes = (utcMillis % (long) MS_PER_DAY) / 60000.0;
+        if (utcMinutes < 0) {
+            utcMinutes += 24 * 60;
+        }
+        double trueSolarMinutes = utcMinutes + equationOfTimeMinutes + 4 * longitude;
+        double hourAngle = Math.toRadians(normalizeDegrees(trueSolarMinutes / 4) - 180);
+
+        double lat = Math.toRadians(latitude);
+        double cosZenith = Math.sin(lat) * Math.sin(declination)
+                + Math.cos(lat) * Math.cos(declination) * Math.cos(hourAngle);
+        cosZenith = Math.max(-1, Math.min(1, cosZenith));
+        return 90 - Math.toDegrees(Math.acos(cosZenith));
+    }
+
+    private static double normalizeDegrees(double degrees) {
+        degrees %= 360;
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    private SolarCalculator() { }
+}
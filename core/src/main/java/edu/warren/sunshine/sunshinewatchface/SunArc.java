@@ -0,0 +1,161 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.TimeZone;
+
+/**
+ * Per-minute table of where {@code SunshineWatchFace} draws the weather icon on its sun arc.
+ * <p>
+ * {@link #computeDay} runs the {@link SolarCalculator} once for every minute of the local day,
+ * which only needs to happen when the day, location or time zone changes. {@link #layout} then
+ * turns that into icon positions for the current bounds, so placing the icon on a frame is an
+ * array lookup. The icon rises on the left at {@link #LOW_ANGLE} below the horizontal and sets on
+ * the right, moving linearly in time between the real sunrise and sunset.
+ * <p>
+ * Without a location the arc falls back to a fixed 7:00 to 21:30 day.
+ */
+public final class SunArc {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final int DEFAULT_SUNRISE_MINUTE = 7 * 60;
+    private static final int DEFAULT_SUNSET_MINUTE = 21 * 60 + 30;
+
+    /**
+     * Elevations used for the day when no location is known, so that anything keyed off the
+     * sun's elevation still has a plausible day and night.
+     */
+    private static final float DEFAULT_NOON_ELEVATION = 60f;
+    private static final float DEFAULT_MIDNIGHT_ELEVATION = -30f;
+
+    private static final float HIGH_ANGLE = 200f;
+    private static final float LOW_ANGLE = -20f;
+
+    private final float[] mElevations = new float[MINUTES_PER_DAY];
+    private final int[] mX = new int[MINUTES_PER_DAY];
+    private final int[] mY = new int[MINUTES_PER_DAY];
+
+    /**
+     * First and last minute of the day the sun is up, or -1 if it doesn't rise at all.
+     */
+    private int mSunriseMinute = -1;
+    private int mSunsetMinute = -1;
+
+    private boolean mLayoutValid;
+    private int mLayoutCenterX;
+    private int mLayoutCenterY;
+    private float mLayoutRadius;
+
+    /**
+     * Computes the sun's elevation for every minute of the local day that starts at
+     * {@code localMidnightUtcMillis} in {@code timeZone}. The wall-clock minute is used as the
+     * index, so on days with a DST transition the table follows the clock on the wall.
+     */
+    public void computeDay(boolean hasLocation, double latitude, double longitude,
+                           long localMidnightUtcMillis, TimeZone timeZone) {
+        if (!hasLocation) {
+            computeDefaultDay();
+        } else {
+            int midnightOffset = timeZone.getOffset(localMidnightUtcMillis);
+            for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                long utcMillis = localMidnightUtcMillis + minute * 60000L;
+                utcMillis -= timeZone.getOffset(utcMillis) - midnightOffset;
+                mElevations[minute] =
+                        (float) SolarCalculator.elevation(latitude, longitude, utcMillis);
+            }
+            mSunriseMinute = -1;
+            mSunsetMinute = -1;
+            for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                if (mElevations[minute] > SolarCalculator.HORIZON_ELEVATION) {
+                    if (mSunriseMinute < 0) {
+                        mSunriseMinute = minute;
+                    }
+                    mSunsetMinute = minute;
+                }
+            }
+        }
+        mLayoutValid = false;
+    }
+
+    private void computeDefaultDay() {
+        mSunriseMinute = DEFAULT_SUNRISE_MINUTE;
+        mSunsetMinute = DEFAULT_SUNSET_MINUTE;
+        int dayLength = DEFAULT_SUNSET_MINUTE - DEFAULT_SUNRISE_MINUTE;
+        int nightLength = MINUTES_PER_DAY - dayLength;
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            if (minute >= DEFAULT_SUNRISE_MINUTE && minute <= DEFAULT_SUNSET_MINUTE) {
+                float fraction = (minute - DEFAULT_SUNRISE_MINUTE) / (float) dayLength;
+                mElevations[minute] =
+                        DEFAULT_NOON_ELEVATION * (float) Math.sin(Math.PI * fraction);
+            } else {
+                int intoNight = minute > DEFAULT_SUNSET_MINUTE
+                        ? minute - DEFAULT_SUNSET_MINUTE
+                        : minute + MINUTES_PER_DAY - DEFAULT_SUNSET_MINUTE;
+                float fraction = intoNight / (float) nightLength;
+                mElevations[minute] =
+                        DEFAULT_MIDNIGHT_ELEVATION * (float) Math.sin(Math.PI * fraction);
+            }
+        }
+    }
+
+    /**
+     * Computes icon centre positions for an arc of {@code radius} around
+     * ({@code centerX}, {@code centerY}). Does nothing if the table is already laid out for them.
+     */
+    public void layout(int centerX, int centerY, float radius) {
+        if (mLayoutValid && centerX == mLayoutCenterX && centerY == mLayoutCenterY
+                && radius == mLayoutRadius) {
+            return;
+        }
+        float dayLength = Math.max(1, mSunsetMinute - mSunriseMinute);
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            if (!isVisible(minute)) {
+                continue;
+            }
+            float percentRange = (mSunsetMinute - minute) / dayLength;
+            double angle = Math.toRadians(percentRange * (HIGH_ANGLE - LOW_ANGLE) + LOW_ANGLE);
+            mX[minute] = (int) (radius * Math.cos(angle) + centerX);
+            mY[minute] = (int) (-radius * Math.sin(angle) + centerY);
+        }
+        mLayoutCenterX = centerX;
+        mLayoutCenterY = centerY;
+        mLayoutRadius = radius;
+        mLayoutValid = true;
+    }
+
+    /**
+     * Whether the icon is shown at {@code minuteOfDay}.
+     */
+    public boolean isVisible(int minuteOfDay) {
+        return mSunriseMinute >= 0 && minuteOfDay >= mSunriseMinute
+                && minuteOfDay <= mSunsetMinute;
+    }
+
+    /**
+     * Horizontal centre of the icon at {@code minuteOfDay}; only valid if it is visible.
+     */
+    public int getX(int minuteOfDay) {
+        return mX[minuteOfDay];
+    }
+
+    /**
+     * Vertical centre of the icon at {@code minuteOfDay}; only valid if it is visible.
+     */
+    public int getY(int minuteOfDay) {
+        return mY[minuteOfDay];
+    }
+
+    /**
+     * Elevation of the sun, in degrees, at {@code minuteOfDay}.
+     */
+    public float getElevation(int minuteOfDay) {
+        return mElevations[minuteOfDay];
+    }
+
+    public int getSunriseMinute() {
+        return mSunriseMinute;
+    }
+
+    public int getSunsetMinute() {
+        return mSunsetMinute;
+    }
+}
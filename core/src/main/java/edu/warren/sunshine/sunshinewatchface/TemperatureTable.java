@@ -0,0 +1,116 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.Locale;
+
+/**
+ * Pre-formatted display strings for every whole-degree temperature the watch face can show.
+ * <p>
+ * The table is built once for a format pattern, locale and unit, covering
+ * {@link #MIN_CELSIUS} to {@link #MAX_CELSIUS} (converted to the unit). After that, formatting a
+ * temperature is a rounding step and an array index, and the combined "high low" text is copied
+ * into a caller-owned buffer without allocating. Temperatures outside the range are clamped to it.
+ */
+public final class TemperatureTable {
+
+    public static final int UNIT_CELSIUS = 0;
+    public static final int UNIT_FAHRENHEIT = 1;
+
+    public static final int MIN_CELSIUS = -60;
+    public static final int MAX_CELSIUS = 60;
+
+    private final int mUnit;
+    private final int mMinValue;
+    private final char[][] mEntries;
+    private final char[] mUnknown;
+    private final int mMaxLength;
+
+    /**
+     * @param pattern {@link String#format} pattern taking the temperature as a {@code double}
+     * @param unknown text shown for {@link WeatherState#UNKNOWN_TEMPERATURE}
+     */
+    public TemperatureTable(String pattern, String unknown, Locale locale, int unit) {
+        mUnit = unit;
+        mMinValue = toDisplayDegrees(MIN_CELSIUS * 10);
+        int maxValue = toDisplayDegrees(MAX_CELSIUS * 10);
+        mEntries = new char[maxValue - mMinValue + 1][];
+        int maxLength = unknown.length();
+        for (int i = 0; i < mEntries.length; i++) {
+            mEntries[i] = String.format(locale, pattern, (double) (mMinValue + i)).toCharArray();
+            maxLength = Math.max(maxLength, mEntries[i].length);
+        }
+        mUnknown = unknown.toCharArray();
+        mMaxLength = maxLength;
+    }
+
+    /**
+     * Longest text {@link #append} can write.
+     */
+    public int getMaxLength() {
+        return mMaxLength;
+    }
+
+    /**
+     * Size of buffer needed by {@link #formatHighLow}.
+     */
+    public int getMaxHighLowLength() {
+        return 2 * mMaxLength + 1;
+    }
+
+    /**
+     * Writes the display text for {@code tenthsCelsius} into {@code buffer} at {@code offset}.
+     *
+     * @return the offset just past the last written character
+     */
+    public int append(char[] buffer, int offset, int tenthsCelsius) {
+        char[] entry = entryFor(tenthsCelsius);
+        System.arraycopy(entry, 0, buffer, offset, entry.length);
+        return offset + entry.length;
+    }
+
+    /**
+     * Writes "high low" into the start of {@code buffer}, which must hold at least
+     * {@link #getMaxHighLowLength()} characters.
+     *
+     * @return the number of characters written
+     */
+    public int formatHighLow(char[] buffer, int highTenthsCelsius, int lowTenthsCelsius) {
+        int offset = append(buffer, 0, highTenthsCelsius);
+        buffer[offset++] = ' ';
+        return append(buffer, offset, lowTenthsCelsius);
+    }
+
+    /**
+     * Returns the display text for {@code tenthsCelsius} as a new string; for logging and other
+     * places off the drawing path.
+     */
+    public String toString(int tenthsCelsius) {
+        return new String(entryFor(tenthsCelsius));
+    }
+
+    private char[] entryFor(int tenthsCelsius) {
+        if (tenthsCelsius <= WeatherState.UNKNOWN_TEMPERATURE) {
+            return mUnknown;
+        }
+        int index = toDisplayDegrees(tenthsCelsius) - mMinValue;
+        index = Math.max(0, Math.min(mEntries.length - 1, index));
+        return mEntries[index];
+    }
+
+    /**
+     * Converts tenths of a degree Celsius to whole degrees of the table's unit, rounding halves
+     * away from zero like {@code %.0f} does.
+     */
+    private int toDisplayDegrees(int tenthsCelsius) {
+        if (mUnit == UNIT_FAHRENHEIT) {
+            // F = C * 9 / 5 + 32 = (tenthsC * 9 + 1600) / 50, rounded once from the exact
+            // fraction; truncating the division first would be off by one below zero.
+            return roundDivide(tenthsCelsius * 9 + 1600, 50);
+        }
+        return roundDivide(tenthsCelsius, 10);
+    }
+
+    private static int roundDivide(int dividend, int divisor) {
+        int half = divisor / 2;
+        return dividend >= 0 ? (dividend + half) / divisor : -((half - dividend) / divisor);
+    }
+}
@@ -0,0 +1,167 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the weather data path on a plain JVM: a {@link LoopbackWeatherTransport} feeds a
+ * consumer that handles updates the way {@code SunshineWatchFace}'s engine does (fetch on
+ * connect, coalesce changes for the same window, apply, draw one frame), and the resulting
+ * {@link LatencyTrace} is printed.
+ * <p>
+ * Usage: {@code TransportLatencyHarness [connectMs itemFetchMs deliveryMs
+ * [burstSize burstIntervalMs [bursts]]]}.
+ */
+public final class TransportLatencyHarness implements WeatherTransport.Listener {
+
+    /**
+     * Same window as the engine's {@code WEATHER_COALESCE_MS}.
+     */
+    private static final long COALESCE_MS = 100;
+
+    /**
+     * Stand-in for the time from invalidating to the end of {@code onDraw}.
+     */
+    private static final long FRAME_MS = 16;
+
+    private final LoopbackWeatherTransport.Dispatcher mDispatcher;
+    private final LatencyTrace mTrace;
+    private final WeatherTransport mTransport;
+    private final WeatherState.Update mPending = new WeatherState.Update();
+    private final CountDownLatch mFetched = new CountDownLatch(1);
+
+    private WeatherState mState = WeatherState.DEFAULT;
+    private boolean mApplyScheduled;
+    private boolean mFramePending;
+    private int mApplied;
+
+    TransportLatencyHarness(LoopbackWeatherTransport.Dispatcher dispatcher, LatencyTrace trace,
+                            WeatherTransport transport) {
+        mDispatcher = dispatcher;
+        mTrace = trace;
+        mTransport = transport;
+    }
+
+    @Override
+    public void onConnected() {
+        mTransport.fetchCurrent();
+    }
+
+    @Override
+    public void onWeatherFetched(WeatherState.Update current) {
+        mTrace.begin(LatencyTrace.STAGE_APPLY, System.nanoTime());
+        mPending.merge(current);
+        apply();
+        mFetched.countDown();
+    }
+
+    @Override
+    public void onWeatherChanged(WeatherState.Update changes) {
+        mTrace.begin(LatencyTrace.STAGE_APPLY, System.nanoTime());
+        mPending.merge(changes);
+        if (!mApplyScheduled) {
+            mApplyScheduled = true;
+            mDispatcher.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    apply();
+                }
+            }, COALESCE_MS);
+        }
+    }
+
+    private void apply() {
+        mApplyScheduled = false;
+        if (mPending.isEmpty()) {
+            mTrace.cancel(LatencyTrace.STAGE_APPLY);
+            return;
+        }
+        WeatherState next = mState.apply(mPending);
+        mPending.clear();
+        long nowNs = System.nanoTime();
+        mTrace.end(LatencyTrace.STAGE_APPLY, nowNs);
+        if (next == mState) {
+            return;
+        }
+        mState = next;
+        mApplied++;
+        mTrace.begin(LatencyTrace.STAGE_REDRAW, nowNs);
+        if (!mFramePending) {
+            mFramePending = true;
+            mDispatcher.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    mFramePending = false;
+                    mTrace.end(LatencyTrace.STAGE_REDRAW, System.nanoTime());
+                }
+            }, FRAME_MS);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long connectMs = args.length > 2 ? Long.parseLong(args[0]) : 40;
+        long itemFetchMs = args.length > 2 ? Long.parseLong(args[1]) : 40;
+        long deliveryMs = args.length > 2 ? Long.parseLong(args[2]) : 30;
+        int burstSize = args.length > 4 ? Integer.parseInt(args[3]) : 5;
+        long burstIntervalMs = args.length > 4 ? Long.parseLong(args[4]) : 20;
+        int bursts = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        LoopbackWeatherTransport.Dispatcher dispatcher = new LoopbackWeatherTransport.Dispatcher() {
+            @Override
+            public void dispatch(Runnable task, long delayMs) {
+                executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            }
+        };
+        LatencyTrace trace = new LatencyTrace();
+        final LoopbackWeatherTransport transport = new LoopbackWeatherTransport(dispatcher, trace);
+        transport.setDelays(connectMs, itemFetchMs, deliveryMs);
+        final TransportLatencyHarness harness =
+                new TransportLatencyHarness(dispatcher, trace, transport);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Something for the startup fetch to find, as if the phone synced before a
+                // reboot.
+                transport.publish(new WeatherState.Update().setWeatherId(1).setHighTemp(215)
+                        .setLowTemp(120));
+                transport.connect(harness);
+            }
+        });
+        harness.mFetched.await();
+
+        long burstPeriodMs = burstSize * burstIntervalMs + deliveryMs + COALESCE_MS + FRAME_MS
+                + 50;
+        for (int b = 0; b < bursts; b++) {
+            final WeatherState.Update[] burst = new WeatherState.Update[burstSize];
+            for (int i = 0; i < burstSize; i++) {
+                burst[i] = new WeatherState.Update().setWeatherId((b + i) % 8)
+                        .setHighTemp(200 + b * 10 + i);
+            }
+            final long intervalMs = burstIntervalMs;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    transport.injectBurst(burst, intervalMs);
+                }
+            }, b * burstPeriodMs, TimeUnit.MILLISECONDS);
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, bursts * burstPeriodMs, TimeUnit.MILLISECONDS);
+        done.await();
+        executor.shutdown();
+
+        System.out.println("published=" + transport.getPublishedCount()
+                + " delivered=" + transport.getDeliveredCount()
+                + " applied=" + harness.mApplied);
+        System.out.println(trace);
+    }
+}
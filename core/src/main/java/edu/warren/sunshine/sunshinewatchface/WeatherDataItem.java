@@ -0,0 +1,63 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Path and {@code DataMap} keys of the data item that carries the weather from the phone to
+ * {@code SunshineWatchFace}. Shared by the watch face, which reads it, and the phone-side
+ * {@code mobile} module, which writes it.
+ */
+public final class WeatherDataItem {
+
+    /**
+     * The path for the {@code DataItem} containing {@code SunshineWatchFace} configuration.
+     */
+    public static final String PATH = "/sunshine_watch_face_config";
+
+    /**
+     * The {@code DataMap} key for {@code SunshineWatchFace} weather image, as the {@code int}
+     * value of a {@code SunshineWatchFaceUtil.WeatherBitmap}.
+     */
+    public static final String KEY_WEATHER_IMAGE = "WEATHER_IMAGE";
+
+    /**
+     * The {@code DataMap} key for {@code SunshineWatchFace} high temperature, in tenths of a
+     * degree Celsius.
+     */
+    public static final String KEY_HIGH_TEMP = "HIGH_TEMP";
+
+    /**
+     * The {@code DataMap} key for {@code SunshineWatchFace} low temperature, in tenths of a
+     * degree Celsius.
+     */
+    public static final String KEY_LOW_TEMP = "LOW_TEMP";
+
+    /**
+     * The {@code DataMap} keys for the latitude and longitude of the forecast location, as
+     * {@code double} degrees (north and east positive). Used to place the sun on its arc.
+     */
+    public static final String KEY_LATITUDE = "LATITUDE";
+    public static final String KEY_LONGITUDE = "LONGITUDE";
+
+    /**
+     * The {@code DataMap} key for the unit the user wants temperatures shown in, as an
+     * {@code int}: {@link TemperatureTable#UNIT_CELSIUS} or
+     * {@link TemperatureTable#UNIT_FAHRENHEIT}. Temperatures are always sent in Celsius.
+     */
+    public static final String KEY_TEMPERATURE_UNIT = "TEMPERATURE_UNIT";
+
+    /**
+     * The {@code DataMap} key for the multi-day and hourly forecast, as a {@code byte[]} in the
+     * {@link ForecastCodec} format. If present, the first day also supplies the weather image and
+     * high and low temperatures, unless the config carries those keys as well.
+     */
+    public static final String KEY_FORECAST = "FORECAST";
+
+    /**
+     * The {@code DataMap} key for when the item was written, as {@code long} milliseconds since
+     * the epoch. The phone and the watch each own an item at {@link #PATH}; readers take the one
+     * written last.
+     */
+    public static final String KEY_PUBLISHED_MS = "PUBLISHED_MS";
+
+    private WeatherDataItem() {
+    }
+}
@@ -0,0 +1,26 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Where {@link WeatherPublisher} writes the weather item on the phone: the Wearable data layer
+ * in the {@code mobile} module, or an in-memory one in the unit tests.
+ */
+public interface WeatherDataLayer {
+
+    /**
+     * Returns the weather in the {@link WeatherDataItem#PATH} item, or null if there is none or
+     * it can't be read.
+     */
+    WeatherState getWeather();
+
+    /**
+     * Replaces the {@link WeatherDataItem#PATH} item with {@code state}. An {@code urgent} write
+     * is synced to the watch right away; any other write may be held back and batched with other
+     * data, so it costs no radio wakeup of its own.
+     */
+    void putWeather(WeatherState state, boolean urgent);
+
+    /**
+     * Releases the connection to the data layer, if there is one.
+     */
+    void disconnect();
+}
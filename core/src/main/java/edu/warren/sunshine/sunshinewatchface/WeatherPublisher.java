@@ -0,0 +1,204 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Publishes the phone's weather to the watch through a {@link WeatherDataLayer}, writing as
+ * rarely as it can without leaving the watch face behind.
+ * <ul>
+ * <li>An update that leaves the weather as last published is not written at all.</li>
+ * <li>Writes are at least the minimum interval apart. Updates that arrive sooner are merged and
+ * written together once the interval has passed; the caller schedules that with
+ * {@link #getFlushDelayMs} and {@link #flush}.</li>
+ * <li>A write is urgent, syncing immediately, only for a significant change: a different
+ * condition or temperature unit, or a high or low that moved by at least the threshold. Other
+ * changes, like a new forecast or location, go out with the data layer's next batch.</li>
+ * </ul>
+ * The first write after the publisher is created is always made, and urgent, since the watch may
+ * have nothing yet, unless the weather already in the data layer is passed to {@link #restore}.
+ * The publisher is single-threaded and takes the time as a parameter, so it can be driven by an
+ * in-memory data layer and a simulated clock; see {@code WeatherPublisherTest}.
+ */
+public final class WeatherPublisher {
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 60 * 1000;
+
+    /**
+     * Change in the high or low, in tenths of a degree Celsius, that makes a write urgent.
+     */
+    public static final int DEFAULT_SIGNIFICANT_TEMP_CHANGE = 20;
+
+    /**
+     * What {@link #publish} and {@link #flush} did with the latest weather.
+     */
+    public static final int RESULT_PUBLISHED = 0;
+    public static final int RESULT_PUBLISHED_URGENT = 1;
+    public static final int RESULT_UNCHANGED = 2;
+    public static final int RESULT_DEFERRED = 3;
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final WeatherDataLayer mDataLayer;
+    private final long mMinIntervalMs;
+    private final int mSignificantTempChange;
+
+    /**
+     * The weather with every update received applied, and the weather last written, or null if
+     * nothing has been written yet.
+     */
+    private WeatherState mLatest = WeatherState.DEFAULT;
+    private WeatherState mPublished;
+    private long mLastPublishMs = NEVER;
+    private boolean mDeferred;
+
+    private int mUpdates;
+    private int mPublishedCount;
+    private int mUrgentCount;
+    private int mUnchangedCount;
+    private int mCoalescedCount;
+
+    public WeatherPublisher(WeatherDataLayer dataLayer) {
+        this(dataLayer, DEFAULT_MIN_INTERVAL_MS, DEFAULT_SIGNIFICANT_TEMP_CHANGE);
+    }
+
+    public WeatherPublisher(WeatherDataLayer dataLayer, long minIntervalMs,
+                            int significantTempChange) {
+        mDataLayer = dataLayer;
+        mMinIntervalMs = minIntervalMs;
+        mSignificantTempChange = significantTempChange;
+    }
+
+    /**
+     * Starts from {@code published}, the weather the data layer already holds, so that an update
+     * repeating it isn't written again. Must be called before the first {@link #publish}.
+     */
+    public void restore(WeatherState published) {
+        mLatest = published;
+        mPublished = published;
+    }
+
+    /**
+     * Applies {@code update} to the weather and writes the result if it is due.
+     *
+     * @return one of the {@code RESULT_*} constants
+     */
+    public int publish(WeatherState.Update update, long nowMs) {
+        mUpdates++;
+        mLatest = mLatest.apply(update);
+        int result = publishLatest(nowMs);
+        if (result == RESULT_UNCHANGED) {
+            mUnchangedCount++;
+        } else if (result == RESULT_DEFERRED) {
+            mCoalescedCount++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns how long until deferred weather may be written, or -1 if none is waiting.
+     */
+    public long getFlushDelayMs(long nowMs) {
+        if (!mDeferred) {
+            return -1;
+        }
+        return Math.max(0, mLastPublishMs + mMinIntervalMs - nowMs);
+    }
+
+    /**
+     * Writes the weather deferred by earlier calls to {@link #publish}, if its time has come.
+     *
+     * @return one of the {@code RESULT_*} constants
+     */
+    public int flush(long nowMs) {
+        return publishLatest(nowMs);
+    }
+
+    private int publishLatest(long nowMs) {
+        if (mPublished != null && mPublished.diff(mLatest) == 0) {
+            // Whatever was deferred has been undone by later updates.
+            mDeferred = false;
+            return RESULT_UNCHANGED;
+        }
+        if (mLastPublishMs != NEVER && nowMs - mLastPublishMs < mMinIntervalMs) {
+            mDeferred = true;
+            return RESULT_DEFERRED;
+        }
+        boolean urgent = isSignificant(mPublished, mLatest);
+        mDataLayer.putWeather(mLatest, urgent);
+        mPublished = mLatest;
+        mLastPublishMs = nowMs;
+        mDeferred = false;
+        mPublishedCount++;
+        if (urgent) {
+            mUrgentCount++;
+            return RESULT_PUBLISHED_URGENT;
+        }
+        return RESULT_PUBLISHED;
+    }
+
+    /**
+     * Returns whether going from {@code published} (null if nothing is) to {@code next} is
+     * worth an immediate sync.
+     */
+    private boolean isSignificant(WeatherState published, WeatherState next) {
+        if (published == null) {
+            return true;
+        }
+        int changed = published.diff(next);
+        return (changed & (WeatherState.FIELD_WEATHER_ID
+                | WeatherState.FIELD_TEMPERATURE_UNIT)) != 0
+                || isSignificantTempChange(published.getHighTemp(), next.getHighTemp())
+                || isSignificantTempChange(published.getLowTemp(), next.getLowTemp());
+    }
+
+    private boolean isSignificantTempChange(int from, int to) {
+        if (from == to) {
+            return false;
+        }
+        if (from == WeatherState.UNKNOWN_TEMPERATURE || to == WeatherState.UNKNOWN_TEMPERATURE) {
+            return true;
+        }
+        return Math.abs(to - from) >= mSignificantTempChange;
+    }
+
+    public int getUpdateCount() {
+        return mUpdates;
+    }
+
+    public int getPublishedCount() {
+        return mPublishedCount;
+    }
+
+    public int getUrgentCount() {
+        return mUrgentCount;
+    }
+
+    /**
+     * Returns how many updates were dropped because they changed nothing.
+     */
+    public int getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+    /**
+     * Returns how many updates came too soon after a write and were merged into a later one.
+     */
+    public int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * Returns how many updates didn't lead to a write of their own.
+     */
+    public int getSuppressedCount() {
+        return mUnchangedCount + mCoalescedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherPublisher{updates=" + mUpdates
+                + ", published=" + mPublishedCount
+                + ", urgent=" + mUrgentCount
+                + ", unchanged=" + mUnchangedCount
+                + ", coalesced=" + mCoalescedCount
+                + (mDeferred ? ", deferred" : "") + "}";
+    }
+}
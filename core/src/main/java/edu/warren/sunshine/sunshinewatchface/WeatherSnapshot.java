@@ -0,0 +1,119 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The last applied {@link WeatherState}, kept in a small binary file so that a newly created
+ * engine can draw real weather on its first frame instead of waiting for the data layer.
+ * <p>
+ * Writes go to a temporary file that is then renamed over the snapshot, so a crash mid-write
+ * leaves the previous snapshot intact. A snapshot that is missing, truncated or from another
+ * format version reads as null and the engine starts from {@link WeatherState#DEFAULT}. The
+ * snapshot is only a head start: the live config is applied over it as soon as it arrives.
+ */
+public final class WeatherSnapshot {
+
+    private static final int MAGIC = 0x53575331; // "SWS1"
+    private static final int VERSION = 1;
+
+    /**
+     * Larger forecast lengths can only come from a damaged file.
+     */
+    private static final int MAX_FORECAST_LENGTH = 64 * 1024;
+
+    private final File mFile;
+
+    public WeatherSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the snapshot, or returns null if there is no readable one.
+     */
+    public WeatherState read() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            WeatherState.Update update = new WeatherState.Update()
+                    .setWeatherId(in.readInt())
+                    .setHighTemp(in.readInt())
+                    .setLowTemp(in.readInt())
+                    .setTemperatureUnit(in.readUnsignedByte());
+            if (in.readBoolean()) {
+                update.setLocation(in.readDouble(), in.readDouble());
+            }
+            int forecastLength = in.readInt();
+            if (forecastLength > MAX_FORECAST_LENGTH) {
+                return null;
+            }
+            if (forecastLength > 0) {
+                byte[] payload = new byte[forecastLength];
+                in.readFully(payload);
+                update.setForecast(Forecast.fromPayload(payload));
+            }
+            return WeatherState.DEFAULT.apply(update);
+        } catch (IOException | IllegalArgumentException e) {
+            // Missing on first run, or unreadable: start from the defaults either way.
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces the snapshot with {@code state}. Does file I/O, so call it off the UI thread.
+     *
+     * @throws IOException if the snapshot couldn't be written; the previous one is kept
+     */
+    public void write(WeatherState state) throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(state.getWeatherId());
+            out.writeInt(state.getHighTemp());
+            out.writeInt(state.getLowTemp());
+            out.writeByte(state.getTemperatureUnit());
+            out.writeBoolean(state.hasLocation());
+            if (state.hasLocation()) {
+                out.writeDouble(state.getLatitude());
+                out.writeDouble(state.getLongitude());
+            }
+            Forecast forecast = state.getForecast();
+            if (forecast != null) {
+                out.writeInt(forecast.getPayload().length);
+                out.write(forecast.getPayload());
+            } else {
+                out.writeInt(0);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Couldn't replace " + mFile);
+        }
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing was written, so there is nothing to lose.
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Immutable snapshot of the weather shown by {@code SunshineWatchFace}.
+ * <p>
+ * New snapshots are made by applying an {@link Update}, which only carries the fields an incoming
+ * config actually contained. Applying an update that doesn't change any value returns the same
+ * snapshot, and {@link #diff} tells the caller exactly which fields changed, so unchanged values
+ * never cause work. Every snapshot that differs from its predecessor gets the next
+ * {@link #getVersion() version}.
+ */
+public final class WeatherState {
+
+    public static final int FIELD_WEATHER_ID = 1;
+    public static final int FIELD_HIGH_TEMP = 1 << 1;
+    public static final int FIELD_LOW_TEMP = 1 << 2;
+    public static final int FIELD_LOCATION = 1 << 3;
+    public static final int FIELD_TEMPERATURE_UNIT = 1 << 4;
+    public static final int FIELD_FORECAST = 1 << 5;
+
+    /**
+     * Temperature value meaning "unknown"; any value at or below it is displayed as such.
+     */
+    public static final int UNKNOWN_TEMPERATURE = -1000;
+
+    /**
+     * The state before any weather has been received.
+     */
+    public static final WeatherState DEFAULT = new WeatherState(0, 0, UNKNOWN_TEMPERATURE,
+            UNKNOWN_TEMPERATURE, false, 0, 0, TemperatureTable.UNIT_CELSIUS, null);
+
+    private final long mVersion;
+    private final int mWeatherId;
+    private final int mHighTemp;
+    private final int mLowTemp;
+    private final boolean mHasLocation;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final int mTemperatureUnit;
+    private final Forecast mForecast;
+
+    private WeatherState(long version, int weatherId, int highTemp, int lowTemp,
+                         boolean hasLocation, double latitude, double longitude,
+                         int temperatureUnit, Forecast forecast) {
+        mVersion = version;
+        mWeatherId = weatherId;
+        mHighTemp = highTemp;
+        mLowTemp = lowTemp;
+        mHasLocation = hasLocation;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mTemperatureUnit = temperatureUnit;
+        mForecast = forecast;
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * The condition code of the current weather, as sent by the phone ({@code WeatherBitmap}
+     * value).
+     */
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    /**
+     * Today's high, in tenths of a degree Celsius, or {@link #UNKNOWN_TEMPERATURE}.
+     */
+    public int getHighTemp() {
+        return mHighTemp;
+    }
+
+    /**
+     * Today's low, in tenths of a degree Celsius, or {@link #UNKNOWN_TEMPERATURE}.
+     */
+    public int getLowTemp() {
+        return mLowTemp;
+    }
+
+    public boolean hasLocation() {
+        return mHasLocation;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * The unit temperatures are displayed in, one of the {@code TemperatureTable.UNIT_*}
+     * constants.
+     */
+    public int getTemperatureUnit() {
+        return mTemperatureUnit;
+    }
+
+    /**
+     * The multi-day and hourly forecast, or null if none has been received.
+     */
+    public Forecast getForecast() {
+        return mForecast;
+    }
+
+    /**
+     * Returns the {@code FIELD_*} flags for the values that differ between this and
+     * {@code other}.
+     */
+    public int diff(WeatherState other) {
+        int changed = 0;
+        if (mWeatherId != other.mWeatherId) {
+            changed |= FIELD_WEATHER_ID;
+        }
+        if (mHighTemp != other.mHighTemp) {
+            changed |= FIELD_HIGH_TEMP;
+        }
+        if (mLowTemp != other.mLowTemp) {
+            changed |= FIELD_LOW_TEMP;
+        }
+        if (mHasLocation != other.mHasLocation || mLatitude != other.mLatitude
+                || mLongitude != other.mLongitude) {
+            changed |= FIELD_LOCATION;
+        }
+        if (mTemperatureUnit != other.mTemperatureUnit) {
+            changed |= FIELD_TEMPERATURE_UNIT;
+        }
+        if (mForecast == null ? other.mForecast != null : !mForecast.equals(other.mForecast)) {
+            changed |= FIELD_FORECAST;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the state with {@code update} applied: this same instance if nothing changes,
+     * otherwise a new snapshot with the next version.
+     */
+    public WeatherState apply(Update update) {
+        int fields = update.mFields;
+        WeatherState next = new WeatherState(mVersion + 1,
+                (fields & FIELD_WEATHER_ID) != 0 ? update.mWeatherId : mWeatherId,
+                (fields & FIELD_HIGH_TEMP) != 0 ? update.mHighTemp : mHighTemp,
+                (fields & FIELD_LOW_TEMP) != 0 ? update.mLowTemp : mLowTemp,
+                (fields & FIELD_LOCATION) != 0 || mHasLocation,
+                (fields & FIELD_LOCATION) != 0 ? update.mLatitude : mLatitude,
+                (fields & FIELD_LOCATION) != 0 ? update.mLongitude : mLongitude,
+                (fields & FIELD_TEMPERATURE_UNIT) != 0 ? update.mTemperatureUnit
+                        : mTemperatureUnit,
+                (fields & FIELD_FORECAST) != 0 ? update.mForecast : mForecast);
+        return diff(next) == 0 ? this : next;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherState{version=" + mVersion
+                + ", weatherId=" + mWeatherId
+                + ", highTemp=" + mHighTemp
+                + ", lowTemp=" + mLowTemp
+                + (mHasLocation ? ", location=" + mLatitude + "," + mLongitude : "")
+                + ", temperatureUnit=" + mTemperatureUnit
+                + (mForecast != null ? ", forecast=" + mForecast : "")
+                + "}";
+    }
+
+    /**
+     * The fields of one or more incoming configs that have not been applied yet. Later values
+     * for the same field replace earlier ones, so a burst of configs collapses into one update.
+     * Reusable via {@link #clear()}.
+     */
+    public static final class Update {
+        private int mFields;
+        private int mWeatherId;
+        private int mHighTemp;
+        private int mLowTemp;
+        private double mLatitude;
+        private double mLongitude;
+        private int mTemperatureUnit;
+        private Forecast mForecast;
+
+        public Update setWeatherId(int weatherId) {
+            mWeatherId = weatherId;
+            mFields |= FIELD_WEATHER_ID;
+            return this;
+        }
+
+        public Update setHighTemp(int highTemp) {
+            mHighTemp = highTemp;
+            mFields |= FIELD_HIGH_TEMP;
+            return this;
+        }
+
+        public Update setLowTemp(int lowTemp) {
+            mLowTemp = lowTemp;
+            mFields |= FIELD_LOW_TEMP;
+            return this;
+        }
+
+        public Update setLocation(double latitude, double longitude) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mFields |= FIELD_LOCATION;
+            return this;
+        }
+
+        public Update setTemperatureUnit(int temperatureUnit) {
+            mTemperatureUnit = temperatureUnit;
+            mFields |= FIELD_TEMPERATURE_UNIT;
+            return this;
+        }
+
+        public Update setForecast(Forecast forecast) {
+            mForecast = forecast;
+            mFields |= FIELD_FORECAST;
+            return this;
+        }
+
+        /**
+         * Adds the fields carried by {@code other} to this update, replacing the values of fields
+         * both carry.
+         */
+        public Update merge(Update other) {
+            int fields = other.mFields;
+            if ((fields & FIELD_WEATHER_ID) != 0) {
+                setWeatherId(other.mWeatherId);
+            }
+            if ((fields & FIELD_HIGH_TEMP) != 0) {
+                setHighTemp(other.mHighTemp);
+            }
+            if ((fields & FIELD_LOW_TEMP) != 0) {
+                setLowTemp(other.mLowTemp);
+            }
+            if ((fields & FIELD_LOCATION) != 0) {
+                setLocation(other.mLatitude, other.mLongitude);
+            }
+            if ((fields & FIELD_TEMPERATURE_UNIT) != 0) {
+                setTemperatureUnit(other.mTemperatureUnit);
+            }
+            if ((fields & FIELD_FORECAST) != 0) {
+                setForecast(other.mForecast);
+            }
+            return this;
+        }
+
+        /*
+         * The getters below return the value carried for a field; only meaningful if
+         * getFields() includes it.
+         */
+
+        public int getWeatherId() {
+            return mWeatherId;
+        }
+
+        public int getHighTemp() {
+            return mHighTemp;
+        }
+
+        public int getLowTemp() {
+            return mLowTemp;
+        }
+
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        public int getTemperatureUnit() {
+            return mTemperatureUnit;
+        }
+
+        public Forecast getForecast() {
+            return mForecast;
+        }
+
+        /**
+         * Returns the {@code FIELD_*} flags for the fields this update carries.
+         */
+        public int getFields() {
+            return mFields;
+        }
+
+        public boolean isEmpty() {
+            return mFields == 0;
+        }
+
+        public void clear() {
+            mFields = 0;
+            mForecast = null;
+        }
+    }
+}
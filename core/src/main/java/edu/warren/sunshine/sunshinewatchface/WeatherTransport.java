@@ -0,0 +1,64 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * Where {@code SunshineWatchFace} gets its weather from, and where weather is published to.
+ * <p>
+ * {@code WearableWeatherTransport} is the real one, backed by the Wearable data layer.
+ * {@link LoopbackWeatherTransport} keeps the config in process, so the data path can be run and
+ * timed without a paired phone. Implementations record their connect and fetch stages in a
+ * {@link LatencyTrace}.
+ * <p>
+ * All methods must be called, and {@link Listener#onConnected()} is called, on a single thread:
+ * the UI thread on the watch. Weather may be delivered on a different thread of the
+ * implementation's choosing, so that parsing it stays off the UI thread, but never on two
+ * threads at once.
+ */
+public interface WeatherTransport {
+
+    /**
+     * Receives what the transport delivers. The updates passed in are only valid for the
+     * duration of the call; copy them with {@link WeatherState.Update#merge} to keep them.
+     */
+    interface Listener {
+        /**
+         * The transport is connected and will deliver changes; a good time to
+         * {@link #fetchCurrent()}.
+         */
+        void onConnected();
+
+        /**
+         * The result of {@link #fetchCurrent()}: every weather field currently stored. Empty if
+         * no config has been published yet. Called on the delivery thread.
+         */
+        void onWeatherFetched(WeatherState.Update current);
+
+        /**
+         * Some weather fields were published since the last delivery. Called on the delivery
+         * thread.
+         */
+        void onWeatherChanged(WeatherState.Update changes);
+    }
+
+    /**
+     * Starts connecting; {@code listener} gets {@link Listener#onConnected()} once connected
+     * and changes from then on until {@link #disconnect()}.
+     */
+    void connect(Listener listener);
+
+    /**
+     * Stops delivering to the listener and releases the connection. Pending fetches, and
+     * published fields not yet stored, are dropped.
+     */
+    void disconnect();
+
+    /**
+     * Fetches the stored config and delivers it to {@link Listener#onWeatherFetched}.
+     */
+    void fetchCurrent();
+
+    /**
+     * Stores the fields of {@code update} in the shared config, leaving the other fields as they
+     * are. The change is delivered to every connected listener, including this one.
+     */
+    void publish(WeatherState.Update update);
+}
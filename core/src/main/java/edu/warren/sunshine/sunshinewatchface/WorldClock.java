@@ -0,0 +1,117 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The secondary clocks {@code SunshineWatchFace} draws under the date, as one row of text like
+ * "LON 9:05  TYO 17:05".
+ * <p>
+ * Each zone's offset comes from its {@link ZoneTransitions} table, so no {@code Calendar} is
+ * involved per frame. The row is reformatted into a reusable buffer only when the minute
+ * changes, without allocating. Tables that have run out are rebuilt on the spot; the engine
+ * also calls {@link #rebuild} daily and when the time zone data may have changed.
+ */
+public final class WorldClock {
+
+    public static final int MAX_ZONES = 3;
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long MINUTES_PER_DAY = 24 * 60;
+    private static final String SEPARATOR = "  ";
+
+    private final ZoneTransitions[] mZones;
+    private final String[] mLabels;
+    private final char[] mText;
+    private int mLength;
+    private long mMinute = Long.MIN_VALUE;
+
+    /**
+     * @param zoneIds up to {@link #MAX_ZONES} time zone IDs; any more are ignored
+     */
+    public WorldClock(String[] zoneIds) {
+        int count = Math.min(zoneIds.length, MAX_ZONES);
+        mZones = new ZoneTransitions[count];
+        mLabels = new String[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            mZones[i] = new ZoneTransitions(TimeZone.getTimeZone(zoneIds[i]));
+            mLabels[i] = labelFor(zoneIds[i]);
+            // The label, a space and "HH:MM".
+            length += mLabels[i].length() + 1 + 5;
+        }
+        mText = new char[length + SEPARATOR.length() * Math.max(0, count - 1)];
+    }
+
+    /**
+     * Returns a short label for a zone: the first three letters of its city, like "LON" for
+     * "Europe/London", or the whole ID if it has no city part.
+     */
+    static String labelFor(String zoneId) {
+        String city = zoneId.substring(zoneId.lastIndexOf('/') + 1).replace('_', ' ');
+        if (zoneId.indexOf('/') < 0 || city.length() <= 3) {
+            return city.toUpperCase(Locale.US);
+        }
+        return city.substring(0, 3).toUpperCase(Locale.US);
+    }
+
+    public boolean isEmpty() {
+        return mZones.length == 0;
+    }
+
+    /**
+     * Rebuilds every zone's table from {@code nowMs}, and the text with it.
+     */
+    public void rebuild(long nowMs) {
+        for (ZoneTransitions zone : mZones) {
+            zone.rebuild(nowMs, ZoneTransitions.DEFAULT_HORIZON_MS);
+        }
+        mMinute = Long.MIN_VALUE;
+    }
+
+    /**
+     * Brings the text up to date for {@code nowMs}.
+     *
+     * @return true if the text changed
+     */
+    public boolean update(long nowMs) {
+        long minute = floorDiv(nowMs, MINUTE_MS);
+        if (minute == mMinute) {
+            return false;
+        }
+        mMinute = minute;
+        int offset = 0;
+        for (int i = 0; i < mZones.length; i++) {
+            ZoneTransitions zone = mZones[i];
+            if (!zone.isValid(nowMs)) {
+                zone.rebuild(nowMs, ZoneTransitions.DEFAULT_HORIZON_MS);
+            }
+            long localMinute = floorDiv(nowMs + zone.getOffset(nowMs), MINUTE_MS);
+            int minuteOfDay = (int) (localMinute
+                    - floorDiv(localMinute, MINUTES_PER_DAY) * MINUTES_PER_DAY);
+            if (i > 0) {
+                offset = CharFormat.appendString(mText, offset, SEPARATOR);
+            }
+            offset = CharFormat.appendString(mText, offset, mLabels[i]);
+            mText[offset++] = ' ';
+            offset = CharFormat.appendInt(mText, offset, minuteOfDay / 60);
+            mText[offset++] = ':';
+            offset = CharFormat.appendTwoDigits(mText, offset, minuteOfDay % 60);
+        }
+        mLength = offset;
+        return true;
+    }
+
+    public char[] getText() {
+        return mText;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return x % y != 0 && (x < 0) != (y < 0) ? quotient - 1 : quotient;
+    }
+}
@@ -0,0 +1,139 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import java.util.TimeZone;
+
+/**
+ * The UTC offsets of one time zone over the next few days, as a small table of the instants the
+ * offset changes at, so that the local time there is the UTC time plus a table entry.
+ * <p>
+ * {@link #rebuild} asks the {@link TimeZone} for its offset at hourly steps over the horizon and
+ * narrows each change down to the millisecond. After that {@link #getOffset} only compares the
+ * time with the next transition, stepping to it when it has passed, and allocates nothing.
+ * Times outside the table are answered by the time zone itself; {@link #isValid} tells the
+ * caller when it is time to rebuild.
+ */
+public final class ZoneTransitions {
+
+    /**
+     * How far ahead {@link #rebuild} looks by default: the table is rebuilt daily, and this
+     * leaves a week of slack in case that doesn't happen.
+     */
+    public static final long DEFAULT_HORIZON_MS = 8 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * Step between offset samples. Zones don't change offset twice within an hour, so no
+     * transition falls between two samples unseen.
+     */
+    private static final long SCAN_STEP_MS = 60 * 60 * 1000;
+
+    /**
+     * Most offset changes a table holds; it ends early at the transition past these.
+     */
+    private static final int MAX_TRANSITIONS = 8;
+
+    private final TimeZone mTimeZone;
+
+    /**
+     * Entry {@code i} applies from {@code mStartsMs[i]} until the next entry's start, the last
+     * one until {@link #mValidUntilMs}. Entry 0 starts where the table does.
+     */
+    private final long[] mStartsMs = new long[MAX_TRANSITIONS + 1];
+    private final int[] mOffsetsMs = new int[MAX_TRANSITIONS + 1];
+    private int mCount;
+    private long mValidUntilMs = Long.MIN_VALUE;
+
+    /**
+     * Entry used by the last {@link #getOffset}, where the next lookup starts.
+     */
+    private int mIndex;
+
+    public ZoneTransitions(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    /**
+     * Recomputes the table for {@code fromMs} to {@code fromMs + horizonMs}.
+     */
+    public void rebuild(long fromMs, long horizonMs) {
+        long endMs = fromMs + horizonMs;
+        int offset = mTimeZone.getOffset(fromMs);
+        mStartsMs[0] = fromMs;
+        mOffsetsMs[0] = offset;
+        mCount = 1;
+        mIndex = 0;
+        long timeMs = fromMs;
+        while (timeMs < endMs) {
+            long nextMs = Math.min(timeMs + SCAN_STEP_MS, endMs);
+            if (mTimeZone.getOffset(nextMs) == offset) {
+                timeMs = nextMs;
+                continue;
+            }
+            // The offset is still the old one at timeMs and a new one at nextMs.
+            long before = timeMs;
+            long after = nextMs;
+            while (after - before > 1) {
+                long middle = before + (after - before) / 2;
+                if (mTimeZone.getOffset(middle) == offset) {
+                    before = middle;
+                } else {
+                    after = middle;
+                }
+            }
+            if (mCount == mStartsMs.length) {
+                endMs = after;
+                break;
+            }
+            offset = mTimeZone.getOffset(after);
+            mStartsMs[mCount] = after;
+            mOffsetsMs[mCount] = offset;
+            mCount++;
+            timeMs = after;
+        }
+        mValidUntilMs = endMs;
+    }
+
+    /**
+     * Returns whether {@code nowMs} is covered by the table.
+     */
+    public boolean isValid(long nowMs) {
+        return mCount > 0 && nowMs >= mStartsMs[0] && nowMs < mValidUntilMs;
+    }
+
+    /**
+     * Returns the zone's offset from UTC at {@code nowMs}, in milliseconds.
+     */
+    public int getOffset(long nowMs) {
+        if (!isValid(nowMs)) {
+            return mTimeZone.getOffset(nowMs);
+        }
+        if (nowMs < mStartsMs[mIndex]) {
+            // The clock went back; start again from the beginning of the table.
+            mIndex = 0;
+        }
+        while (mIndex + 1 < mCount && nowMs >= mStartsMs[mIndex + 1]) {
+            mIndex++;
+        }
+        return mOffsetsMs[mIndex];
+    }
+
+    /**
+     * Returns how many times the offset changes within the table.
+     */
+    public int getTransitionCount() {
+        return Math.max(0, mCount - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ZoneTransitions{").append(mTimeZone.getID());
+        for (int i = 0; i < mCount; i++) {
+            builder.append(i == 0 ? " from " : ", ").append(mStartsMs[i]).append(": ")
+                    .append(mOffsetsMs[i] / 60000).append("min");
+        }
+        return builder.append(" until ").append(mValidUntilMs).append('}').toString();
+    }
+}
@@ -0,0 +1,110 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class ClockModelTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+
+    private static final int CHANGED_ALL = ClockModel.CHANGED_SECOND | ClockModel.CHANGED_MINUTE
+            | ClockModel.CHANGED_HOUR | ClockModel.CHANGED_DAY;
+
+    @Test
+    public void withinAMinuteOnlyTheSecondChanges() {
+        ClockModel clock = new ClockModel(UTC);
+        long nowMs = utc(2016, Calendar.JUNE, 21, 12, 34, 56);
+        assertEquals(CHANGED_ALL, clock.update(nowMs));
+        assertEquals(0, clock.update(nowMs + 999));
+        assertEquals(ClockModel.CHANGED_SECOND, clock.update(nowMs + 1000));
+        assertEquals(57, clock.getSecond());
+        assertEquals(34, clock.getMinute());
+    }
+
+    @Test
+    public void midnightRolloverChangesTheDay() {
+        ClockModel clock = new ClockModel(UTC);
+        long nowMs = utc(2016, Calendar.JUNE, 21, 23, 59, 59);
+        clock.update(nowMs);
+        assertEquals(CHANGED_ALL, clock.update(nowMs + 1000));
+        assertEquals(0, clock.getMinuteOfDay());
+        assertEquals(0, clock.getSecond());
+    }
+
+    @Test
+    public void newYearChangesTheDay() {
+        ClockModel clock = new ClockModel(UTC);
+        long nowMs = utc(2016, Calendar.DECEMBER, 31, 23, 59, 59);
+        clock.update(nowMs);
+        assertEquals(CHANGED_ALL, clock.update(nowMs + 1000));
+        assertEquals(0, clock.getMinuteOfDay());
+    }
+
+    @Test
+    public void springForwardSkipsAnHour() {
+        ClockModel clock = new ClockModel(LOS_ANGELES);
+        // 01:59:59 PST, a second before the clocks go forward to 03:00 PDT.
+        long nowMs = utc(2016, Calendar.MARCH, 13, 9, 59, 59);
+        clock.update(nowMs);
+        assertEquals(1, clock.getHour());
+        assertEquals(ClockModel.CHANGED_SECOND | ClockModel.CHANGED_MINUTE
+                | ClockModel.CHANGED_HOUR, clock.update(nowMs + 1000));
+        assertEquals(3 * 60, clock.getMinuteOfDay());
+    }
+
+    @Test
+    public void fallBackRepeatsAnHour() {
+        ClockModel clock = new ClockModel(LOS_ANGELES);
+        // 01:59:59 PDT, a second before the clocks go back to 01:00 PST.
+        long nowMs = utc(2016, Calendar.NOVEMBER, 6, 8, 59, 59);
+        clock.update(nowMs);
+        assertEquals(ClockModel.CHANGED_SECOND | ClockModel.CHANGED_MINUTE,
+                clock.update(nowMs + 1000));
+        assertEquals(60, clock.getMinuteOfDay());
+        // The repeated hour ends an hour later, at 02:00 PST.
+        assertEquals(ClockModel.CHANGED_HOUR, clock.update(nowMs + 1000 + 60 * 60 * 1000));
+        assertEquals(2 * 60, clock.getMinuteOfDay());
+    }
+
+    @Test
+    public void clockSetBackWithinTheMinute() {
+        ClockModel clock = new ClockModel(UTC);
+        long nowMs = utc(2016, Calendar.JUNE, 21, 12, 34, 56);
+        clock.update(nowMs);
+        assertEquals(ClockModel.CHANGED_SECOND, clock.update(nowMs - 46 * 1000));
+        assertEquals(10, clock.getSecond());
+        assertEquals(12 * 60 + 34, clock.getMinuteOfDay());
+    }
+
+    @Test
+    public void clockSetBackADay() {
+        ClockModel clock = new ClockModel(UTC);
+        long nowMs = utc(2016, Calendar.JUNE, 21, 12, 34, 56);
+        clock.update(nowMs);
+        assertEquals(ClockModel.CHANGED_DAY, clock.update(nowMs - 24 * 60 * 60 * 1000));
+        assertEquals(12 * 60 + 34, clock.getMinuteOfDay());
+        assertEquals(56, clock.getSecond());
+    }
+
+    @Test
+    public void setTimeZoneMovesTheHour() {
+        ClockModel clock = new ClockModel(UTC);
+        long nowMs = utc(2016, Calendar.JUNE, 21, 12, 34, 56);
+        clock.update(nowMs);
+        clock.setTimeZone(LOS_ANGELES);
+        assertEquals(ClockModel.CHANGED_HOUR | ClockModel.CHANGED_DAY, clock.update(nowMs));
+        assertEquals(5 * 60 + 34, clock.getMinuteOfDay());
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute, int second) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+}
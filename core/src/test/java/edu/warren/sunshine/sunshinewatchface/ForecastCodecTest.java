@@ -0,0 +1,197 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class ForecastCodecTest {
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long FIRST_DAY = 16967 * DAY_MS; // 2016-06-14T00:00Z
+
+    @Test
+    public void roundTrip() {
+        Forecast sent = weekWithHours();
+        Forecast received = Forecast.fromPayload(sent.getPayload().clone());
+
+        assertEquals(sent, received);
+        assertEquals(7, received.getDayCount());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(FIRST_DAY + i * DAY_MS, received.getDayStart(i));
+            assertEquals(800 + i, received.getDayWeatherId(i));
+            assertEquals(dayHigh(i), received.getDayHigh(i));
+            assertEquals(dayHigh(i) - 85 - i * 3, received.getDayLow(i));
+            assertEquals(i * 12, received.getDayPrecipitation(i));
+        }
+        assertEquals(24, received.getHourCount());
+        for (int i = 0; i < 24; i++) {
+            assertEquals(FIRST_DAY + 6 * HOUR_MS + i * HOUR_MS, received.getHourTime(i));
+            assertEquals(i % 5 == 0 ? 500 : 801, received.getHourWeatherId(i));
+            assertEquals(hourTemp(i), received.getHourTemp(i));
+            assertEquals(i % 5 == 0 ? 7 : 0, received.getHourPrecipitation(i));
+        }
+    }
+
+    @Test
+    public void roundTripEmpty() {
+        Forecast received = Forecast.fromPayload(new Forecast.Builder().build().getPayload());
+        assertEquals(0, received.getDayCount());
+        assertEquals(0, received.getHourCount());
+    }
+
+    @Test
+    public void truncatesTimesToTheirUnit() {
+        Forecast forecast = new Forecast.Builder()
+                .addDay(FIRST_DAY + 5 * HOUR_MS, 800, 200, 100, 0)
+                .addHour(FIRST_DAY + 90 * 1000L, 800, 150, 0)
+                .build();
+        Forecast received = Forecast.fromPayload(forecast.getPayload());
+        assertEquals(FIRST_DAY, received.getDayStart(0));
+        assertEquals(FIRST_DAY + MINUTE_MS, received.getHourTime(0));
+    }
+
+    @Test
+    public void rejectsOtherVersions() {
+        byte[] payload = weekWithHours().getPayload().clone();
+        payload[0] = (byte) (ForecastCodec.VERSION + 1);
+        try {
+            Forecast.fromPayload(payload);
+            fail("Accepted version " + payload[0]);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPayload() {
+        Forecast.fromPayload(new byte[0]);
+    }
+
+    @Test
+    public void rejectsEveryTruncation() {
+        byte[] payload = weekWithHours().getPayload();
+        for (int length = 1; length < payload.length; length++) {
+            Forecast forecast = Forecast.fromPayload(Arrays.copyOf(payload, length));
+            try {
+                forecast.decode();
+                fail("Decoded a payload truncated to " + length + " of " + payload.length);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsImpossibleEntryCount() {
+        // A day count of 2^20 with nothing after it.
+        byte[] payload = {(byte) ForecastCodec.VERSION, (byte) 0x80, (byte) 0x80, 0x40};
+        Forecast.fromPayload(payload).decode();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedVarint() {
+        byte[] payload = new byte[16];
+        payload[0] = (byte) ForecastCodec.VERSION;
+        Arrays.fill(payload, 1, payload.length, (byte) 0xFF);
+        Forecast.fromPayload(payload).decode();
+    }
+
+    /**
+     * Compares the payload with the same forecast as separate DataMap entries, one int per field
+     * under keys like {@code DAY3_HIGH}, serialized the way a DataMap goes over the wire: a
+     * protobuf entry per key holding the key string and a typed value.
+     */
+    @Test
+    public void payloadIsAFractionOfTheDataMapForm() {
+        Forecast forecast = weekWithHours();
+        int payloadSize = forecast.getPayload().length;
+
+        ByteArrayOutputStream dataMap = new ByteArrayOutputStream();
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            writeEntry(dataMap, "DAY" + i + "_START", forecast.getDayStart(i));
+            writeEntry(dataMap, "DAY" + i + "_WEATHER_ID", forecast.getDayWeatherId(i));
+            writeEntry(dataMap, "DAY" + i + "_HIGH", forecast.getDayHigh(i));
+            writeEntry(dataMap, "DAY" + i + "_LOW", forecast.getDayLow(i));
+            writeEntry(dataMap, "DAY" + i + "_PRECIPITATION", forecast.getDayPrecipitation(i));
+        }
+        for (int i = 0; i < forecast.getHourCount(); i++) {
+            writeEntry(dataMap, "HOUR" + i + "_TIME", forecast.getHourTime(i));
+            writeEntry(dataMap, "HOUR" + i + "_WEATHER_ID", forecast.getHourWeatherId(i));
+            writeEntry(dataMap, "HOUR" + i + "_TEMP", forecast.getHourTemp(i));
+            writeEntry(dataMap, "HOUR" + i + "_PRECIPITATION",
+                    forecast.getHourPrecipitation(i));
+        }
+        int dataMapSize = dataMap.size();
+
+        System.out.println("Forecast payload " + payloadSize + " B, DataMap entries "
+                + dataMapSize + " B");
+        assertTrue("Payload is " + payloadSize + " B", payloadSize <= 256);
+        assertTrue("Payload " + payloadSize + " B vs DataMap " + dataMapSize + " B",
+                payloadSize * 10 < dataMapSize);
+    }
+
+    private static Forecast weekWithHours() {
+        Forecast.Builder builder = new Forecast.Builder();
+        for (int i = 0; i < 7; i++) {
+            builder.addDay(FIRST_DAY + i * DAY_MS, 800 + i, dayHigh(i), dayHigh(i) - 85 - i * 3,
+                    i * 12);
+        }
+        for (int i = 0; i < 24; i++) {
+            builder.addHour(FIRST_DAY + 6 * HOUR_MS + i * HOUR_MS, i % 5 == 0 ? 500 : 801,
+                    hourTemp(i), i % 5 == 0 ? 7 : 0);
+        }
+        return builder.build();
+    }
+
+    private static int dayHigh(int day) {
+        return 215 + (day % 3) * 20 - day * 4;
+    }
+
+    private static int hourTemp(int hour) {
+        // Below zero overnight, so negative deltas and values are covered too.
+        return -35 + Math.abs(12 - hour) * -9 + 140;
+    }
+
+    /**
+     * Writes a DataMap entry message: field 1, the key string; field 2, a value message holding
+     * its type tag and an int64 value.
+     */
+    private static void writeEntry(ByteArrayOutputStream out, String key, long value) {
+        byte[] keyBytes = key.getBytes(Charset.forName("UTF-8"));
+        ByteArrayOutputStream typed = new ByteArrayOutputStream();
+        writeTag(typed, 1, 0);
+        writeVarint(typed, 3); // int type
+        writeTag(typed, 2, 0);
+        writeVarint(typed, value);
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        writeTag(entry, 1, 2);
+        writeVarint(entry, keyBytes.length);
+        entry.write(keyBytes, 0, keyBytes.length);
+        writeTag(entry, 2, 2);
+        writeVarint(entry, typed.size());
+        entry.write(typed.toByteArray(), 0, typed.size());
+
+        writeTag(out, 1, 2);
+        writeVarint(out, entry.size());
+        out.write(entry.toByteArray(), 0, entry.size());
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, (field << 3) | wireType);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
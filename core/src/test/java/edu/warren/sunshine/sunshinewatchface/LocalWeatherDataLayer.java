@@ -0,0 +1,47 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+/**
+ * {@link WeatherDataLayer} that keeps the item in memory and counts the writes, standing in for
+ * the Wearable data layer when a {@link WeatherPublisher} is tested on the JVM.
+ */
+final class LocalWeatherDataLayer implements WeatherDataLayer {
+
+    private WeatherState mItem;
+    private int mPuts;
+    private int mUrgentPuts;
+
+    @Override
+    public WeatherState getWeather() {
+        return mItem;
+    }
+
+    @Override
+    public void putWeather(WeatherState state, boolean urgent) {
+        mItem = state;
+        mPuts++;
+        if (urgent) {
+            mUrgentPuts++;
+        }
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    public int getPutCount() {
+        return mPuts;
+    }
+
+    /**
+     * Returns how many writes forced an immediate sync, each one a radio wakeup on both devices.
+     */
+    public int getUrgentPutCount() {
+        return mUrgentPuts;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalWeatherDataLayer{puts=" + mPuts + ", urgent=" + mUrgentPuts
+                + ", item=" + mItem + "}";
+    }
+}
@@ -0,0 +1,49 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParticleSystemTest {
+
+    private static final long START_MS = 1466488800000L;
+
+    private ParticleSystem mParticles;
+
+    @Before
+    public void setUp() {
+        mParticles = new ParticleSystem(500, 1);
+        mParticles.setArea(0, 0, 320, 160);
+        mParticles.setStyle(ParticleSystem.STYLE_STORM);
+    }
+
+    @Test
+    public void firstUpdatePrefillsTheLimit() {
+        mParticles.setLimit(100);
+        mParticles.update(START_MS);
+        assertEquals(100, mParticles.getCount());
+    }
+
+    @Test
+    public void keepsTheLimitAliveWhileFalling() {
+        mParticles.update(START_MS);
+        for (int frame = 1; frame <= 300; frame++) {
+            mParticles.update(START_MS + frame * ParticleSystem.FRAME_INTERVAL_MS);
+        }
+        assertTrue(mParticles.getCount() > 450);
+    }
+
+    @Test
+    public void clockSetBackKeepsParticlesFalling() {
+        mParticles.update(START_MS);
+        mParticles.update(START_MS - 24 * 60 * 60 * 1000L);
+        assertEquals(500, mParticles.getCount());
+        for (int frame = 1; frame <= 300; frame++) {
+            mParticles.update(START_MS - 24 * 60 * 60 * 1000L
+                    + frame * ParticleSystem.FRAME_INTERVAL_MS);
+        }
+        assertTrue(mParticles.getCount() > 450);
+    }
+}
@@ -0,0 +1,168 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderGovernorTest {
+
+    private static final long BUDGET_NS = RenderGovernor.DEFAULT_BUDGET_NS;
+    private static final long SECOND_NS = 1000L * 1000 * 1000;
+    private static final long MINUTE_NS = 60 * SECOND_NS;
+
+    private RenderGovernor mGovernor;
+    private long mNowNs;
+
+    @Before
+    public void setUp() {
+        mGovernor = new RenderGovernor(BUDGET_NS);
+        mNowNs = 1000 * SECOND_NS;
+    }
+
+    @Test
+    public void isolatedSpikesDoNotStepDown() {
+        // One frame at twice the budget in every window, like an icon decode now and then.
+        for (int i = 0; i < 50 * RenderGovernor.WINDOW_FRAMES; i++) {
+            boolean spike = i % RenderGovernor.WINDOW_FRAMES == 3;
+            frames(1, spike ? 2 * BUDGET_NS : BUDGET_NS / 4, SECOND_NS);
+        }
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+        assertEquals(0, mGovernor.getStepDowns());
+    }
+
+    @Test
+    public void sustainedOverloadStepsDown() {
+        frames(RenderGovernor.WINDOW_FRAMES, 5 * BUDGET_NS / 2, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+        assertFalse(mGovernor.isShowingSeconds());
+
+        frames(10 * RenderGovernor.WINDOW_FRAMES, 5 * BUDGET_NS / 2, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_EFFECTS, mGovernor.getLevel());
+        assertEquals(RenderGovernor.LEVEL_NO_EFFECTS, mGovernor.getStepDowns());
+        assertTrue(mGovernor.isSunFrozen());
+        assertFalse(mGovernor.areEffectsEnabled());
+    }
+
+    @Test
+    public void nearBudgetDoesNotFlap() {
+        frames(RenderGovernor.WINDOW_FRAMES, 2 * BUDGET_NS, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+
+        // Within the budget, so no step down, but not within half of it, so no step up either.
+        frames(1000, BUDGET_NS * 4 / 5, SECOND_NS);
+        frames(100, BUDGET_NS * 4 / 5, MINUTE_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+        assertEquals(1, mGovernor.getStepDowns());
+        assertEquals(0, mGovernor.getStepUps());
+    }
+
+    @Test
+    public void recoveryTakesRecoveryTime() {
+        frames(RenderGovernor.WINDOW_FRAMES, 2 * BUDGET_NS, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+
+        int calmFrames = (int) (RenderGovernor.RECOVERY_NS / (100 * 1000 * 1000));
+        frames(calmFrames, BUDGET_NS / 4, 100 * 1000 * 1000);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+        frames(1, BUDGET_NS / 4, 100 * 1000 * 1000);
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+        assertEquals(1, mGovernor.getStepUps());
+    }
+
+    @Test
+    public void slowFrameRestartsRecovery() {
+        frames(RenderGovernor.WINDOW_FRAMES, 2 * BUDGET_NS, SECOND_NS);
+
+        int halfway = (int) (RenderGovernor.RECOVERY_NS / SECOND_NS / 2);
+        frames(halfway, BUDGET_NS / 4, SECOND_NS);
+        frames(1, BUDGET_NS * 3 / 4, SECOND_NS);
+        frames(halfway + 2, BUDGET_NS / 4, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+        frames(halfway, BUDGET_NS / 4, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+    }
+
+    @Test
+    public void recoversAtOneFrameAMinute() {
+        frames(3 * RenderGovernor.WINDOW_FRAMES, 2 * BUDGET_NS, SECOND_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_EFFECTS, mGovernor.getLevel());
+
+        // Without seconds the face only draws once a minute; each level takes one more frame.
+        frames(2, BUDGET_NS / 4, MINUTE_NS);
+        assertEquals(RenderGovernor.LEVEL_FROZEN_SUN, mGovernor.getLevel());
+        frames(1, BUDGET_NS / 4, MINUTE_NS);
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+        frames(1, BUDGET_NS / 4, MINUTE_NS);
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+        assertEquals(3, mGovernor.getStepUps());
+    }
+
+    @Test
+    public void lowBatteryFloorAndMargin() {
+        assertFalse(mGovernor.setBattery(RenderGovernor.LOW_BATTERY_PERCENT, false));
+        assertTrue(mGovernor.setBattery(RenderGovernor.LOW_BATTERY_PERCENT - 1, false));
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+
+        int lifted = RenderGovernor.LOW_BATTERY_PERCENT + RenderGovernor.BATTERY_MARGIN_PERCENT;
+        for (int percent = RenderGovernor.LOW_BATTERY_PERCENT; percent < lifted; percent++) {
+            assertFalse(mGovernor.setBattery(percent, false));
+            assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+        }
+        assertTrue(mGovernor.setBattery(lifted, false));
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+    }
+
+    @Test
+    public void criticalBatteryFloorAndMargin() {
+        mGovernor.setBattery(RenderGovernor.CRITICAL_BATTERY_PERCENT - 1, false);
+        assertEquals(RenderGovernor.LEVEL_NO_EFFECTS, mGovernor.getLevel());
+
+        int lifted = RenderGovernor.CRITICAL_BATTERY_PERCENT
+                + RenderGovernor.BATTERY_MARGIN_PERCENT;
+        for (int percent = RenderGovernor.CRITICAL_BATTERY_PERCENT; percent < lifted;
+                percent++) {
+            assertFalse(mGovernor.setBattery(percent, false));
+            assertEquals(RenderGovernor.LEVEL_NO_EFFECTS, mGovernor.getLevel());
+        }
+        assertTrue(mGovernor.setBattery(lifted, false));
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+    }
+
+    @Test
+    public void chargingLiftsTheFloor() {
+        mGovernor.setBattery(2, false);
+        assertTrue(mGovernor.setBattery(2, true));
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+        assertTrue(mGovernor.setBattery(8, false));
+        assertEquals(RenderGovernor.LEVEL_NO_SECONDS, mGovernor.getLevel());
+    }
+
+    @Test
+    public void batteryFloorDoesNotHideLoadLevel() {
+        frames(2 * RenderGovernor.WINDOW_FRAMES, 2 * BUDGET_NS, SECOND_NS);
+        mGovernor.setBattery(10, false);
+        assertEquals(RenderGovernor.LEVEL_FROZEN_SUN, mGovernor.getLevel());
+    }
+
+    @Test
+    public void suspendedDrawsFull() {
+        mGovernor.setBattery(2, false);
+        assertTrue(mGovernor.setSuspended(true));
+        assertEquals(RenderGovernor.LEVEL_FULL, mGovernor.getLevel());
+        assertTrue(mGovernor.setSuspended(false));
+        assertEquals(RenderGovernor.LEVEL_NO_EFFECTS, mGovernor.getLevel());
+    }
+
+    /**
+     * Records {@code count} frames taking {@code durationNs}, one every {@code intervalNs}.
+     */
+    private void frames(int count, long durationNs, long intervalNs) {
+        for (int i = 0; i < count; i++) {
+            mNowNs += intervalNs;
+            mGovernor.recordFrame(mNowNs, durationNs);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderLayersTest {
+
+    private RenderLayers mLayers;
+    private int mIcon;
+    private int mTemperature;
+    private int mDate;
+    private int mTime;
+
+    @Before
+    public void setUp() {
+        mLayers = new RenderLayers();
+        mIcon = mLayers.addLayer("icon", RenderLayers.TRIGGER_DATA);
+        mTemperature = mLayers.addLayer("temperature", RenderLayers.TRIGGER_DATA);
+        mDate = mLayers.addLayer("date", RenderLayers.TRIGGER_DAY);
+        mTime = mLayers.addLayer("time", RenderLayers.TRIGGER_SECOND);
+        mLayers.onDrawn(mIcon, mTime);
+        mLayers.resetCounts();
+    }
+
+    @Test
+    public void invalidateMarksOnlyLayersWithTheTrigger() {
+        mLayers.invalidate(RenderLayers.TRIGGER_DAY);
+        assertFalse(mLayers.isDirty(mIcon));
+        assertTrue(mLayers.isDirty(mDate));
+        assertFalse(mLayers.isDirty(mTime));
+        assertTrue(mLayers.isAnyDirty(mIcon, mDate));
+        assertFalse(mLayers.isAnyDirty(mIcon, mTemperature));
+    }
+
+    @Test
+    public void rangeDrawnCountsOnlyDirtyLayers() {
+        mLayers.invalidateLayer(mTemperature);
+        mLayers.onDrawn(mIcon, mDate);
+        mLayers.invalidateLayer(mDate);
+        mLayers.onDrawn(mIcon, mDate);
+
+        assertEquals(0, mLayers.getRedrawCount(mIcon));
+        assertEquals(1, mLayers.getRedrawCount(mTemperature));
+        assertEquals(1, mLayers.getRedrawCount(mDate));
+        assertFalse(mLayers.isAnyDirty(mIcon, mTime));
+    }
+
+    @Test
+    public void rangeDrawnLeavesLayersOutsideTheRange() {
+        mLayers.invalidateAll();
+        mLayers.onDrawn(mIcon, mDate);
+        assertTrue(mLayers.isDirty(mTime));
+        assertEquals(0, mLayers.getRedrawCount(mTime));
+    }
+
+    @Test
+    public void layerWithoutTriggersIsOnlyInvalidatedDirectly() {
+        mLayers.setTriggers(mDate, 0);
+        mLayers.invalidate(RenderLayers.TRIGGER_DAY | RenderLayers.TRIGGER_MINUTE);
+        assertFalse(mLayers.isDirty(mDate));
+        mLayers.invalidateAll();
+        assertTrue(mLayers.isDirty(mDate));
+    }
+}
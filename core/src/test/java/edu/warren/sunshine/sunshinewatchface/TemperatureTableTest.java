@@ -0,0 +1,67 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+public class TemperatureTableTest {
+
+    private static final String PATTERN = "%1.0f";
+
+    @Test
+    public void celsiusMatchesStringFormat() {
+        assertMatchesStringFormat(TemperatureTable.UNIT_CELSIUS);
+    }
+
+    @Test
+    public void fahrenheitMatchesStringFormat() {
+        assertMatchesStringFormat(TemperatureTable.UNIT_FAHRENHEIT);
+    }
+
+    @Test
+    public void fahrenheitRoundsNegativeCelsiusOnce() {
+        TemperatureTable table = new TemperatureTable(PATTERN, "--", Locale.US,
+                TemperatureTable.UNIT_FAHRENHEIT);
+        assertEquals("31", table.toString(-3));
+        assertEquals("26", table.toString(-31));
+        assertEquals("2", table.toString(-164));
+    }
+
+    @Test
+    public void unknownTemperature() {
+        TemperatureTable table = new TemperatureTable(PATTERN, "--", Locale.US,
+                TemperatureTable.UNIT_CELSIUS);
+        assertEquals("--", table.toString(WeatherState.UNKNOWN_TEMPERATURE));
+    }
+
+    @Test
+    public void formatHighLow() {
+        TemperatureTable table = new TemperatureTable(PATTERN, "--", Locale.US,
+                TemperatureTable.UNIT_CELSIUS);
+        char[] buffer = new char[table.getMaxHighLowLength()];
+        int length = table.formatHighLow(buffer, 215, -36);
+        assertEquals("22 -4", new String(buffer, 0, length));
+    }
+
+    /**
+     * Compares every tenth of a degree in the table's range with {@code String.format} of the
+     * exact value. {@code %.0f} writes values that round to zero from below as "-0", which the
+     * table shows as "0".
+     */
+    private static void assertMatchesStringFormat(int unit) {
+        TemperatureTable table = new TemperatureTable(PATTERN, "--", Locale.US, unit);
+        for (int tenths = TemperatureTable.MIN_CELSIUS * 10;
+                tenths <= TemperatureTable.MAX_CELSIUS * 10; tenths++) {
+            double celsius = tenths / 10.0;
+            double value = unit == TemperatureTable.UNIT_FAHRENHEIT ? celsius * 9 / 5 + 32
+                    : celsius;
+            String expected = String.format(Locale.US, PATTERN, value);
+            if (expected.equals("-0")) {
+                expected = "0";
+            }
+            assertEquals("tenths=" + tenths, expected, table.toString(tenths));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WeatherPublisherTest {
+
+    private static final long INTERVAL_MS = WeatherPublisher.DEFAULT_MIN_INTERVAL_MS;
+    private static final int SIGNIFICANT = WeatherPublisher.DEFAULT_SIGNIFICANT_TEMP_CHANGE;
+
+    private LocalWeatherDataLayer mDataLayer;
+    private WeatherPublisher mPublisher;
+
+    @Before
+    public void setUp() {
+        mDataLayer = new LocalWeatherDataLayer();
+        mPublisher = new WeatherPublisher(mDataLayer);
+    }
+
+    @Test
+    public void firstPublishIsUrgent() {
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT,
+                mPublisher.publish(sunny(200, 100), 0));
+        assertEquals(1, mDataLayer.getPutCount());
+        assertEquals(200, mDataLayer.getWeather().getHighTemp());
+    }
+
+    @Test
+    public void unchangedUpdateIsSuppressed() {
+        mPublisher.publish(sunny(200, 100), 0);
+        assertEquals(WeatherPublisher.RESULT_UNCHANGED,
+                mPublisher.publish(sunny(200, 100), 2 * INTERVAL_MS));
+        assertEquals(WeatherPublisher.RESULT_UNCHANGED,
+                mPublisher.publish(new WeatherState.Update().setHighTemp(200), 3 * INTERVAL_MS));
+        assertEquals(1, mDataLayer.getPutCount());
+        assertEquals(-1, mPublisher.getFlushDelayMs(3 * INTERVAL_MS));
+    }
+
+    @Test
+    public void updatesWithinIntervalAreCoalescedAndFlushed() {
+        mPublisher.publish(sunny(200, 100), 0);
+        assertEquals(WeatherPublisher.RESULT_DEFERRED,
+                mPublisher.publish(new WeatherState.Update().setHighTemp(205), 10 * 1000));
+        assertEquals(WeatherPublisher.RESULT_DEFERRED,
+                mPublisher.publish(new WeatherState.Update().setLowTemp(95), 20 * 1000));
+        assertEquals(1, mDataLayer.getPutCount());
+        assertEquals(INTERVAL_MS - 20 * 1000, mPublisher.getFlushDelayMs(20 * 1000));
+
+        assertEquals(WeatherPublisher.RESULT_DEFERRED, mPublisher.flush(INTERVAL_MS - 1));
+        assertEquals(1, mDataLayer.getPutCount());
+
+        assertEquals(0, mPublisher.getFlushDelayMs(INTERVAL_MS));
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED, mPublisher.flush(INTERVAL_MS));
+        assertEquals(2, mDataLayer.getPutCount());
+        assertEquals(205, mDataLayer.getWeather().getHighTemp());
+        assertEquals(95, mDataLayer.getWeather().getLowTemp());
+        assertEquals(-1, mPublisher.getFlushDelayMs(INTERVAL_MS));
+    }
+
+    @Test
+    public void nextWriteWaitsForIntervalAfterFlush() {
+        mPublisher.publish(sunny(200, 100), 0);
+        mPublisher.publish(new WeatherState.Update().setHighTemp(205), 1000);
+        mPublisher.flush(INTERVAL_MS);
+        assertEquals(WeatherPublisher.RESULT_DEFERRED,
+                mPublisher.publish(new WeatherState.Update().setHighTemp(210), INTERVAL_MS + 1));
+        assertEquals(INTERVAL_MS - 1, mPublisher.getFlushDelayMs(INTERVAL_MS + 1));
+    }
+
+    @Test
+    public void deferredChangeUndoneIsNotWritten() {
+        mPublisher.publish(sunny(200, 100), 0);
+        mPublisher.publish(new WeatherState.Update().setHighTemp(205), 1000);
+        assertEquals(WeatherPublisher.RESULT_UNCHANGED,
+                mPublisher.publish(new WeatherState.Update().setHighTemp(200), 2000));
+        assertEquals(-1, mPublisher.getFlushDelayMs(2000));
+        assertEquals(WeatherPublisher.RESULT_UNCHANGED, mPublisher.flush(INTERVAL_MS));
+        assertEquals(1, mDataLayer.getPutCount());
+    }
+
+    @Test
+    public void conditionChangeIsUrgent() {
+        mPublisher.publish(sunny(200, 100), 0);
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT,
+                mPublisher.publish(new WeatherState.Update().setWeatherId(500), INTERVAL_MS));
+    }
+
+    @Test
+    public void unitChangeIsUrgent() {
+        mPublisher.publish(sunny(200, 100), 0);
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT, mPublisher.publish(
+                new WeatherState.Update().setTemperatureUnit(TemperatureTable.UNIT_FAHRENHEIT),
+                INTERVAL_MS));
+    }
+
+    @Test
+    public void temperatureChangeIsUrgentFromThreshold() {
+        mPublisher.publish(sunny(200, 100), 0);
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED, mPublisher.publish(
+                new WeatherState.Update().setHighTemp(200 + SIGNIFICANT - 1), INTERVAL_MS));
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT, mPublisher.publish(
+                new WeatherState.Update().setLowTemp(100 - SIGNIFICANT), 2 * INTERVAL_MS));
+        // Measured from what was last written, not from the first value.
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED, mPublisher.publish(
+                new WeatherState.Update().setHighTemp(200 + 2 * SIGNIFICANT - 2),
+                3 * INTERVAL_MS));
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT, mPublisher.publish(
+                new WeatherState.Update().setHighTemp(200 - SIGNIFICANT), 4 * INTERVAL_MS));
+    }
+
+    @Test
+    public void temperatureBecomingKnownIsUrgent() {
+        mPublisher.publish(new WeatherState.Update().setWeatherId(800), 0);
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT,
+                mPublisher.publish(new WeatherState.Update().setHighTemp(200), INTERVAL_MS));
+    }
+
+    @Test
+    public void otherChangesAreNotUrgent() {
+        mPublisher.publish(sunny(200, 100), 0);
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED, mPublisher.publish(
+                new WeatherState.Update().setLocation(48.85, 2.35), INTERVAL_MS));
+        Forecast forecast = new Forecast.Builder().addHour(0, 800, 150, 0).build();
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED, mPublisher.publish(
+                new WeatherState.Update().setForecast(forecast), 2 * INTERVAL_MS));
+        assertEquals(1, mDataLayer.getUrgentPutCount());
+    }
+
+    @Test
+    public void coalescedUpdatesAreUrgentIfAnyIs() {
+        mPublisher.publish(sunny(200, 100), 0);
+        mPublisher.publish(new WeatherState.Update().setWeatherId(500), 1000);
+        mPublisher.publish(new WeatherState.Update().setLocation(48.85, 2.35), 2000);
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED_URGENT, mPublisher.flush(INTERVAL_MS));
+    }
+
+    @Test
+    public void restorePreventsResend() {
+        WeatherState published = WeatherState.DEFAULT.apply(sunny(200, 100));
+        mPublisher.restore(published);
+
+        assertEquals(WeatherPublisher.RESULT_UNCHANGED, mPublisher.publish(sunny(200, 100), 0));
+        assertEquals(0, mDataLayer.getPutCount());
+
+        // Nothing has been written by this publisher, so there is no interval to wait for, and
+        // the change is judged against the restored weather rather than treated as the first.
+        assertEquals(WeatherPublisher.RESULT_PUBLISHED,
+                mPublisher.publish(new WeatherState.Update().setHighTemp(205), 1000));
+        assertEquals(0, mDataLayer.getUrgentPutCount());
+    }
+
+    @Test
+    public void countersAddUp() {
+        mPublisher.publish(sunny(200, 100), 0);                                  // urgent
+        mPublisher.publish(sunny(200, 100), 1000);                               // unchanged
+        mPublisher.publish(new WeatherState.Update().setHighTemp(205), 2000);    // coalesced
+        mPublisher.publish(new WeatherState.Update().setLowTemp(95), 3000);      // coalesced
+        mPublisher.flush(INTERVAL_MS);                                           // published
+        mPublisher.publish(new WeatherState.Update().setWeatherId(500), 3 * INTERVAL_MS);
+
+        assertEquals(5, mPublisher.getUpdateCount());
+        assertEquals(3, mPublisher.getPublishedCount());
+        assertEquals(2, mPublisher.getUrgentCount());
+        assertEquals(1, mPublisher.getUnchangedCount());
+        assertEquals(2, mPublisher.getCoalescedCount());
+        assertEquals(3, mPublisher.getSuppressedCount());
+        assertEquals(mPublisher.getPublishedCount(), mDataLayer.getPutCount());
+        assertEquals(mPublisher.getUrgentCount(), mDataLayer.getUrgentPutCount());
+    }
+
+    @Test
+    public void writesTheLatestState() {
+        mPublisher.publish(sunny(200, 100), 0);
+        WeatherState written = mDataLayer.getWeather();
+        mPublisher.publish(sunny(200, 100), INTERVAL_MS);
+        assertSame(written, mDataLayer.getWeather());
+    }
+
+    private static WeatherState.Update sunny(int high, int low) {
+        return new WeatherState.Update().setWeatherId(800).setHighTemp(high).setLowTemp(low);
+    }
+}
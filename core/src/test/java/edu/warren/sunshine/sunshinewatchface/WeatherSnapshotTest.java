@@ -0,0 +1,147 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+public class WeatherSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private WeatherSnapshot mSnapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), "weather_snapshot.bin");
+        mSnapshot = new WeatherSnapshot(mFile);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        WeatherState state = fullState();
+        mSnapshot.write(state);
+
+        WeatherState read = mSnapshot.read();
+        assertNotNull(read);
+        assertEquals(0, state.diff(read));
+        assertEquals(48.85, read.getLatitude(), 0);
+        assertEquals(TemperatureTable.UNIT_FAHRENHEIT, read.getTemperatureUnit());
+        assertEquals(state.getForecast(), read.getForecast());
+    }
+
+    @Test
+    public void roundTripWithoutLocationOrForecast() throws IOException {
+        WeatherState state = WeatherState.DEFAULT.apply(new WeatherState.Update()
+                .setWeatherId(500).setHighTemp(-35).setLowTemp(-120));
+        mSnapshot.write(state);
+
+        WeatherState read = mSnapshot.read();
+        assertNotNull(read);
+        assertEquals(0, state.diff(read));
+        assertFalse(read.hasLocation());
+        assertNull(read.getForecast());
+    }
+
+    @Test
+    public void writeReplacesAndLeavesNoTempFile() throws IOException {
+        mSnapshot.write(fullState());
+        WeatherState second = WeatherState.DEFAULT.apply(new WeatherState.Update()
+                .setWeatherId(200).setHighTemp(100).setLowTemp(50));
+        mSnapshot.write(second);
+
+        assertEquals(0, second.diff(mSnapshot.read()));
+        assertEquals(1, mFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void missingFileReadsAsNull() {
+        assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void everyTruncationReadsAsNull() throws IOException {
+        mSnapshot.write(fullState());
+        byte[] bytes = readFile();
+        for (int length = 0; length < bytes.length; length++) {
+            writeFile(Arrays.copyOf(bytes, length));
+            assertNull("Read a snapshot truncated to " + length + " of " + bytes.length,
+                    mSnapshot.read());
+        }
+    }
+
+    @Test
+    public void otherVersionReadsAsNull() throws IOException {
+        mSnapshot.write(fullState());
+        byte[] bytes = readFile();
+        bytes[4]++; // The version, after the magic.
+        writeFile(bytes);
+        assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void otherFileReadsAsNull() throws IOException {
+        mSnapshot.write(fullState());
+        byte[] bytes = readFile();
+        bytes[0] = 'X';
+        writeFile(bytes);
+        assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void damagedForecastReadsAsNull() throws IOException {
+        mSnapshot.write(fullState());
+        byte[] bytes = readFile();
+        int payloadLength = fullState().getForecast().getPayload().length;
+        bytes[bytes.length - payloadLength]++; // The forecast's own version.
+        writeFile(bytes);
+        assertNull(mSnapshot.read());
+    }
+
+    private static WeatherState fullState() {
+        Forecast forecast = new Forecast.Builder()
+                .addDay(16967 * 24 * 3600 * 1000L, 800, 215, 130, 0)
+                .addHour(16967 * 24 * 3600 * 1000L, 801, 140, 3)
+                .build();
+        return WeatherState.DEFAULT.apply(new WeatherState.Update()
+                .setWeatherId(801)
+                .setHighTemp(215)
+                .setLowTemp(130)
+                .setLocation(48.85, 2.35)
+                .setTemperatureUnit(TemperatureTable.UNIT_FAHRENHEIT)
+                .setForecast(forecast));
+    }
+
+    private byte[] readFile() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            return bytes;
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeFile(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WeatherDataLayer} over the Wearable data layer. Every call blocks until the data layer
+ * has answered, so it must be used from a background thread.
+ */
+public class WearableWeatherDataLayer implements WeatherDataLayer {
+    private static final String TAG = "WearableWeatherDataLayer";
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final GoogleApiClient mGoogleApiClient;
+
+    public WearableWeatherDataLayer(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    /**
+     * Reads back the item this phone last wrote.
+     */
+    @Override
+    public WeatherState getWeather() {
+        if (!connect()) {
+            return null;
+        }
+        NodeApi.GetLocalNodeResult localNode = Wearable.NodeApi.getLocalNode(mGoogleApiClient)
+                .await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!localNode.getStatus().isSuccess()) {
+            return null;
+        }
+        Uri uri = new Uri.Builder()
+                .scheme("wear")
+                .path(WeatherDataItem.PATH)
+                .authority(localNode.getNode().getId())
+                .build();
+        DataApi.DataItemResult result = Wearable.DataApi.getDataItem(mGoogleApiClient, uri)
+                .await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.getStatus().isSuccess() || result.getDataItem() == null) {
+            return null;
+        }
+        return readWeather(DataMapItem.fromDataItem(result.getDataItem()).getDataMap());
+    }
+
+    @Override
+    public void putWeather(WeatherState state, boolean urgent) {
+        if (!connect()) {
+            Log.w(TAG, "Not connected; dropping " + state);
+            return;
+        }
+        PutDataMapRequest request = PutDataMapRequest.create(WeatherDataItem.PATH);
+        if (urgent) {
+            request.setUrgent();
+        }
+        writeWeather(state, request.getDataMap());
+        request.getDataMap().putLong(WeatherDataItem.KEY_PUBLISHED_MS, System.currentTimeMillis());
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient,
+                request.asPutDataRequest()).await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "putDataItem " + (urgent ? "(urgent) " : "") + state + ": "
+                    + result.getStatus());
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        mGoogleApiClient.disconnect();
+    }
+
+    private boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        ConnectionResult result = mGoogleApiClient.blockingConnect(TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+        if (!result.isSuccess()) {
+            Log.w(TAG, "Couldn't connect: " + result);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Puts every field of {@code state} into {@code config}, with the keys the watch face reads.
+     * Fields the state doesn't have, like an unknown location or forecast, are left out.
+     */
+    static void writeWeather(WeatherState state, DataMap config) {
+        config.putInt(WeatherDataItem.KEY_WEATHER_IMAGE, state.getWeatherId());
+        config.putInt(WeatherDataItem.KEY_HIGH_TEMP, state.getHighTemp());
+        config.putInt(WeatherDataItem.KEY_LOW_TEMP, state.getLowTemp());
+        config.putInt(WeatherDataItem.KEY_TEMPERATURE_UNIT, state.getTemperatureUnit());
+        if (state.hasLocation()) {
+            config.putDouble(WeatherDataItem.KEY_LATITUDE, state.getLatitude());
+            config.putDouble(WeatherDataItem.KEY_LONGITUDE, state.getLongitude());
+        }
+        if (state.getForecast() != null) {
+            config.putByteArray(WeatherDataItem.KEY_FORECAST, state.getForecast().getPayload());
+        }
+    }
+
+    /**
+     * Reads what {@link #writeWeather} wrote, or returns null if it can't be read.
+     */
+    static WeatherState readWeather(DataMap config) {
+        WeatherState.Update update = new WeatherState.Update()
+                .setWeatherId(config.getInt(WeatherDataItem.KEY_WEATHER_IMAGE))
+                .setHighTemp(config.getInt(WeatherDataItem.KEY_HIGH_TEMP,
+                        WeatherState.UNKNOWN_TEMPERATURE))
+                .setLowTemp(config.getInt(WeatherDataItem.KEY_LOW_TEMP,
+                        WeatherState.UNKNOWN_TEMPERATURE))
+                .setTemperatureUnit(config.getInt(WeatherDataItem.KEY_TEMPERATURE_UNIT));
+        if (config.containsKey(WeatherDataItem.KEY_LATITUDE)
+                && config.containsKey(WeatherDataItem.KEY_LONGITUDE)) {
+            update.setLocation(config.getDouble(WeatherDataItem.KEY_LATITUDE),
+                    config.getDouble(WeatherDataItem.KEY_LONGITUDE));
+        }
+        if (config.containsKey(WeatherDataItem.KEY_FORECAST)) {
+            try {
+                update.setForecast(Forecast.fromPayload(
+                        config.getByteArray(WeatherDataItem.KEY_FORECAST)));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unreadable forecast in the weather item", e);
+                return null;
+            }
+        }
+        return WeatherState.DEFAULT.apply(update);
+    }
+}
@@ -0,0 +1,196 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Sends the phone's weather to the watch face through a {@link WeatherPublisher}, so that syncs
+ * that repeat the last result, and bursts of updates, don't each wake the radios.
+ * <p>
+ * The phone's weather sync starts the service after every sync, with an intent built like
+ * {@link #publish} builds it: the {@link #ACTION_PUBLISH_WEATHER} action, this package and class,
+ * and extras named like the {@link WeatherDataItem} keys, of which only the ones present are
+ * changed. The sync runs in the weather app, so the service is exported, guarded by the
+ * signature permission {@link #PERMISSION_PUBLISH_WEATHER}. The service stays running while a write is deferred and stops once nothing is left
+ * to send. All data layer work happens on a background thread.
+ */
+public class WeatherPublishService extends Service {
+    private static final String TAG = "WeatherPublishService";
+
+    public static final String ACTION_PUBLISH_WEATHER =
+            "edu.warren.sunshine.sunshinewatchface.action.PUBLISH_WEATHER";
+
+    public static final String PERMISSION_PUBLISH_WEATHER =
+            "edu.warren.sunshine.sunshinewatchface.permission.PUBLISH_WEATHER";
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private WeatherDataLayer mDataLayer;
+    private WeatherPublisher mPublisher;
+    private int mLastStartId;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            mPublisher.flush(SystemClock.elapsedRealtime());
+            scheduleFlushOrStop();
+        }
+    };
+
+    /**
+     * Starts the service to publish the fields of {@code update}.
+     */
+    public static void publish(Context context, WeatherState.Update update) {
+        Intent intent = new Intent(context, WeatherPublishService.class)
+                .setAction(ACTION_PUBLISH_WEATHER);
+        int fields = update.getFields();
+        if ((fields & WeatherState.FIELD_WEATHER_ID) != 0) {
+            intent.putExtra(WeatherDataItem.KEY_WEATHER_IMAGE, update.getWeatherId());
+        }
+        if ((fields & WeatherState.FIELD_HIGH_TEMP) != 0) {
+            intent.putExtra(WeatherDataItem.KEY_HIGH_TEMP, update.getHighTemp());
+        }
+        if ((fields & WeatherState.FIELD_LOW_TEMP) != 0) {
+            intent.putExtra(WeatherDataItem.KEY_LOW_TEMP, update.getLowTemp());
+        }
+        if ((fields & WeatherState.FIELD_LOCATION) != 0) {
+            intent.putExtra(WeatherDataItem.KEY_LATITUDE, update.getLatitude());
+            intent.putExtra(WeatherDataItem.KEY_LONGITUDE, update.getLongitude());
+        }
+        if ((fields & WeatherState.FIELD_TEMPERATURE_UNIT) != 0) {
+            intent.putExtra(WeatherDataItem.KEY_TEMPERATURE_UNIT, update.getTemperatureUnit());
+        }
+        if ((fields & WeatherState.FIELD_FORECAST) != 0 && update.getForecast() != null) {
+            intent.putExtra(WeatherDataItem.KEY_FORECAST, update.getForecast().getPayload());
+        }
+        context.startService(intent);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mDataLayer = createDataLayer();
+        mPublisher = new WeatherPublisher(mDataLayer);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                WeatherState published = mDataLayer.getWeather();
+                if (published != null) {
+                    mPublisher.restore(published);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, final int startId) {
+        final WeatherState.Update update = intent != null
+                && ACTION_PUBLISH_WEATHER.equals(intent.getAction())
+                ? readUpdate(intent) : new WeatherState.Update();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mLastStartId = startId;
+                if (!update.isEmpty()) {
+                    mPublisher.publish(update, SystemClock.elapsedRealtime());
+                }
+                scheduleFlushOrStop();
+            }
+        });
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Returns the data layer the weather is written to. The tests keep it in memory instead.
+     */
+    WeatherDataLayer createDataLayer() {
+        return new WearableWeatherDataLayer(this);
+    }
+
+    /**
+     * Returns the looper of the thread the data layer work runs on, for the tests to run it.
+     */
+    Looper getWorkLooper() {
+        return mThread.getLooper();
+    }
+
+    /**
+     * Schedules the deferred write, if there is one, or stops the service. Runs on
+     * {@link #mThread}.
+     */
+    private void scheduleFlushOrStop() {
+        mHandler.removeCallbacks(mFlush);
+        long delayMs = mPublisher.getFlushDelayMs(SystemClock.elapsedRealtime());
+        if (delayMs >= 0) {
+            mHandler.postDelayed(mFlush, delayMs);
+            return;
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Idle: " + mPublisher);
+        }
+        stopSelf(mLastStartId);
+    }
+
+    private static WeatherState.Update readUpdate(Intent intent) {
+        WeatherState.Update update = new WeatherState.Update();
+        if (intent.hasExtra(WeatherDataItem.KEY_WEATHER_IMAGE)) {
+            update.setWeatherId(intent.getIntExtra(WeatherDataItem.KEY_WEATHER_IMAGE, 0));
+        }
+        if (intent.hasExtra(WeatherDataItem.KEY_HIGH_TEMP)) {
+            update.setHighTemp(intent.getIntExtra(WeatherDataItem.KEY_HIGH_TEMP,
+                    WeatherState.UNKNOWN_TEMPERATURE));
+        }
+        if (intent.hasExtra(WeatherDataItem.KEY_LOW_TEMP)) {
+            update.setLowTemp(intent.getIntExtra(WeatherDataItem.KEY_LOW_TEMP,
+                    WeatherState.UNKNOWN_TEMPERATURE));
+        }
+        if (intent.hasExtra(WeatherDataItem.KEY_LATITUDE)
+                && intent.hasExtra(WeatherDataItem.KEY_LONGITUDE)) {
+            update.setLocation(intent.getDoubleExtra(WeatherDataItem.KEY_LATITUDE, 0),
+                    intent.getDoubleExtra(WeatherDataItem.KEY_LONGITUDE, 0));
+        }
+        if (intent.hasExtra(WeatherDataItem.KEY_TEMPERATURE_UNIT)) {
+            update.setTemperatureUnit(intent.getIntExtra(WeatherDataItem.KEY_TEMPERATURE_UNIT,
+                    TemperatureTable.UNIT_CELSIUS));
+        }
+        if (intent.hasExtra(WeatherDataItem.KEY_FORECAST)) {
+            try {
+                update.setForecast(Forecast.fromPayload(
+                        intent.getByteArrayExtra(WeatherDataItem.KEY_FORECAST)));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring an unreadable forecast", e);
+            }
+        }
+        return update;
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.i(TAG, "Stopped: " + mPublisher);
+        mHandler.removeCallbacks(mFlush);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mDataLayer.disconnect();
+            }
+        });
+        mThread.quitSafely();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
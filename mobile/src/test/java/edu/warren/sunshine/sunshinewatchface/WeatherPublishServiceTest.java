@@ -0,0 +1,122 @@
+package edu.warren.sunshine.sunshinewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Starts {@link WeatherPublishService} with the intents {@link WeatherPublishService#publish}
+ * builds, the way the phone's weather sync does, and checks what it writes to an in-memory data
+ * layer.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class WeatherPublishServiceTest {
+
+    private static final WeatherState.Update SUNNY = new WeatherState.Update().setWeatherId(0)
+            .setHighTemp(215).setLowTemp(120).setTemperatureUnit(TemperatureTable.UNIT_CELSIUS);
+
+    private TestDataLayer mDataLayer;
+
+    @Before
+    public void setUp() {
+        mDataLayer = new TestDataLayer();
+        TestService.sDataLayer = mDataLayer;
+    }
+
+    @Test
+    public void publishWritesTheWeatherUrgentlyAndStops() {
+        TestService service = Robolectric.buildService(TestService.class).create().get();
+        start(service, SUNNY);
+
+        assertEquals(1, mDataLayer.mPuts);
+        assertEquals(1, mDataLayer.mUrgentPuts);
+        assertWeather(0, 215, 120);
+        assertTrue(shadowOf(service).isStoppedBySelf());
+    }
+
+    @Test
+    public void onlyTheFieldsInTheIntentChange() {
+        mDataLayer.mItem = WeatherState.DEFAULT.apply(SUNNY);
+        TestService service = Robolectric.buildService(TestService.class).create().get();
+        start(service, new WeatherState.Update().setHighTemp(260));
+
+        assertEquals(1, mDataLayer.mPuts);
+        assertWeather(0, 260, 120);
+    }
+
+    @Test
+    public void weatherAlreadyPublishedIsNotWrittenAgain() {
+        mDataLayer.mItem = WeatherState.DEFAULT.apply(SUNNY);
+        TestService service = Robolectric.buildService(TestService.class).create().get();
+        start(service, SUNNY);
+
+        assertEquals(0, mDataLayer.mPuts);
+        assertTrue(shadowOf(service).isStoppedBySelf());
+    }
+
+    private void assertWeather(int weatherId, int highTemp, int lowTemp) {
+        WeatherState item = mDataLayer.mItem;
+        assertEquals(weatherId, item.getWeatherId());
+        assertEquals(highTemp, item.getHighTemp());
+        assertEquals(lowTemp, item.getLowTemp());
+    }
+
+    /**
+     * Starts {@code service} with the intent {@link WeatherPublishService#publish} builds for
+     * {@code update}, and runs what that queues on the service's thread.
+     */
+    private static void start(WeatherPublishService service, WeatherState.Update update) {
+        WeatherPublishService.publish(RuntimeEnvironment.application, update);
+        Intent intent = shadowOf(RuntimeEnvironment.application).getNextStartedService();
+        assertEquals(WeatherPublishService.ACTION_PUBLISH_WEATHER, intent.getAction());
+        service.onStartCommand(intent, 0, 1);
+        shadowOf(service.getWorkLooper()).idle();
+    }
+
+    /**
+     * The service with {@link #sDataLayer} in place of the Wearable data layer.
+     */
+    public static class TestService extends WeatherPublishService {
+        static WeatherDataLayer sDataLayer;
+
+        @Override
+        WeatherDataLayer createDataLayer() {
+            return sDataLayer;
+        }
+    }
+
+    private static final class TestDataLayer implements WeatherDataLayer {
+        WeatherState mItem;
+        int mPuts;
+        int mUrgentPuts;
+
+        @Override
+        public WeatherState getWeather() {
+            return mItem;
+        }
+
+        @Override
+        public void putWeather(WeatherState state, boolean urgent) {
+            mItem = state;
+            mPuts++;
+            if (urgent) {
+                mUrgentPuts++;
+            }
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+}